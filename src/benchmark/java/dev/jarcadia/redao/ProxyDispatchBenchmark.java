@@ -0,0 +1,114 @@
+package dev.jarcadia.redao;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import dev.jarcadia.redao.proxy.Proxy;
+
+import io.lettuce.core.RedisClient;
+
+/**
+ * Compares the cost of invoking proxy methods that do not touch Redis through:
+ * - the previous dynamic proxy dispatch (reflective passthroughs, default methods unreflected on every call)
+ * - the current dynamic proxy dispatch table
+ * - the implementation generated by ProxyProcessor
+ *
+ * This is not a unit test, it lives outside the test sources and is only compiled by the benchmark profile. Run it
+ * with a local Redis after mvn -Pbenchmark test-compile:
+ * java --enable-preview -cp <test classpath> dev.jarcadia.redao.ProxyDispatchBenchmark
+ */
+public class ProxyDispatchBenchmark {
+
+    private static final int ITERATIONS = 5_000_000;
+    private static final int ROUNDS = 5;
+
+    public interface BenchmarkProxy extends Proxy {
+
+        public static MethodHandles.Lookup createLookup() {
+            return MethodHandles.lookup();
+        }
+
+        default int describe(int salt) {
+            return getId().length() + getType().length() + salt;
+        }
+    }
+
+    public static void main(String[] args) {
+        RedisClient redisClient = RedisClient.create("redis://localhost/15");
+        try (RedaoCommando rcommando = new RedaoCommando(redisClient)) {
+            Dao dao = rcommando.getPrimaryIndex("bench").get("abc123");
+            ProxyMetadata metadata = new ProxyMetadataFactory(rcommando.getObjectMapper()).create(BenchmarkProxy.class);
+
+            BenchmarkProxy previous = newProxy(new PreviousInvocationHandler(dao, metadata));
+            BenchmarkProxy table = newProxy(new ProxyInvocationHandler(dao, metadata));
+            BenchmarkProxy generated = dao.as(BenchmarkProxy.class);
+            if (java.lang.reflect.Proxy.isProxyClass(generated.getClass())) {
+                System.out.println("No generated implementation found, was ProxyProcessor run on the test sources?");
+            }
+
+            for (int round=0; round<ROUNDS; round++) {
+                System.out.println("Round " + (round + 1));
+                run("  passthrough  previous", previous, p -> p.getId().length());
+                run("  passthrough  table", table, p -> p.getId().length());
+                run("  passthrough  generated", generated, p -> p.getId().length());
+                run("  default      previous", previous, p -> p.describe(1));
+                run("  default      table", table, p -> p.describe(1));
+                run("  default      generated", generated, p -> p.describe(1));
+            }
+        } finally {
+            redisClient.shutdown();
+        }
+    }
+
+    private static void run(String name, BenchmarkProxy proxy, ToIntFunction<BenchmarkProxy> op) {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i=0; i<ITERATIONS; i++) {
+            sink += op.applyAsInt(proxy);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-28s %8.2f ns/op (%d)%n", name, (double) elapsed / ITERATIONS, sink);
+    }
+
+    private static BenchmarkProxy newProxy(InvocationHandler handler) {
+        return (BenchmarkProxy) java.lang.reflect.Proxy.newProxyInstance(ProxyDispatchBenchmark.class.getClassLoader(),
+                new Class[] {BenchmarkProxy.class}, handler);
+    }
+
+    /*
+     * The dispatch strategy used before dispatch tables, limited to the passthrough and default methods benchmarked
+     */
+    private static class PreviousInvocationHandler implements InvocationHandler {
+
+        private final Dao dao;
+        private final MethodHandles.Lookup lookup;
+        private final Map<Method, Method> passthroughs;
+
+        private PreviousInvocationHandler(Dao dao, ProxyMetadata metadata) {
+            this.dao = dao;
+            this.lookup = BenchmarkProxy.createLookup();
+            this.passthroughs = new HashMap<>();
+            for (Method method : BenchmarkProxy.class.getMethods()) {
+                if (!method.isDefault() && method.getParameterCount() == 0) {
+                    try {
+                        passthroughs.put(method, Dao.class.getMethod(method.getName()));
+                    } catch (NoSuchMethodException e) {
+                        // Not benchmarked
+                    }
+                }
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.isDefault()) {
+                return lookup.unreflectSpecial(method, method.getDeclaringClass()).bindTo(proxy).invokeWithArguments(args);
+            }
+            return passthroughs.get(method).invoke(dao, args);
+        }
+    }
+}
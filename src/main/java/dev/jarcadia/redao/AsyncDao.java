@@ -0,0 +1,152 @@
+package dev.jarcadia.redao;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+public class AsyncDao {
+
+    private final Dao dao;
+    private final AsyncRedaoCommando async;
+
+    protected AsyncDao(Dao dao, AsyncRedaoCommando async) {
+        this.dao = dao;
+        this.async = async;
+    }
+
+    public String getType() {
+        return dao.getType();
+    }
+
+    public String getId() {
+        return dao.getId();
+    }
+
+    public String getPath() {
+        return dao.getPath();
+    }
+
+    /**
+     * @return The blocking Dao that this instance was created from
+     */
+    public Dao sync() {
+        return dao;
+    }
+
+    public CompletionStage<Boolean> exists() {
+        return async.sync().asyncCore().exists(dao.getPath()).thenApply(count -> count == 1L);
+    }
+
+    public CompletionStage<DaoValue> get(String field) {
+        if (async.sync().isByteValueCodecEnabled()) {
+            return async.sync().asyncByteValueCore().hget(dao.getPath(), field)
+                    .thenApply(value -> DaoValue.fromBytes(dao.getFormatter(), field, value));
+        }
+        return async.sync().asyncCore().hget(dao.getPath(), field)
+                .thenApply(value -> new DaoValue(dao.getFormatter(), field, value));
+    }
+
+    public CompletionStage<DaoValues> get(String... fields) {
+        if (async.sync().isByteValueCodecEnabled()) {
+            return async.sync().asyncByteValueCore().hmget(dao.getPath(), fields)
+                    .thenApply(values -> DaoValues.fromBytes(dao.getFormatter(), values));
+        }
+        return async.sync().asyncCore().hmget(dao.getPath(), fields)
+                .thenApply(values -> new DaoValues(dao.getFormatter(), values));
+    }
+
+    public CompletionStage<DaoValues> getAll() {
+        if (async.sync().isByteValueCodecEnabled()) {
+            return async.sync().asyncByteValueCore().hgetall(dao.getPath())
+                    .thenApply(values -> DaoValues.fromBytes(dao.getFormatter(), values));
+        }
+        return async.sync().asyncCore().hgetall(dao.getPath())
+                .thenApply(values -> new DaoValues(dao.getFormatter(), values));
+    }
+
+    public CompletionStage<Optional<Modification>> set(Object... fieldsAndValues) {
+        return this.setHelper(0, fieldsAndValues);
+    }
+
+    public CompletionStage<Optional<Modification>> setTs(Object... fieldsAndValues) {
+        long now = System.currentTimeMillis();
+        return this.setHelper(now, Dao.withTimestamp(now, fieldsAndValues));
+    }
+
+    public CompletionStage<Optional<Modification>> setAll(Map<String, Object> properties) {
+        return setAll(properties.entrySet().stream());
+    }
+
+    public CompletionStage<Optional<Modification>> setAll(Stream<Map.Entry<String, Object>> properties) {
+        Object[] fieldsAndValues = Dao.flatten(properties);
+        return fieldsAndValues.length > 0 ? this.set(fieldsAndValues) :
+                CompletableFuture.completedFuture(Optional.empty());
+    }
+
+    private CompletionStage<Optional<Modification>> setHelper(long score, Object... fieldsAndValues) {
+        CompletionStage<List<String>> result = async.eval()
+                .cachedScript(Scripts.DAO_SET)
+                .addKeys(dao.scriptKeys())
+                .addArg(dao.getChangeChannel())
+                .addArg(score)
+                .addArgs(dao.prepareArgsAsArray(fieldsAndValues))
+                .returnMulti();
+        return withCallbacks(result, dao::handleSetResult);
+    }
+
+    public CompletionStage<Boolean> touch() {
+        CompletionStage<Long> result = async.eval()
+                .cachedScript(Scripts.DAO_TOUCH)
+                .addKeys(dao.scriptKeys())
+                .addArg(dao.getChangeChannel())
+                .addArg(0)
+                .returnLong();
+        return withCallbacks(result, dao::handleTouchResult);
+    }
+
+    public CompletionStage<Boolean> delete() {
+        CompletionStage<Long> result = async.eval()
+                .cachedScript(Scripts.DAO_CHECKED_DELETE)
+                .addKeys(dao.scriptKeys())
+                .addArg(dao.getChangeChannel())
+                .returnLong();
+        return withCallbacks(result, dao::handleDeleteResult);
+    }
+
+    public CompletionStage<Optional<Modification>> clear(String... fields) {
+        CompletionStage<List<String>> result = async.eval()
+                .cachedScript(Scripts.DAO_CLEAR_FIELD)
+                .addKeys(dao.getIndexKey(), dao.getPath())
+                .addArg(dao.getChangeChannel())
+                .addArgs(dao.prepareFieldArgs(fields))
+                .returnMulti();
+        return withCallbacks(result, dao::handleClearResult);
+    }
+
+    /*
+     * Responses on a single connection complete in the order the commands were issued, so handing them off to the
+     * single callback thread as they complete preserves the order of callbacks across Daos
+     */
+    private <R, T> CompletionStage<T> withCallbacks(CompletionStage<R> result, Function<R, T> handler) {
+        return result.thenApplyAsync(handler, async.sync().getAsyncCallbackExecutor());
+    }
+
+    @Override
+    public int hashCode() {
+        return dao.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof AsyncDao && dao.equals(((AsyncDao) obj).dao);
+    }
+
+    @Override
+    public String toString() {
+        return dao.toString();
+    }
+}
@@ -0,0 +1,125 @@
+package dev.jarcadia.redao;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import io.lettuce.core.ScriptOutputType;
+
+public class AsyncEval {
+
+    private final Eval eval;
+    private final RedaoCommando rcommando;
+
+    protected AsyncEval(Eval eval, RedaoCommando rcommando) {
+        this.eval = eval;
+        this.rcommando = rcommando;
+    }
+
+    public AsyncEval cachedScript(String script) {
+        eval.cachedScript(script);
+        return this;
+    }
+
+    public AsyncEval appendScript(String script) {
+        eval.appendScript(script);
+        return this;
+    }
+
+    public AsyncEval addKey(String key) {
+        eval.addKey(key);
+        return this;
+    }
+
+    public AsyncEval addKeys(String... keys) {
+        eval.addKeys(keys);
+        return this;
+    }
+
+    public AsyncEval addKeys(List<String> keys) {
+        eval.addKeys(keys);
+        return this;
+    }
+
+    public AsyncEval deserializeAndAddKeys(String serializedKeys) {
+        eval.deserializeAndAddKeys(serializedKeys);
+        return this;
+    }
+
+    public AsyncEval addArg(String arg) {
+        eval.addArg(arg);
+        return this;
+    }
+
+    public AsyncEval addArg(double arg) {
+        eval.addArg(arg);
+        return this;
+    }
+
+    public AsyncEval addArg(int arg) {
+        eval.addArg(arg);
+        return this;
+    }
+
+    public AsyncEval addArg(long arg) {
+        eval.addArg(arg);
+        return this;
+    }
+
+    public AsyncEval addArgs(String... args) {
+        eval.addArgs(args);
+        return this;
+    }
+
+    public AsyncEval addArgs(Collection<String> args) {
+        eval.addArgs(args);
+        return this;
+    }
+
+    public AsyncEval addArg(Object toSerialize) {
+        eval.addArg(toSerialize);
+        return this;
+    }
+
+    public int getLastKeyIndex() {
+        return eval.getLastKeyIndex();
+    }
+
+    public int getLastArgIndex() {
+        return eval.getLastArgIndex();
+    }
+
+    public CompletionStage<String> returnStatus() {
+        return execute(ScriptOutputType.STATUS);
+    }
+
+    public CompletionStage<String> returnValue() {
+        return execute(ScriptOutputType.VALUE);
+    }
+
+    public CompletionStage<Integer> returnInt() {
+        CompletionStage<Long> value = execute(ScriptOutputType.INTEGER);
+        return value.thenApply(Long::intValue);
+    }
+
+    public CompletionStage<Long> returnLong() {
+        return execute(ScriptOutputType.INTEGER);
+    }
+
+    public CompletionStage<Integer> returnNullableInt() {
+        CompletionStage<Long> value = execute(ScriptOutputType.INTEGER);
+        return value.thenApply(v -> v == null ? null : v.intValue());
+    }
+
+    public CompletionStage<List<String>> returnMulti() {
+        return execute(ScriptOutputType.MULTI);
+    }
+
+    public CompletionStage<Boolean> returnBoolean() {
+        return execute(ScriptOutputType.BOOLEAN);
+    }
+
+    private <T> CompletionStage<T> execute(ScriptOutputType outputType) {
+        return rcommando.executeScriptAsync(eval.getScript(), outputType, eval.keys(), eval.args());
+    }
+}
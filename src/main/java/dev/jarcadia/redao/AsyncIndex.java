@@ -0,0 +1,48 @@
+package dev.jarcadia.redao;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+public class AsyncIndex {
+
+    private final Index index;
+    private final AsyncRedaoCommando async;
+
+    protected AsyncIndex(Index index, AsyncRedaoCommando async) {
+        this.index = index;
+        this.async = async;
+    }
+
+    public String getType() {
+        return index.getType();
+    }
+
+    public CompletionStage<Long> count() {
+        CompletionStage<Long> count = CompletableFuture.completedFuture(0L);
+        for (String indexKey : async.sync().getKeyLayout().getIndexKeys(index.getType())) {
+            count = count.thenCombine(async.sync().asyncCore().zcard(indexKey), Long::sum);
+        }
+        return count;
+    }
+
+    public CompletionStage<Boolean> has(String id) {
+        String indexKey = async.sync().getKeyLayout().getIndexKey(index.getType(), id);
+        return async.sync().asyncCore().zscore(indexKey, index.getFormatter().toWire(id))
+                .thenApply(score -> score != null);
+    }
+
+    public AsyncDao get(String id) {
+        return new AsyncDao(index.get(id), async);
+    }
+
+    public AsyncDao get() {
+        return new AsyncDao(index.get(), async);
+    }
+
+    /**
+     * @return The blocking Index that this instance was created from
+     */
+    public Index sync() {
+        return index;
+    }
+}
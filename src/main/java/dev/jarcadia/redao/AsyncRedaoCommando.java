@@ -0,0 +1,31 @@
+package dev.jarcadia.redao;
+
+public class AsyncRedaoCommando {
+
+    private final RedaoCommando rcommando;
+    private final ValueFormatter formatter;
+
+    protected AsyncRedaoCommando(RedaoCommando rcommando, ValueFormatter formatter) {
+        this.rcommando = rcommando;
+        this.formatter = formatter;
+    }
+
+    public AsyncDao getDao(String type, String id) {
+        return getPrimaryIndex(type).get(id);
+    }
+
+    public AsyncIndex getPrimaryIndex(String type) {
+        return new AsyncIndex(new Index(rcommando, formatter, type), this);
+    }
+
+    public AsyncEval eval() {
+        return new AsyncEval(rcommando.eval(), rcommando);
+    }
+
+    /**
+     * @return The blocking RedaoCommando that this instance was created from
+     */
+    public RedaoCommando sync() {
+        return rcommando;
+    }
+}
@@ -0,0 +1,105 @@
+package dev.jarcadia.redao;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is responsible for gathering commands issued concurrently by many threads and writing them to the
+ * connection together. Commands are buffered on a connection with auto-flush disabled and flushed either when the
+ * configured number of commands is pending or when the window that started with the first pending command expires,
+ * whichever happens first. Each calling thread blocks only for its own result.
+ */
+class AutoBatcher implements Runnable, Closeable {
+
+    private final Logger logger = LoggerFactory.getLogger(AutoBatcher.class);
+
+    private final RedaoConnection<String, String> connection;
+    private final RedisClusterAsyncCommands<String, String> commands;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Object lock;
+    private final Thread thread;
+    private int pending;
+    private volatile boolean closed;
+
+    public AutoBatcher(RedaoConnection<String, String> connection, Duration window, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Auto-batching max batch size must be at least 1");
+        }
+        this.connection = connection;
+        this.connection.setAutoFlushCommands(false);
+        this.commands = connection.async();
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.lock = new Object();
+        this.thread = new Thread(this, "redao-auto-batcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        this.thread.start();
+    }
+
+    protected <T> T dispatch(Function<RedisClusterAsyncCommands<String, String>, RedisFuture<T>> command) {
+        RedisFuture<T> future;
+        synchronized (lock) {
+            future = command.apply(commands);
+            pending++;
+            if (pending >= maxBatchSize) {
+                flush();
+            } else if (pending == 1) {
+                // First command of a new batch, wake the flusher to start the window
+                lock.notify();
+            }
+        }
+        return LettuceFutures.awaitOrCancel(future, connection.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void run() {
+        while (!closed) {
+            synchronized (lock) {
+                while (pending == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            LockSupport.parkNanos(windowNanos);
+            synchronized (lock) {
+                if (pending > 0) {
+                    flush();
+                }
+            }
+        }
+        logger.debug("Safely exited auto batcher");
+    }
+
+    private void flush() {
+        connection.flushCommands();
+        pending = 0;
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            if (pending > 0) {
+                flush();
+            }
+            lock.notify();
+        }
+        connection.close();
+    }
+}
@@ -0,0 +1,196 @@
+package dev.jarcadia.redao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import io.lettuce.core.ScriptOutputType;
+
+/**
+ * A unit of work that collects Dao mutations across any number of types and ids and sends them to Redis as a single
+ * pipelined burst when executed. Each mutation is still applied by its own script, so a Batch is <b>not</b> atomic;
+ * it only removes the round trip per mutation.
+ *
+ * Alternatively, {@link #executeAtomically()} applies all collected mutations within a single script invocation so
+ * that no other client can observe a partially applied Batch.
+ *
+ * Registered insert, change and delete callbacks are invoked after the burst has been flushed, in the order the
+ * mutations were added.
+ */
+public class Batch {
+
+    private final RedaoCommando rcommando;
+    private final List<Operation> operations;
+
+    protected Batch(RedaoCommando rcommando) {
+        this.rcommando = rcommando;
+        this.operations = new ArrayList<>();
+    }
+
+    public Batch set(Dao dao, Object... fieldsAndValues) {
+        return setHelper(dao, 0, fieldsAndValues);
+    }
+
+    public Batch setTs(Dao dao, Object... fieldsAndValues) {
+        long now = System.currentTimeMillis();
+        return setHelper(dao, now, Dao.withTimestamp(now, fieldsAndValues));
+    }
+
+    public Batch setAll(Dao dao, Map<String, Object> properties) {
+        return set(dao, Dao.flatten(properties.entrySet().stream()));
+    }
+
+    private Batch setHelper(Dao dao, long score, Object... fieldsAndValues) {
+        List<String> args = new ArrayList<>();
+        args.add(dao.getChangeChannel());
+        args.add(String.valueOf(score));
+        Collections.addAll(args, dao.prepareArgsAsArray(fieldsAndValues));
+        return add("set", dao, Scripts.DAO_SET, ScriptOutputType.MULTI, dao.scriptKeys(), args,
+                result -> dao.handleSetResult(castList(result)));
+    }
+
+    public Batch touch(Dao dao) {
+        return add("touch", dao, Scripts.DAO_TOUCH, ScriptOutputType.INTEGER, dao.scriptKeys(), List.of(dao.getChangeChannel(), "0"),
+                result -> dao.handleTouchResult((Long) result) ?
+                        Optional.of(new Modification(dao, true, List.of())) : Optional.empty());
+    }
+
+    public Batch clear(Dao dao, String... fields) {
+        String[] keys = new String[] {dao.getIndexKey(), dao.getPath()};
+        List<String> args = new ArrayList<>();
+        args.add(dao.getChangeChannel());
+        Collections.addAll(args, dao.prepareFieldArgs(fields));
+        return add("clear", dao, Scripts.DAO_CLEAR_FIELD, ScriptOutputType.MULTI, keys, args,
+                result -> dao.handleClearResult(castList(result)));
+    }
+
+    public Batch delete(Dao dao) {
+        return add("delete", dao, Scripts.DAO_CHECKED_DELETE, ScriptOutputType.INTEGER, dao.scriptKeys(), List.of(dao.getChangeChannel()),
+                result -> dao.handleDeleteResult((Long) result) ?
+                        Optional.of(new Modification(dao, false, true, List.of())) : Optional.empty());
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    /**
+     * Flushes all collected mutations as a single pipelined burst and clears this batch so that it may be reused.
+     *
+     * @return One result per mutation, in the order they were added. Touch results are present only if the Dao was
+     * created and delete results are present only if the Dao existed (see {@link Modification#isDelete()})
+     * @throws dev.jarcadia.redao.exception.RedisCommandoException if any mutation fails, in which case no callbacks
+     * are invoked
+     */
+    public List<Optional<Modification>> execute() {
+        if (operations.isEmpty()) {
+            return List.of();
+        }
+        List<Operation> toExecute = new ArrayList<>(operations);
+        operations.clear();
+
+        List<Object> rawResults = rcommando.executeScriptsPipelined(toExecute);
+        List<Optional<Modification>> results = new ArrayList<>(toExecute.size());
+        for (int i=0; i<toExecute.size(); i++) {
+            results.add(toExecute.get(i).handler.apply(rawResults.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * Applies all collected mutations atomically within a single script invocation and clears this batch so that it
+     * may be reused. Change messages are still published per Dao on each type's change channel.
+     *
+     * No other command runs while the batch is applied. Every mutation is validated before any is applied, so a batch
+     * containing a value the codec cannot decode, or a Dao key holding something other than a hash, is rejected as a
+     * whole. Redis does not roll back a script, so an error that cannot be detected beforehand, such as Redis running
+     * out of memory, may leave the earlier mutations of the batch applied.
+     *
+     * On Redis Cluster every Dao in the batch must map to the same slot, otherwise Redis rejects the script.
+     *
+     * @return One result per mutation, in the order they were added, as described by {@link #execute()}
+     */
+    public List<Optional<Modification>> executeAtomically() {
+        if (operations.isEmpty()) {
+            return List.of();
+        }
+        List<Operation> toExecute = new ArrayList<>(operations);
+        operations.clear();
+
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        for (Operation operation : toExecute) {
+            // Each operation's first argument is its change channel, which DAO_MULTI expects ahead of the count
+            Collections.addAll(keys, operation.dao.scriptKeys());
+            args.add(operation.op);
+            args.add(operation.args[0]);
+            args.add(String.valueOf(operation.args.length - 1));
+            args.addAll(Arrays.asList(operation.args).subList(1, operation.args.length));
+        }
+
+        List<Object> rawResults = rcommando.executeScript(Scripts.DAO_MULTI, ScriptOutputType.MULTI,
+                keys.toArray(new String[0]), args.toArray(new String[0]));
+        List<Optional<Modification>> results = new ArrayList<>(toExecute.size());
+        for (int i=0; i<toExecute.size(); i++) {
+            results.add(toExecute.get(i).handler.apply(rawResults.get(i)));
+        }
+        return results;
+    }
+
+    private Batch add(String op, Dao dao, String script, ScriptOutputType outputType, String[] keys, List<String> args,
+            Function<Object, Optional<Modification>> handler) {
+        operations.add(new Operation(op, dao, script, outputType, keys, args.toArray(new String[0]), handler));
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> castList(Object result) {
+        return (List<String>) result;
+    }
+
+    protected static class Operation {
+
+        private final String op;
+        private final Dao dao;
+        private final String script;
+        private final ScriptOutputType outputType;
+        private final String[] keys;
+        private final String[] args;
+        private final Function<Object, Optional<Modification>> handler;
+
+        Operation(String op, Dao dao, String script, ScriptOutputType outputType, String[] keys, String[] args,
+                Function<Object, Optional<Modification>> handler) {
+            this.op = op;
+            this.dao = dao;
+            this.script = script;
+            this.outputType = outputType;
+            this.keys = keys;
+            this.args = args;
+            this.handler = handler;
+        }
+
+        public String getScript() {
+            return script;
+        }
+
+        public ScriptOutputType getOutputType() {
+            return outputType;
+        }
+
+        public String[] getKeys() {
+            return keys;
+        }
+
+        public String[] getArgs() {
+            return args;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package dev.jarcadia.redao;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import dev.jarcadia.redao.exception.RedisCommandoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is responsible for running registered insert, change and delete callbacks on a pool of worker threads so
+ * that slow callbacks do not add to write latency. Callbacks for the same Dao always run one at a time in the order
+ * their mutations completed, while callbacks for different Daos run concurrently. Each type has a bounded queue of
+ * pending mutations whose overflow is handled according to a {@link CallbackOverflowPolicy}.
+ */
+class CallbackDispatcher implements Closeable {
+
+    private static final int MAX_TASKS_PER_TURN = 16;
+
+    private final Logger logger = LoggerFactory.getLogger(CallbackDispatcher.class);
+
+    private final ExecutorService workers;
+    private final int queueCapacity;
+    private final CallbackOverflowPolicy overflowPolicy;
+    private final Map<String, PathQueue> pathQueues;
+    private final Map<String, TypeQueue> typeQueues;
+    // Set while this thread runs queued callbacks, which may themselves mutate Daos and dispatch more callbacks
+    private final ThreadLocal<Boolean> runningCallbacks;
+
+    protected CallbackDispatcher(ThreadFactory threadFactory, int workers, int queueCapacity,
+            CallbackOverflowPolicy overflowPolicy) {
+        if (workers < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("At least one worker and a queue capacity of at least one are required");
+        }
+        this.workers = Executors.newFixedThreadPool(workers, threadFactory);
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.pathQueues = new ConcurrentHashMap<>();
+        this.typeQueues = new ConcurrentHashMap<>();
+        this.runningCallbacks = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    }
+
+    protected static ThreadFactory daemonThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, "redao-callbacks-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Queues the callbacks for a single mutation of a Dao behind any earlier mutations of the same Dao
+     */
+    protected void dispatch(String type, String id, Runnable callbacks) {
+        TypeQueue typeQueue = typeQueues.computeIfAbsent(type, TypeQueue::new);
+        Task task = typeQueue.acquire(callbacks);
+        if (task == null) {
+            return;
+        }
+
+        String path = type + "/" + id;
+        PathQueue[] created = new PathQueue[1];
+        pathQueues.compute(path, (p, queue) -> {
+            if (queue == null) {
+                queue = new PathQueue(p);
+                created[0] = queue;
+            }
+            queue.tasks.add(task);
+            return queue;
+        });
+
+        // Only the thread that created the queue schedules it, every later task is picked up by the running queue
+        if (created[0] != null) {
+            try {
+                workers.execute(created[0]);
+            } catch (RejectedExecutionException ex) {
+                // Dispatched after close, run on the writer as if the dispatcher were not enabled
+                created[0].run();
+            }
+        }
+    }
+
+    protected Map<String, CallbackStats> getStats() {
+        Map<String, CallbackStats> stats = new TreeMap<>();
+        for (TypeQueue typeQueue : typeQueues.values()) {
+            stats.put(typeQueue.type, typeQueue.snapshot());
+        }
+        return stats;
+    }
+
+    /**
+     * Waits up to the timeout for all queued callbacks to run, then stops the workers. Callbacks dispatched after
+     * closing run on the dispatching thread
+     */
+    protected void close(Duration timeout) {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                logger.warn("Timed out waiting for {} queued callbacks to complete", pathQueues.size());
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted while waiting for queued callbacks to complete");
+            workers.shutdownNow();
+        }
+    }
+
+    @Override
+    public void close() {
+        close(Duration.ofSeconds(30));
+    }
+
+    private class PathQueue implements Runnable {
+
+        private final String path;
+        private final Queue<Task> tasks;
+
+        private PathQueue(String path) {
+            this.path = path;
+            this.tasks = new ArrayDeque<>();
+        }
+
+        /*
+         * Runs a limited number of tasks before yielding the worker back to the pool so that one busy Dao cannot
+         * starve the others. Once the pool is shutting down it no longer accepts the queue back, so the current thread
+         * keeps draining it instead. The queue is removed once empty, atomically with respect to dispatch
+         */
+        @Override
+        public void run() {
+            boolean nested = runningCallbacks.get();
+            runningCallbacks.set(Boolean.TRUE);
+            try {
+                drain();
+            } finally {
+                runningCallbacks.set(nested);
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                for (int i=0; i<MAX_TASKS_PER_TURN; i++) {
+                    Task task = poll();
+                    if (task == null) {
+                        return;
+                    }
+                    task.run();
+                }
+                if (!hasTasks()) {
+                    return;
+                }
+                if (!workers.isShutdown()) {
+                    try {
+                        workers.execute(this);
+                        return;
+                    } catch (RejectedExecutionException ex) {
+                        // Shut down since checked, continue draining on this thread
+                    }
+                }
+            }
+        }
+
+        private Task poll() {
+            Task[] next = new Task[1];
+            pathQueues.compute(path, (p, queue) -> {
+                next[0] = queue.tasks.poll();
+                return next[0] == null ? null : queue;
+            });
+            return next[0];
+        }
+
+        private boolean hasTasks() {
+            PathQueue[] present = new PathQueue[1];
+            pathQueues.compute(path, (p, queue) -> {
+                if (queue.tasks.isEmpty()) {
+                    return null;
+                }
+                present[0] = queue;
+                return queue;
+            });
+            return present[0] != null;
+        }
+    }
+
+    private class Task {
+
+        private final TypeQueue typeQueue;
+        private final Runnable callbacks;
+        private final boolean permitted;
+        private final long enqueuedAt;
+
+        private Task(TypeQueue typeQueue, Runnable callbacks, boolean permitted) {
+            this.typeQueue = typeQueue;
+            this.callbacks = callbacks;
+            this.permitted = permitted;
+            this.enqueuedAt = System.nanoTime();
+        }
+
+        private void run() {
+            boolean failed = false;
+            try {
+                callbacks.run();
+            } catch (Throwable t) {
+                failed = true;
+                logger.warn("Unexpected exception while invoking {} callbacks", typeQueue.type, t);
+            } finally {
+                typeQueue.release(permitted, System.nanoTime() - enqueuedAt, failed);
+            }
+        }
+    }
+
+    private class TypeQueue {
+
+        private final String type;
+        private final Semaphore permits;
+        private final AtomicInteger depth;
+        private final AtomicInteger maxDepth;
+        private final LongAdder dispatched;
+        private final LongAdder completed;
+        private final LongAdder failed;
+        private final LongAdder discarded;
+        private final LongAdder totalLatency;
+        private final AtomicLong maxLatency;
+
+        private TypeQueue(String type) {
+            this.type = type;
+            this.permits = new Semaphore(queueCapacity);
+            this.depth = new AtomicInteger();
+            this.maxDepth = new AtomicInteger();
+            this.dispatched = new LongAdder();
+            this.completed = new LongAdder();
+            this.failed = new LongAdder();
+            this.discarded = new LongAdder();
+            this.totalLatency = new LongAdder();
+            this.maxLatency = new AtomicLong();
+        }
+
+        /**
+         * @return The task to queue for a mutation, or null if it should be discarded
+         */
+        private Task acquire(Runnable callbacks) {
+            boolean permitted = permits.tryAcquire();
+            if (!permitted) {
+                switch (overflowPolicy) {
+                    case BLOCK:
+                        // A callback waiting for room in a queue that only the workers drain could wait forever, so
+                        // mutations made by callbacks are queued beyond the capacity instead
+                        if (!runningCallbacks.get()) {
+                            permits.acquireUninterruptibly();
+                            permitted = true;
+                        }
+                        break;
+                    case DISCARD:
+                        discarded.increment();
+                        return null;
+                    default:
+                        throw new RedisCommandoException("Callback queue for " + type + " is full (" + queueCapacity
+                                + " pending mutations)");
+                }
+            }
+            dispatched.increment();
+            maxDepth.accumulateAndGet(depth.incrementAndGet(), Math::max);
+            return new Task(this, callbacks, permitted);
+        }
+
+        private void release(boolean permitted, long latency, boolean failure) {
+            depth.decrementAndGet();
+            if (permitted) {
+                permits.release();
+            }
+            completed.increment();
+            if (failure) {
+                failed.increment();
+            }
+            totalLatency.add(latency);
+            maxLatency.accumulateAndGet(latency, Math::max);
+        }
+
+        private CallbackStats snapshot() {
+            return new CallbackStats(type, depth.get(), maxDepth.get(), dispatched.sum(), completed.sum(),
+                    failed.sum(), discarded.sum(), totalLatency.sum(), maxLatency.get());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package dev.jarcadia.redao;
+
+/**
+ * Determines what happens when a Dao mutation is made while its type's callback queue is full
+ */
+public enum CallbackOverflowPolicy {
+
+    /**
+     * The mutating thread waits for space in the queue, applying back pressure to writers. Mutations made by callbacks
+     * never wait since only callbacks free up space, they are queued beyond the capacity instead
+     */
+    BLOCK,
+
+    /**
+     * The callbacks for the mutation are skipped and counted in {@link CallbackStats#getDiscarded()}
+     */
+    DISCARD,
+
+    /**
+     * The mutation, which has already been applied in Redis, throws a RedisCommandoException
+     */
+    THROW
+}
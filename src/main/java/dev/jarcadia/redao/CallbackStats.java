@@ -0,0 +1,79 @@
+package dev.jarcadia.redao;
+
+import java.time.Duration;
+
+/**
+ * A point in time snapshot of the asynchronous callback queue for a single type. Latency is measured from when the
+ * mutation completed until its callbacks finished running.
+ */
+public class CallbackStats {
+
+    private final String type;
+    private final int queueDepth;
+    private final int maxQueueDepth;
+    private final long dispatched;
+    private final long completed;
+    private final long failed;
+    private final long discarded;
+    private final long totalLatencyNanos;
+    private final long maxLatencyNanos;
+
+    protected CallbackStats(String type, int queueDepth, int maxQueueDepth, long dispatched, long completed,
+            long failed, long discarded, long totalLatencyNanos, long maxLatencyNanos) {
+        this.type = type;
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.dispatched = dispatched;
+        this.completed = completed;
+        this.failed = failed;
+        this.discarded = discarded;
+        this.totalLatencyNanos = totalLatencyNanos;
+        this.maxLatencyNanos = maxLatencyNanos;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getDispatched() {
+        return dispatched;
+    }
+
+    /**
+     * @return The number of mutations whose callbacks have run, including those where a callback threw
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getDiscarded() {
+        return discarded;
+    }
+
+    public Duration getMeanLatency() {
+        return completed == 0 ? Duration.ZERO : Duration.ofNanos(totalLatencyNanos / completed);
+    }
+
+    public Duration getMaxLatency() {
+        return Duration.ofNanos(maxLatencyNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "CallbackStats[" + type + " depth=" + queueDepth + " maxDepth=" + maxQueueDepth + " dispatched="
+                + dispatched + " completed=" + completed + " failed=" + failed + " discarded=" + discarded
+                + " meanLatency=" + getMeanLatency() + " maxLatency=" + getMaxLatency() + "]";
+    }
+}
@@ -0,0 +1,80 @@
+package dev.jarcadia.redao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.lettuce.core.cluster.SlotHash;
+
+/**
+ * A Redis Cluster layout that splits each type's index into a fixed number of shards. Each shard is a zset whose name
+ * is a hash tag, {type#shard}, and each Dao hash is stored under its shard's tag at {type#shard}/id so that a Dao, the
+ * shard that indexes it and the shard's types set always share a slot. A Dao's shard is derived from the slot of its
+ * id so that writes to a type spread across the cluster.
+ *
+ * The scripts only declare a Dao's hash, index key and types key in KEYS. They derive the remaining keys from the
+ * index key: the field index definitions at {type#shard}:idx, the field index keys at {type#shard}:idx:..., the
+ * geospatial index at {type#shard}:geo and Dao hashes at {type#shard}/id. Which field index keys a script touches
+ * depends on the values it writes, so they cannot be declared up front. Instead every derived key must begin with the
+ * shard's hash tag so that it hashes to the same slot as the declared keys. Redis Cluster routes each script by its
+ * declared keys and would reject a derived key in another slot.
+ */
+class ClusterKeyLayout implements KeyLayout {
+
+    private final int shards;
+    private final Map<String, List<String>> indexKeysByType;
+
+    protected ClusterKeyLayout(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = shards;
+        this.indexKeysByType = new ConcurrentHashMap<>();
+    }
+
+    protected int getShards() {
+        return shards;
+    }
+
+    protected int getShard(String id) {
+        return SlotHash.getSlot(id) % shards;
+    }
+
+    @Override
+    public String getTypesKey(String type, String id) {
+        return Keys.TYPES + getIndexKey(type, id);
+    }
+
+    @Override
+    public String getIndexKey(String type, String id) {
+        return shardKey(type, getShard(id));
+    }
+
+    @Override
+    public String getDaoKey(String type, String id) {
+        return getIndexKey(type, id) + "/" + id;
+    }
+
+    @Override
+    public List<String> getIndexKeys(String type) {
+        return indexKeysByType.computeIfAbsent(type, t -> {
+            List<String> keys = new ArrayList<>(shards);
+            for (int i=0; i<shards; i++) {
+                keys.add(shardKey(t, i));
+            }
+            return Collections.unmodifiableList(keys);
+        });
+    }
+
+    @Override
+    public String getChangeChannel(String type) {
+        // Channels are not keys, PUBLISH is propagated to every node in the cluster
+        return type + ".change";
+    }
+
+    private String shardKey(String type, int shard) {
+        return "{" + type + "#" + shard + "}";
+    }
+}
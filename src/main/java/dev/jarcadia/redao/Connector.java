@@ -0,0 +1,296 @@
+package dev.jarcadia.redao;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.lettuce.core.resource.ClientResources;
+import reactor.core.Disposable;
+
+/**
+ * Opens the connections used by a RedaoCommando and determines its key layout, hiding whether it is backed by a single
+ * Redis node or a Redis Cluster.
+ */
+abstract class Connector {
+
+    protected static Connector standalone(RedisClient client) {
+        return standalone(client, StringCodec.UTF8);
+    }
+
+    protected static Connector standalone(RedisClient client, RedisCodec<String, String> codec) {
+        return new Standalone(client, codec);
+    }
+
+    protected static Connector cluster(RedisClusterClient client, int shards) {
+        return cluster(client, shards, StringCodec.UTF8);
+    }
+
+    protected static Connector cluster(RedisClusterClient client, int shards, RedisCodec<String, String> codec) {
+        return new Cluster(client, shards, codec);
+    }
+
+    /**
+     * @return A connection using this connector's codec, see {@link ValueFormatter#connectionCodec(ValueCodec)}
+     */
+    protected abstract RedaoConnection<String, String> connect();
+
+    protected abstract <K, V> RedaoConnection<K, V> connect(RedisCodec<K, V> codec);
+
+    /**
+     * @return A connection to the single Redis node, for features that are not supported on Redis Cluster
+     */
+    protected abstract StatefulRedisConnection<String, String> connectStandalone();
+
+    protected abstract StatefulRedisPubSubConnection<String, String> connectPubSub();
+
+    protected abstract ClientResources getResources();
+
+    protected abstract AbstractRedisClient getClient();
+
+    /**
+     * Runs an action each time the given connection is reestablished after being lost. Only that connection is
+     * watched, other connections of the same client (including those of other RedaoCommandos) are ignored. A cluster
+     * connection holds a connection per node, each of which is reconnected on its own, so the action runs whenever
+     * any of them is reestablished. Only handlers that were seen losing their connection are reported, so initial
+     * connects, including those of node connections opened on first use, are not.
+     *
+     * @return A handle which stops the action from running again once disposed
+     */
+    protected Disposable onReconnect(StatefulConnection<?, ?> connection, Runnable action) {
+        AbstractRedisClient client = getClient();
+        Executor executor = getResources().eventExecutorGroup();
+        // Handlers are identified by identity, they are weakly held so that closed connections are not retained
+        Set<RedisChannelHandler<?, ?>> disconnected = Collections.synchronizedSet(
+                Collections.newSetFromMap(new WeakHashMap<>()));
+        RedisConnectionStateListener listener = new RedisConnectionStateListener() {
+            @Override
+            public void onRedisConnected(RedisChannelHandler<?, ?> connected, SocketAddress socketAddress) {
+                if (disconnected.remove(connected)) {
+                    // Fired on an I/O thread before the connection is reactivated, commands must not be awaited here
+                    executor.execute(() -> isHandlerOf(connection, connected, socketAddress)
+                            .thenAcceptAsync(reconnected -> {
+                                if (reconnected) {
+                                    action.run();
+                                }
+                            }, executor));
+                }
+            }
+
+            @Override
+            public void onRedisDisconnected(RedisChannelHandler<?, ?> handler) {
+                disconnected.add(handler);
+            }
+
+            @Override
+            public void onRedisExceptionCaught(RedisChannelHandler<?, ?> connection, Throwable cause) { }
+        };
+        client.addListener(listener);
+        return () -> client.removeListener(listener);
+    }
+
+    /**
+     * @return A stage completing with true if the handler, connected to the given address, carries the commands of
+     * the given connection
+     */
+    protected CompletionStage<Boolean> isHandlerOf(StatefulConnection<?, ?> connection,
+            RedisChannelHandler<?, ?> handler, SocketAddress socketAddress) {
+        return CompletableFuture.completedFuture(handler == connection);
+    }
+
+    protected abstract KeyLayout getKeyLayout();
+
+    protected abstract boolean isCluster();
+
+    /**
+     * Runs an action against every master. Commands that are not routed by key, such as FUNCTION LOAD, must be sent
+     * to each master individually on a cluster.
+     *
+     * @return A stage completing once the action has completed on every master
+     */
+    protected abstract CompletionStage<Void> forEachMaster(RedisClusterAsyncCommands<String, String> commands,
+            Function<RedisClusterAsyncCommands<String, String>, CompletionStage<Void>> action);
+
+    private static class Standalone extends Connector {
+
+        private final RedisClient client;
+        private final RedisCodec<String, String> codec;
+        private final KeyLayout keyLayout;
+
+        private Standalone(RedisClient client, RedisCodec<String, String> codec) {
+            this.client = client;
+            this.codec = codec;
+            this.keyLayout = new StandaloneKeyLayout();
+        }
+
+        @Override
+        protected RedaoConnection<String, String> connect() {
+            return RedaoConnection.of(client.connect(codec));
+        }
+
+        @Override
+        protected <K, V> RedaoConnection<K, V> connect(RedisCodec<K, V> codec) {
+            return RedaoConnection.of(client.connect(codec));
+        }
+
+        @Override
+        protected StatefulRedisConnection<String, String> connectStandalone() {
+            return client.connect(codec);
+        }
+
+        @Override
+        protected StatefulRedisPubSubConnection<String, String> connectPubSub() {
+            return client.connectPubSub(codec);
+        }
+
+        @Override
+        protected ClientResources getResources() {
+            return client.getResources();
+        }
+
+        @Override
+        protected AbstractRedisClient getClient() {
+            return client;
+        }
+
+        @Override
+        protected KeyLayout getKeyLayout() {
+            return keyLayout;
+        }
+
+        @Override
+        protected boolean isCluster() {
+            return false;
+        }
+
+        @Override
+        protected CompletionStage<Void> forEachMaster(RedisClusterAsyncCommands<String, String> commands,
+                Function<RedisClusterAsyncCommands<String, String>, CompletionStage<Void>> action) {
+            return action.apply(commands);
+        }
+    }
+
+    private static class Cluster extends Connector {
+
+        private final RedisClusterClient client;
+        private final RedisCodec<String, String> codec;
+        private final KeyLayout keyLayout;
+
+        private Cluster(RedisClusterClient client, int shards, RedisCodec<String, String> codec) {
+            this.client = client;
+            this.codec = codec;
+            this.keyLayout = new ClusterKeyLayout(shards);
+        }
+
+        @Override
+        protected RedaoConnection<String, String> connect() {
+            return RedaoConnection.of(client.connect(codec));
+        }
+
+        @Override
+        protected <K, V> RedaoConnection<K, V> connect(RedisCodec<K, V> codec) {
+            return RedaoConnection.of(client.connect(codec));
+        }
+
+        @Override
+        protected StatefulRedisConnection<String, String> connectStandalone() {
+            throw new UnsupportedOperationException("Standalone connections are not available on Redis Cluster");
+        }
+
+        @Override
+        protected StatefulRedisPubSubConnection<String, String> connectPubSub() {
+            // Classic pub/sub messages are propagated across the cluster so any node may be subscribed to
+            return client.connectPubSub(codec);
+        }
+
+        @Override
+        protected ClientResources getResources() {
+            return client.getResources();
+        }
+
+        @Override
+        protected AbstractRedisClient getClient() {
+            return client;
+        }
+
+        @Override
+        protected KeyLayout getKeyLayout() {
+            return keyLayout;
+        }
+
+        @Override
+        protected boolean isCluster() {
+            return true;
+        }
+
+        /*
+         * A cluster connection's commands are carried by a connection per node, so the handler is compared to this
+         * connection's connection to the node at the handler's address
+         */
+        @Override
+        protected CompletionStage<Boolean> isHandlerOf(StatefulConnection<?, ?> connection,
+                RedisChannelHandler<?, ?> handler, SocketAddress socketAddress) {
+            if (handler == connection || !(connection instanceof StatefulRedisClusterConnection)
+                    || !(socketAddress instanceof InetSocketAddress)) {
+                return super.isHandlerOf(connection, handler, socketAddress);
+            }
+            StatefulRedisClusterConnection<?, ?> cluster = (StatefulRedisClusterConnection<?, ?>) connection;
+            InetSocketAddress address = (InetSocketAddress) socketAddress;
+            for (RedisClusterNode node : cluster.getPartitions()) {
+                if (isAddressOf(node.getUri(), address)) {
+                    // Should the handler belong to another connection, this opens this connection's one to the node
+                    // ahead of its first use
+                    return cluster.getConnectionAsync(node.getNodeId())
+                            .thenApply(nodeConnection -> nodeConnection == handler);
+                }
+            }
+            return CompletableFuture.completedFuture(false);
+        }
+
+        private static boolean isAddressOf(RedisURI uri, InetSocketAddress address) {
+            if (uri.getPort() != address.getPort()) {
+                return false;
+            }
+            return uri.getHost().equals(address.getHostString())
+                    || address.getAddress() != null && uri.getHost().equals(address.getAddress().getHostAddress());
+        }
+
+        @Override
+        protected CompletionStage<Void> forEachMaster(RedisClusterAsyncCommands<String, String> commands,
+                Function<RedisClusterAsyncCommands<String, String>, CompletionStage<Void>> action) {
+            return client.connectAsync(StringCodec.UTF8).thenCompose(connection -> {
+                List<CompletableFuture<?>> actions = new ArrayList<>();
+                for (RedisClusterNode node : connection.getPartitions()) {
+                    if (node.is(RedisClusterNode.NodeFlag.MASTER)) {
+                        actions.add(connection.getConnectionAsync(node.getNodeId())
+                                .thenCompose(nodeConnection -> action.apply(nodeConnection.async()))
+                                .toCompletableFuture());
+                    }
+                }
+                return CompletableFuture.allOf(actions.toArray(new CompletableFuture[0]))
+                        .whenComplete((v, ex) -> connection.closeAsync());
+            });
+        }
+    }
+}
@@ -19,6 +19,7 @@ public class Dao {
     private final RedaoCommando rcommando;
     private final ValueFormatter formatter;
     private final String type;
+    private final String indexKey;
     private final String path;
     private final String id;
 
@@ -26,7 +27,8 @@ public class Dao {
         this.rcommando = rcommando;
         this.formatter = formatter;
         this.type = type;
-        this.path = type + "/" + id;
+        this.indexKey = rcommando.getKeyLayout().getIndexKey(type, id);
+        this.path = rcommando.getKeyLayout().getDaoKey(type, id);
         this.id = id;
     }
 
@@ -39,9 +41,13 @@ public class Dao {
     }
 
     public String getPath() { return path; }
+
+    protected ValueFormatter getFormatter() {
+        return formatter;
+    }
     
     public boolean exists() {
-    	return rcommando.core().exists(this.path) == 1L;
+    	return rcommando.dispatch(c -> c.exists(this.path)) == 1L;
     }
 
     public <T extends Proxy> T as(Class<T> proxyClass) {
@@ -49,17 +55,40 @@ public class Dao {
     }
 
     public DaoValue get(String field) {
-        return new DaoValue(formatter, field, rcommando.core().hget(path, field));
+        NearCache cache = rcommando.getNearCache();
+        if (cache != null) {
+            return new DaoValue(formatter, field, cache.hget(path, field));
+        } else if (rcommando.isByteValueCodecEnabled()) {
+            return DaoValue.fromBytes(formatter, field, rcommando.dispatchBytes(c -> c.hget(path, field)));
+        } else {
+            return new DaoValue(formatter, field, rcommando.dispatch(c -> c.hget(path, field)));
+        }
     }
 
     public DaoValues get(String... fields) {
-        List<KeyValue<String, String>> values = rcommando.core().hmget(this.path, fields);
-        return new DaoValues(formatter, values);
+        NearCache cache = rcommando.getNearCache();
+        if (cache != null) {
+            return new DaoValues(formatter, cache.hmget(this.path, fields));
+        } else if (rcommando.isByteValueCodecEnabled()) {
+            List<KeyValue<String, byte[]>> values = rcommando.dispatchBytes(c -> c.hmget(this.path, fields));
+            return DaoValues.fromBytes(formatter, values);
+        } else {
+            List<KeyValue<String, String>> values = rcommando.dispatch(c -> c.hmget(this.path, fields));
+            return new DaoValues(formatter, values);
+        }
     }
 
     public DaoValues getAll() {
-        Map<String, String> values = rcommando.core().hgetall(this.path);
-        return new DaoValues(formatter, values);
+        NearCache cache = rcommando.getNearCache();
+        if (cache != null) {
+            return new DaoValues(formatter, cache.hgetall(this.path));
+        } else if (rcommando.isByteValueCodecEnabled()) {
+            Map<String, byte[]> values = rcommando.dispatchBytes(c -> c.hgetall(this.path));
+            return DaoValues.fromBytes(formatter, values);
+        } else {
+            Map<String, String> values = rcommando.dispatch(c -> c.hgetall(this.path));
+            return new DaoValues(formatter, values);
+        }
     }
 
     public Optional<Modification> set(Object... fieldsAndValues) {
@@ -68,35 +97,18 @@ public class Dao {
 
     public Optional<Modification> setTs(Object... fieldsAndValues) {
         long now = System.currentTimeMillis();
-        Object[] fieldsAndValuesWithTimestamp = Arrays.copyOf(fieldsAndValues, fieldsAndValues.length + 2);
-        fieldsAndValuesWithTimestamp[fieldsAndValues.length] = "timestamp";
-        fieldsAndValuesWithTimestamp[fieldsAndValues.length + 1] = now;
-        return this.setHelper(now, fieldsAndValuesWithTimestamp);
+        return this.setHelper(now, withTimestamp(now, fieldsAndValues));
     }
 
     private Optional<Modification> setHelper(long score, Object... fieldsAndValues) {
     	List<String> bulkChanges = rcommando.eval()
                 .cachedScript(Scripts.DAO_SET)
-                .addKeys(Keys.TYPES, this.type, this.path, this.type +".change")
+                .addKeys(scriptKeys())
+                .addArg(getChangeChannel())
                 .addArg(score)
                 .addArgs(prepareArgsAsArray(fieldsAndValues))
                 .returnMulti();
-
-        if (bulkChanges.size() > 0) {
-            List<ModifiedValue> changes = new ArrayList<>();
-            long version = Long.parseLong(bulkChanges.get(0));
-            for (int i=1; i<bulkChanges.size(); i+=3) {
-                ModifiedValue changedValue = new ModifiedValue(bulkChanges.get(i),
-                        new DaoValue(formatter, bulkChanges.get(i), bulkChanges.get(i+1)),
-                        new DaoValue(formatter, bulkChanges.get(i), bulkChanges.get(i+2)));
-                changes.add(changedValue);
-            }
-            Modification result = new Modification(this, version == 1L, changes);
-            rcommando.invokeChangeCallbacks(result);
-            return Optional.of(result);
-        } else {
-            return Optional.empty();
-        }
+        return handleSetResult(bulkChanges);
     }
 
     public Optional<Modification> setAll(Map<String, Object> properties) {
@@ -108,53 +120,95 @@ public class Dao {
     }
 
     public Optional<Modification> setAll(Stream<Map.Entry<String, Object>> properties) {
-        Object[] fieldsAndValues = properties
-                .flatMap(entry -> Stream.of(entry.getKey(), entry.getValue()))
-                .collect(Collectors.toList())
-                .toArray(new Object[0]);
+        Object[] fieldsAndValues = flatten(properties);
         return fieldsAndValues.length > 0 ? this.set(fieldsAndValues) : Optional.empty();
     }
 
     public boolean touch() {
-        boolean created = rcommando.eval()
+        long version = rcommando.eval()
             .cachedScript(Scripts.DAO_TOUCH)
-            .addKeys(Keys.TYPES, this.type, this.path, this.type + ".change")
+            .addKeys(scriptKeys())
+            .addArg(getChangeChannel())
             .addArg(0)
-            .returnLong() == 1L;
-        if (created) {
-            rcommando.invokeObjectInsertCallbacks(this);
-        }
-        return created;
+            .returnLong();
+        return handleTouchResult(version);
     }
 
     public boolean delete() {
-        int numDeleted = rcommando.eval()
+        long numDeleted = rcommando.eval()
                 .cachedScript(Scripts.DAO_CHECKED_DELETE)
-                .addKeys(Keys.TYPES, this.type, this.path, this.type + ".change")
-                .returnInt();
-        
-        if (numDeleted == 1) {
-            rcommando.invokeDeleteCallbacks(type, id);
-            return true;
-        } else {
-            return false;
-        }
+                .addKeys(scriptKeys())
+                .addArg(getChangeChannel())
+                .returnLong();
+        return handleDeleteResult(numDeleted);
     }
 
     public Optional<Modification> clear(String... fields) {
         List<String> bulkChanges = rcommando.eval()
                 .cachedScript(Scripts.DAO_CLEAR_FIELD)
-                .addKeys(this.type, this.path, this.type +".change")
-                .addArgs(fields)
+                .addKeys(this.indexKey, this.path)
+                .addArg(getChangeChannel())
+                .addArgs(prepareFieldArgs(fields))
                 .returnMulti();
+        return handleClearResult(bulkChanges);
+    }
+
+    public AsyncDao async() {
+        return new AsyncDao(this, rcommando.async());
+    }
 
+    /**
+     * @return The types, index and Dao keys passed to the Dao scripts, which always share a slot on Redis Cluster
+     */
+    protected String[] scriptKeys() {
+        return new String[] {rcommando.getKeyLayout().getTypesKey(type, id), this.indexKey, this.path};
+    }
+
+    protected String getIndexKey() {
+        return indexKey;
+    }
+
+    /**
+     * @return The change channel in the form passed to the Dao scripts
+     */
+    protected String getChangeChannel() {
+        return formatter.toWire(rcommando.getKeyLayout().getChangeChannel(type));
+    }
+
+    /*
+     * The handle*Result methods parse the raw output of the Dao scripts and invoke any registered callbacks. They are
+     * shared by the synchronous, asynchronous and batched code paths so that each reports changes identically.
+     * Each also invalidates the Dao in the near cache so that this instance always reads its own writes
+     */
+    protected Optional<Modification> handleSetResult(List<String> bulkChanges) {
+        invalidateNearCache();
         if (bulkChanges.size() > 0) {
             List<ModifiedValue> changes = new ArrayList<>();
             long version = Long.parseLong(bulkChanges.get(0));
+            for (int i=1; i<bulkChanges.size(); i+=3) {
+                String field = formatter.fromWire(bulkChanges.get(i));
+                ModifiedValue changedValue = new ModifiedValue(field,
+                        new DaoValue(formatter, field, bulkChanges.get(i+1)),
+                        new DaoValue(formatter, field, bulkChanges.get(i+2)));
+                changes.add(changedValue);
+            }
+            Modification result = new Modification(this, version == 1L, changes);
+            rcommando.invokeChangeCallbacks(result);
+            return Optional.of(result);
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    protected Optional<Modification> handleClearResult(List<String> bulkChanges) {
+        invalidateNearCache();
+        if (bulkChanges.size() > 0) {
+            List<ModifiedValue> changes = new ArrayList<>();
             for (int i=1; i<bulkChanges.size(); i+=2) {
-                ModifiedValue changedValue = new ModifiedValue(bulkChanges.get(i),
-                        new DaoValue(formatter, bulkChanges.get(i), bulkChanges.get(i+1)),
-                        new DaoValue(formatter, bulkChanges.get(i), null));
+                String field = formatter.fromWire(bulkChanges.get(i));
+                ModifiedValue changedValue = new ModifiedValue(field,
+                        new DaoValue(formatter, field, bulkChanges.get(i+1)),
+                        new DaoValue(formatter, field, null));
                 changes.add(changedValue);
             }
             Modification result = new Modification(this, false, changes);
@@ -164,8 +218,48 @@ public class Dao {
         	return Optional.empty();
         }
     }
+
+    protected boolean handleTouchResult(long version) {
+        invalidateNearCache();
+        boolean created = version == 1L;
+        if (created) {
+            rcommando.invokeObjectInsertCallbacks(this);
+        }
+        return created;
+    }
+
+    protected boolean handleDeleteResult(long numDeleted) {
+        invalidateNearCache();
+        if (numDeleted == 1L) {
+            rcommando.invokeDeleteCallbacks(type, id);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private void invalidateNearCache() {
+        NearCache cache = rcommando.getNearCache();
+        if (cache != null) {
+            cache.invalidate(path);
+        }
+    }
+
+    protected static Object[] withTimestamp(long now, Object[] fieldsAndValues) {
+        Object[] fieldsAndValuesWithTimestamp = Arrays.copyOf(fieldsAndValues, fieldsAndValues.length + 2);
+        fieldsAndValuesWithTimestamp[fieldsAndValues.length] = "timestamp";
+        fieldsAndValuesWithTimestamp[fieldsAndValues.length + 1] = now;
+        return fieldsAndValuesWithTimestamp;
+    }
+
+    protected static Object[] flatten(Stream<Map.Entry<String, Object>> properties) {
+        return properties
+                .flatMap(entry -> Stream.of(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList())
+                .toArray(new Object[0]);
+    }
     
-    private String[] prepareArgsAsArray(Object[] fieldsAndValues) {
+    protected String[] prepareArgsAsArray(Object[] fieldsAndValues) {
         if (fieldsAndValues.length % 2 != 0) {
             throw new IllegalArgumentException("A value must be specified for each field name");
         }
@@ -177,7 +271,7 @@ public class Dao {
         		nullCount++;
         	} else {
                 if (fieldsAndValues[i] instanceof String) {
-                    args[argsIdx++] = (String) fieldsAndValues[i];
+                    args[argsIdx++] = formatter.toWire((String) fieldsAndValues[i]);
                     args[argsIdx++] = formatter.serialize(fieldsAndValues[i+1]);
                 } else {
                     throw new IllegalArgumentException("Field name is set operation must be a String");
@@ -191,6 +285,14 @@ public class Dao {
         }
     }
     
+    protected String[] prepareFieldArgs(String[] fields) {
+        String[] args = new String[fields.length];
+        for (int i=0; i<fields.length; i++) {
+            args[i] = formatter.toWire(fields[i]);
+        }
+        return args;
+    }
+
     @Override
     public int hashCode() {
     	return Objects.hash(type, id);
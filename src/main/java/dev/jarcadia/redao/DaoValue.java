@@ -1,5 +1,7 @@
 package dev.jarcadia.redao;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -11,66 +13,100 @@ import java.util.Set;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.type.CollectionType;
-import com.fasterxml.jackson.databind.type.TypeFactory;
 import dev.jarcadia.redao.exception.RcDeserializationException;
 import dev.jarcadia.redao.exception.RedisCommandoException;
 
 public class DaoValue {
+
+    private static final Set<Class<?>> IMMUTABLE_TYPES = Set.of(String.class, Boolean.class, Character.class,
+            Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class, BigInteger.class,
+            BigDecimal.class);
     
     private final ValueFormatter formatter;
     private final String fieldName;
-    private final String value;
+    private final byte[] bytes;
+    private String value;
+    private Decoded decoded;
     
     protected DaoValue(ValueFormatter formatter, String fieldName, String value) {
+        this(formatter.forField(fieldName), fieldName, value, null);
+    }
+
+    private DaoValue(ValueFormatter formatter, String fieldName, String value, byte[] bytes) {
         this.formatter = formatter;
         this.fieldName = fieldName;
+        this.bytes = bytes;
         this.value = value;
     }
 
+    /**
+     * Creates a value from the raw bytes read from Redis. The bytes are parsed directly and only decoded to a String
+     * if the raw value is requested
+     */
+    protected static DaoValue fromBytes(ValueFormatter formatter, String fieldName, byte[] bytes) {
+        return new DaoValue(formatter.forField(fieldName), fieldName, null, bytes);
+    }
+
     public String getFieldName() {
         return fieldName;
     }
     
     public boolean isPresent() {
-        return value != null;
+        return bytes != null || value != null;
     }
 
     public String asString() {
         try {
-			return formatter.deserialize(value, String.class);
+			return deserialize(String.class);
 		} catch (RcDeserializationException e) {
 			throw new RedisCommandoException("Unable to deserialize " + this.getRawValue() + " as String");
 		}
     }
 
     public int asInt() {
+        long parsed = parseLong();
+        if (parsed != ValueDecoders.NOT_A_LONG && parsed == (int) parsed) {
+            return (int) parsed;
+        }
         try {
-			return formatter.deserialize(value, Integer.class);
+			return deserialize(Integer.class);
 		} catch (RcDeserializationException e) {
 			throw new RedisCommandoException("Unable to deserialize " + this.getRawValue() + " as Integer");
 		}
     }
 
     public long asLong() {
+        long parsed = parseLong();
+        if (parsed != ValueDecoders.NOT_A_LONG) {
+            return parsed;
+        }
         try {
-			return formatter.deserialize(value, Long.class);
+			return deserialize(Long.class);
 		} catch (RcDeserializationException e) {
 			throw new RedisCommandoException("Unable to deserialize " + this.getRawValue() + " as Long");
 		}
     }
     
     public double asDouble() {
+        double parsed = bytes == null ? formatter.parseDouble(value) : formatter.parseDouble(bytes);
+        if (!Double.isNaN(parsed)) {
+            return parsed;
+        }
         try {
-			return formatter.deserialize(value, Double.class);
+			return deserialize(Double.class);
 		} catch (RcDeserializationException e) {
 			throw new RedisCommandoException("Unable to deserialize " + this.getRawValue() + " as Double");
 		}
     }
     
+    /**
+     * Decodes the value as the given type. Immutable results (Strings, boxed primitives and enums) are retained, so
+     * repeating the call with the same type returns them without decoding the value again. Collections and other
+     * objects are decoded on every call, so each caller receives its own instance that it is free to modify
+     */
     public <T> T as(Class<T> clazz) {
         try {
-			return formatter.deserialize(value, clazz);
+			return decode(clazz);
 		} catch (RcDeserializationException e) {
 			throw new RedisCommandoException("Unable to deserialize " + this.getRawValue() + " as "+ clazz.getSimpleName());
 		}
@@ -78,7 +114,7 @@ public class DaoValue {
     
     public <T> T as(JavaType type) {
         try {
-			return formatter.deserialize(value, type);
+			return decode(type);
 		} catch (RcDeserializationException e) {
 			throw new RedisCommandoException("Unable to deserialize " + this.getRawValue() + " as "+ type.getTypeName());
 		}
@@ -86,12 +122,12 @@ public class DaoValue {
     
     public <T> Optional<T> asOptionalOf(Class<T> clazz) {
     	try {
-    		if (value == null) {
+    		if (!isPresent()) {
     			return null;
     		} else {
-    			T v = formatter.deserialize(value, clazz);
+    			T v = deserialize(clazz);
     			if ( v == null) {
-    				throw new RedisCommandoException("Deserializing " + value + " as " + clazz.getName() + " resulted in null");
+    				throw new RedisCommandoException("Deserializing " + getRawValue() + " as " + clazz.getName() + " resulted in null");
     			} else {
     				return Optional.of(v);
     			}
@@ -102,38 +138,84 @@ public class DaoValue {
     }
     
     public <T> List<T> asListOf(Class<T> clazz) {
-        CollectionType typeReference = TypeFactory.defaultInstance().constructCollectionType(List.class, clazz);
         try {
-			return formatter.deserialize(value, typeReference);
+			return decode(formatter.listOf(clazz));
 		} catch (RcDeserializationException e) {
 			throw new RedisCommandoException("Unable to deserialize " + this.getRawValue() + " as List<"+ clazz.getSimpleName()+">");
 		}
     }
     
     public <T> Set<T> asSetOf(Class<T> clazz) {
-        CollectionType typeReference = TypeFactory.defaultInstance().constructCollectionType(Set.class, clazz);
         try {
-			return formatter.deserialize(value, typeReference);
+			return decode(formatter.setOf(clazz));
 		} catch (RcDeserializationException e) {
 			throw new RedisCommandoException("Unable to deserialize " + this.getRawValue() + " as Set<"+ clazz.getSimpleName()+">");
 		}
     }
     
     public Map<String, DaoValue> asMap() {
-        ObjectNode obj = (ObjectNode) formatter.asNode(value);
+        ObjectNode obj = (ObjectNode) (bytes == null ? formatter.asNode(value) : formatter.asNode(bytes));
         Map<String, DaoValue> result = new HashMap<>();
         
         for (Iterator<Entry<String, JsonNode>> iter = obj.fields(); iter.hasNext(); ) {
             Entry<String, JsonNode> entry = iter.next();
             String fieldName = entry.getKey();
             String rawValue = formatter.serialize(entry.getValue());
-            result.put(fieldName, new DaoValue(formatter, fieldName, rawValue));
+            result.put(fieldName, new DaoValue(formatter, fieldName, rawValue, null));
         }
         
         return result;
     }
     
     public String getRawValue() {
+        if (value == null && bytes != null) {
+            value = formatter.toRawString(bytes);
+        }
         return this.value;
     }
+
+    private long parseLong() {
+        return bytes == null ? formatter.parseLong(value) : formatter.parseLong(bytes);
+    }
+
+    /*
+     * Only the most recent decoding is retained, which covers the common case of a value read repeatedly as the same
+     * type. The key and result are published together so that concurrent readers never see a mismatched pair. Mutable
+     * results are never retained, since a caller modifying one would corrupt later reads
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T decode(Object type) throws RcDeserializationException {
+        Decoded last = this.decoded;
+        if (last != null && last.type.equals(type)) {
+            return (T) last.value;
+        }
+        T result = type instanceof JavaType ? deserialize((JavaType) type) : deserialize((Class<T>) type);
+        if (isImmutable(result)) {
+            this.decoded = new Decoded(type, result);
+        }
+        return result;
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value == null || value instanceof Enum || IMMUTABLE_TYPES.contains(value.getClass());
+    }
+
+    private <T> T deserialize(Class<T> clazz) throws RcDeserializationException {
+        return bytes == null ? formatter.deserialize(value, clazz) : formatter.deserialize(bytes, clazz);
+    }
+
+    private <T> T deserialize(JavaType type) throws RcDeserializationException {
+        return bytes == null ? formatter.deserialize(value, type) : formatter.deserialize(bytes, type);
+    }
+
+    private static class Decoded {
+
+        private final Object type;
+        private final Object value;
+
+        private Decoded(Object type, Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
 }
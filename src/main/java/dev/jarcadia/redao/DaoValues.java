@@ -45,6 +45,49 @@ public class DaoValues implements Iterable<DaoValue> {
         };
     }
 
+    private DaoValues(ValueFormatter formatter, Iterator<DaoValue> iter) {
+        this.formatter = formatter;
+        this.iter = iter;
+    }
+
+    /**
+     * Creates values from the raw UTF-8 bytes returned by HMGET, see {@link DaoValue#fromBytes}
+     */
+    protected static DaoValues fromBytes(ValueFormatter formatter, List<KeyValue<String, byte[]>> valueList) {
+        final Iterator<KeyValue<String, byte[]>> sourceIter = valueList.iterator();
+        return new DaoValues(formatter, new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return sourceIter.hasNext();
+            }
+
+            @Override
+            public DaoValue next() {
+                KeyValue<String, byte[]> val = sourceIter.next();
+                return DaoValue.fromBytes(formatter, val.getKey(), val.getValueOrElse(null));
+            }
+        });
+    }
+
+    /**
+     * Creates values from the raw UTF-8 bytes returned by HGETALL, see {@link DaoValue#fromBytes}
+     */
+    protected static DaoValues fromBytes(ValueFormatter formatter, Map<String, byte[]> valueMap) {
+        final Iterator<Map.Entry<String, byte[]>> sourceIter = valueMap.entrySet().iterator();
+        return new DaoValues(formatter, new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return sourceIter.hasNext();
+            }
+
+            @Override
+            public DaoValue next() {
+                Map.Entry<String, byte[]> val = sourceIter.next();
+                return DaoValue.fromBytes(formatter, val.getKey(), val.getValue());
+            }
+        });
+    }
+
     @Override
     public Iterator<DaoValue> iterator() {
         return iter;
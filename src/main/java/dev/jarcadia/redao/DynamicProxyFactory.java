@@ -0,0 +1,39 @@
+package dev.jarcadia.redao;
+
+import java.util.Iterator;
+
+import dev.jarcadia.redao.proxy.Proxy;
+
+/**
+ * Creates java.lang.reflect.Proxy instances for proxy interfaces that have no generated implementation
+ */
+class DynamicProxyFactory implements ProxyFactory {
+
+    private final ClassLoader classLoader;
+    private final Class<?>[] interfaces;
+    private final ProxyMetadata metadata;
+
+    protected DynamicProxyFactory(ClassLoader classLoader, ProxyMetadata metadata) {
+        this.classLoader = classLoader;
+        this.interfaces = new Class<?>[] {metadata.getProxyClass()};
+        this.metadata = metadata;
+    }
+
+    @Override
+    public String[] getFieldNames() {
+        return metadata.getGetterFieldNames();
+    }
+
+    @Override
+    public Proxy create(Dao dao) {
+        return (Proxy) java.lang.reflect.Proxy.newProxyInstance(classLoader, interfaces,
+                new ProxyInvocationHandler(dao, metadata));
+    }
+
+    @Override
+    public Proxy create(Dao dao, Iterator<DaoValue> values) {
+        ProxyInvocationHandler handler = new ProxyInvocationHandler(dao, metadata);
+        handler.populate(values);
+        return (Proxy) java.lang.reflect.Proxy.newProxyInstance(classLoader, interfaces, handler);
+    }
+}
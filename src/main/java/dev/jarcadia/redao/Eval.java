@@ -146,6 +146,10 @@ public class Eval {
     	return rcommando.executeScript(script, outputType, keys(), args());
     }
     
+    protected String getScript() {
+        return this.script;
+    }
+
     protected String[] keys() {
         return this.keys.toArray(arrayRef);
     }
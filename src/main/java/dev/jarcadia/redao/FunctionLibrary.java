@@ -0,0 +1,160 @@
+package dev.jarcadia.redao;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import dev.jarcadia.redao.exception.RedisCommandoException;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.BooleanOutput;
+import io.lettuce.core.output.CommandOutput;
+import io.lettuce.core.output.IntegerOutput;
+import io.lettuce.core.output.NestedMultiOutput;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.output.ValueOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is responsible for installing the Dao write path as a Redis Functions library (Redis 7+) and invoking its
+ * functions with FCALL. Unlike scripts, functions are persisted and replicated with the dataset so they survive
+ * restarts and replica promotion without being reloaded.
+ */
+class FunctionLibrary {
+
+    private final Logger logger = LoggerFactory.getLogger(FunctionLibrary.class);
+
+    private final Connector connector;
+    private final RedisClusterAsyncCommands<String, String> commands;
+    private final Duration timeout;
+
+    protected FunctionLibrary(Connector connector, RedisClusterAsyncCommands<String, String> commands, Duration timeout) {
+        this.connector = connector;
+        this.commands = commands;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Installs the library if it is missing or older than {@link Scripts#FUNCTION_LIBRARY_VERSION}. FUNCTION LOAD
+     * REPLACE swaps the library atomically, so concurrent callers never observe a partially upgraded library. A newer
+     * installed library is left in place to support rolling deployments. On Redis Cluster the library is installed on
+     * every master.
+     */
+    protected synchronized void install() {
+        try {
+            installAsync().toCompletableFuture().get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof RedisCommandoException ? (RedisCommandoException) ex.getCause()
+                    : new RedisCommandoException("Unable to install redao function library", ex.getCause());
+        } catch (InterruptedException | TimeoutException ex) {
+            throw new RedisCommandoException("Unable to install redao function library", ex);
+        }
+    }
+
+    /**
+     * Installs the library as described by {@link #install()} without blocking the calling thread
+     */
+    protected CompletionStage<Void> installAsync() {
+        return connector.forEachMaster(commands, this::install);
+    }
+
+    private CompletionStage<Void> install(RedisClusterAsyncCommands<String, String> commands) {
+        return getInstalledVersion(commands).thenCompose(installed -> {
+            if (installed < Scripts.FUNCTION_LIBRARY_VERSION) {
+                logger.info("Installing redao function library version {} (installed version {})",
+                        Scripts.FUNCTION_LIBRARY_VERSION, installed);
+                return commands.dispatch(Keyword.FUNCTION, new StatusOutput<>(StringCodec.UTF8),
+                        new CommandArgs<>(StringCodec.UTF8).add(Keyword.LOAD).add(Keyword.REPLACE)
+                                .add(Scripts.FUNCTION_LIBRARY))
+                        .<Void>handle((status, ex) -> {
+                            if (ex != null) {
+                                throw new RedisCommandoException(
+                                        "Unable to install redao function library (Redis 7+ is required)", unwrap(ex));
+                            }
+                            return null;
+                        });
+            } else if (installed > Scripts.FUNCTION_LIBRARY_VERSION) {
+                logger.info("Using newer installed redao function library version {} (local version {})", installed,
+                        Scripts.FUNCTION_LIBRARY_VERSION);
+            }
+            return CompletableFuture.<Void>completedFuture(null);
+        });
+    }
+
+    private CompletionStage<Long> getInstalledVersion(RedisClusterAsyncCommands<String, String> commands) {
+        return commands.dispatch(Keyword.FCALL, new IntegerOutput<>(StringCodec.UTF8),
+                new CommandArgs<>(StringCodec.UTF8).add("redao_version").add(0))
+                .handle((version, ex) -> {
+                    if (ex == null) {
+                        return version == null ? 0L : version;
+                    } else if (isFunctionNotFound(unwrap(ex))) {
+                        return 0L;
+                    }
+                    throw new RedisCommandoException("Unable to determine installed redao function library version",
+                            unwrap(ex));
+                });
+    }
+
+    protected <T> RedisFuture<T> fcall(RedisClusterAsyncCommands<String, String> commands, String function,
+            ScriptOutputType outputType, String[] keys, String[] args) {
+        CommandArgs<String, String> commandArgs = new CommandArgs<>(StringCodec.UTF8)
+                .add(function)
+                .add(keys.length)
+                .addKeys(keys)
+                .addValues(args);
+        return commands.dispatch(Keyword.FCALL, createOutput(outputType), commandArgs);
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException ? ex.getCause() : ex;
+    }
+
+    protected static boolean isFunctionNotFound(Throwable ex) {
+        return ex instanceof RedisCommandExecutionException && ex.getMessage() != null &&
+                ex.getMessage().contains("Function not found");
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> CommandOutput<String, String, T> createOutput(ScriptOutputType outputType) {
+        switch (outputType) {
+            case BOOLEAN:
+                return (CommandOutput) new BooleanOutput<>(StringCodec.UTF8);
+            case INTEGER:
+                return (CommandOutput) new IntegerOutput<>(StringCodec.UTF8);
+            case MULTI:
+                return (CommandOutput) new NestedMultiOutput<>(StringCodec.UTF8);
+            case STATUS:
+                return (CommandOutput) new StatusOutput<>(StringCodec.UTF8);
+            case VALUE:
+                return (CommandOutput) new ValueOutput<>(StringCodec.UTF8);
+            default:
+                throw new RedisCommandoException("Unsupported output type " + outputType);
+        }
+    }
+
+    private enum Keyword implements ProtocolKeyword {
+        FCALL, FUNCTION, LOAD, REPLACE;
+
+        private final byte[] bytes;
+
+        Keyword() {
+            this.bytes = name().getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+}
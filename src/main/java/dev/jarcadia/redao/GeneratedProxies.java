@@ -0,0 +1,100 @@
+package dev.jarcadia.redao;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Iterator;
+
+import dev.jarcadia.redao.exception.ProxyException;
+import dev.jarcadia.redao.proxy.Proxy;
+
+/**
+ * This class locates proxy implementations generated at compile time by ProxyProcessor. The implementation of a proxy
+ * interface is a class in the same package named RedaoProxy_ followed by the interface's binary simple name with each
+ * '$' replaced by '_', for example RedaoProxy_Outer_PersonProxy for Outer.PersonProxy.
+ */
+class GeneratedProxies {
+
+    private static final String PREFIX = "RedaoProxy_";
+
+    private static final MethodType CONSTRUCTOR = MethodType.methodType(void.class, Dao.class);
+    private static final MethodType PREFETCHED_CONSTRUCTOR = MethodType.methodType(void.class, Dao.class, Iterator.class);
+
+    /**
+     * @return A factory creating instances of the generated implementation, or null if none was generated
+     */
+    protected static ProxyFactory find(Class<? extends Proxy> proxyClass) {
+        Class<?> impl;
+        try {
+            impl = Class.forName(getImplementationName(proxyClass), true, proxyClass.getClassLoader());
+        } catch (ClassNotFoundException ex) {
+            return null;
+        }
+        if (!proxyClass.isAssignableFrom(impl)) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            String[] fieldNames = (String[]) lookup.findStaticGetter(impl, "FIELDS", String[].class).invoke();
+            MethodHandle constructor = lookup.findConstructor(impl, CONSTRUCTOR)
+                    .asType(MethodType.methodType(Proxy.class, Dao.class));
+            MethodHandle prefetchedConstructor = lookup.findConstructor(impl, PREFETCHED_CONSTRUCTOR)
+                    .asType(MethodType.methodType(Proxy.class, Dao.class, Iterator.class));
+            return new GeneratedProxyFactory(impl, fieldNames.clone(), constructor, prefetchedConstructor);
+        } catch (NoSuchMethodException | NoSuchFieldException | IllegalAccessException ex) {
+            throw new ProxyException("Generated proxy " + impl.getName() + " does not match this version of Redao", ex);
+        } catch (Throwable t) {
+            throw new ProxyException("Unable to initialize generated proxy " + impl.getName(), t);
+        }
+    }
+
+    protected static String getImplementationName(Class<?> proxyClass) {
+        String packageName = proxyClass.getPackageName();
+        String binarySimpleName = packageName.isEmpty() ? proxyClass.getName()
+                : proxyClass.getName().substring(packageName.length() + 1);
+        return (packageName.isEmpty() ? "" : packageName + ".") + PREFIX + binarySimpleName.replace('$', '_');
+    }
+
+    private static class GeneratedProxyFactory implements ProxyFactory {
+
+        private final Class<?> impl;
+        private final String[] fieldNames;
+        private final MethodHandle constructor;
+        private final MethodHandle prefetchedConstructor;
+
+        private GeneratedProxyFactory(Class<?> impl, String[] fieldNames, MethodHandle constructor,
+                MethodHandle prefetchedConstructor) {
+            this.impl = impl;
+            this.fieldNames = fieldNames;
+            this.constructor = constructor;
+            this.prefetchedConstructor = prefetchedConstructor;
+        }
+
+        @Override
+        public String[] getFieldNames() {
+            return fieldNames;
+        }
+
+        @Override
+        public Proxy create(Dao dao) {
+            try {
+                return (Proxy) constructor.invokeExact(dao);
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable t) {
+                throw new ProxyException("Unable to create generated proxy " + impl.getName(), t);
+            }
+        }
+
+        @Override
+        public Proxy create(Dao dao, Iterator<DaoValue> values) {
+            try {
+                return (Proxy) prefetchedConstructor.invokeExact(dao, values);
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable t) {
+                throw new ProxyException("Unable to create generated proxy " + impl.getName(), t);
+            }
+        }
+    }
+}
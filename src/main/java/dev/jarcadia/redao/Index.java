@@ -1,21 +1,79 @@
 package dev.jarcadia.redao;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import dev.jarcadia.redao.exception.RedisCommandoException;
+import dev.jarcadia.redao.proxy.Proxy;
+import io.lettuce.core.GeoArgs;
+import io.lettuce.core.GeoWithin;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.Limit;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScanArgs;
 import io.lettuce.core.ScoredValue;
-import io.lettuce.core.StreamScanCursor;
-import io.lettuce.core.output.ScoredValueStreamingChannel;
+import io.lettuce.core.ScoredValueScanCursor;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
 
 public class Index implements Iterable<Dao> {
 
+    // Bounds the size of each script call, the ids of a batch are passed as keys
+    private static final int GET_ALL_BATCH_SIZE = 500;
+
+    private static final int DEFAULT_SCAN_COUNT = 100;
+
+    private static final int DEFAULT_RANGE_PAGE_SIZE = 500;
+
+    private static final int BACKFILL_CHUNK_SIZE = 500;
+
+    private static final String EQUALITY_INDEX = "eq";
+
+    private static final String NUMERIC_INDEX = "num";
+
+    private static final String PREFIX_INDEX = "lex";
+
+    private static final String CASE_INSENSITIVE_PREFIX_INDEX = "ilex";
+
+    private static final String LOCATION_INDEX = "geo";
+
+    private static final String LATITUDE_INDEX = "lat";
+
+    private static final String LONGITUDE_INDEX = "lon";
+
     private final RedaoCommando rcommando;
     private final ValueFormatter formatter;
     private final String type;
@@ -27,15 +85,23 @@ public class Index implements Iterable<Dao> {
     }
     
     public String getType() {
-    	return this.getType();
+    	return this.type;
+    }
+
+    protected ValueFormatter getFormatter() {
+        return formatter;
     }
 
     public long count() {
-        return rcommando.core().zcard(type);
+        long count = 0;
+        for (String indexKey : rcommando.getKeyLayout().getIndexKeys(type)) {
+            count += rcommando.core().zcard(indexKey);
+        }
+        return count;
     }
 
     public boolean has(String id) {
-        return rcommando.core().zscore(type, id) != null;
+        return rcommando.core().zscore(rcommando.getKeyLayout().getIndexKey(type, id), formatter.toWire(id)) != null;
     }
     
     public Dao get(String id) {
@@ -46,48 +112,848 @@ public class Index implements Iterable<Dao> {
         return new Dao(rcommando, formatter, type, UUID.randomUUID().toString());
     }
 
+    /**
+     * @return A Dao for each id, whether or not it exists. See {@link #getExisting(Collection)}
+     */
     public Set<Dao> get(Collection<String> ids) {
-        // TODO this could be improved to be one (or a few) round trips using LUA
         return ids.stream().map(id -> this.get(id))
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * @return The Daos of the ids that exist, in the order of the ids
+     */
+    public Set<Dao> getExisting(Collection<String> ids) {
+        Set<Dao> existing = new LinkedHashSet<>();
+        for (String id : getAll(ids).keySet()) {
+            existing.add(get(id));
+        }
+        return existing;
+    }
+
+    /**
+     * Reads the fields of many Daos with one script call per batch of ids, every batch being sent before any reply is
+     * awaited. On Redis Cluster ids are batched by index shard.
+     *
+     * @return The values of the fields, in the order requested, for each id that exists, in the order of the ids
+     */
+    public Map<String, DaoValues> getAll(Collection<String> ids, String... fields) {
+        Map<String, List<String>> idsByIndexKey = new LinkedHashMap<>();
+        for (String id : ids) {
+            idsByIndexKey.computeIfAbsent(rcommando.getKeyLayout().getIndexKey(type, id), k -> new ArrayList<>()).add(id);
+        }
+
+        String[] args = Stream.of(fields).map(formatter::toWire).toArray(String[]::new);
+        List<List<String>> batches = new ArrayList<>();
+        List<CompletionStage<List<Object>>> results = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : idsByIndexKey.entrySet()) {
+            List<String> shardIds = entry.getValue();
+            for (int i=0; i<shardIds.size(); i+=GET_ALL_BATCH_SIZE) {
+                List<String> batch = shardIds.subList(i, Math.min(shardIds.size(), i + GET_ALL_BATCH_SIZE));
+                String[] keys = new String[batch.size() + 1];
+                keys[0] = entry.getKey();
+                for (int j=0; j<batch.size(); j++) {
+                    keys[j + 1] = rcommando.getKeyLayout().getDaoKey(type, batch.get(j));
+                }
+                batches.add(batch);
+                results.add(rcommando.executeScriptAsync(Scripts.DAO_GET_ALL, ScriptOutputType.MULTI, keys, args));
+            }
+        }
+
+        Map<String, DaoValues> found = new HashMap<>();
+        for (int i=0; i<batches.size(); i++) {
+            List<Object> batchResult = join(results.get(i));
+            for (int j=0; j<batchResult.size(); j++) {
+                if (batchResult.get(j) != null) {
+                    @SuppressWarnings("unchecked")
+                    List<String> values = (List<String>) batchResult.get(j);
+                    List<KeyValue<String, String>> fieldValues = new ArrayList<>(fields.length);
+                    for (int f=0; f<fields.length; f++) {
+                        fieldValues.add(KeyValue.fromNullable(fields[f], values.get(f)));
+                    }
+                    found.put(batches.get(i).get(j), new DaoValues(formatter, fieldValues));
+                }
+            }
+        }
+
+        Map<String, DaoValues> ordered = new LinkedHashMap<>();
+        for (String id : ids) {
+            DaoValues values = found.get(id);
+            if (values != null) {
+                ordered.put(id, values);
+            }
+        }
+        return ordered;
+    }
+
+    protected <T> T join(CompletionStage<T> stage) {
+        try {
+            return stage.toCompletableFuture().join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RedisCommandoException("Unable to read " + type + " values", ex.getCause());
+        }
+    }
+
     @Override
     public Iterator<Dao> iterator() {
-        return new IndexIterator();
+        return new IndexIterator(DEFAULT_SCAN_COUNT, false);
     }
-    
+
+    /**
+     * @param scanCount The COUNT hint given to each ZSCAN
+     * @param distinct Whether to skip the repeats ZSCAN may return while Redis rehashes an index. Skipping them
+     * requires remembering every id returned from the index key being scanned
+     */
+    public Iterator<Dao> iterator(int scanCount, boolean distinct) {
+        if (scanCount < 1) {
+            throw new IllegalArgumentException("Scan count must be positive");
+        }
+        return new IndexIterator(scanCount, distinct);
+    }
+
     public Stream<Dao> stream() {
         return StreamSupport.stream(this.spliterator(), false);
     }
+
+    /**
+     * @see #iterator(int, boolean)
+     */
+    public Stream<Dao> stream(int scanCount, boolean distinct) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(scanCount, distinct),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * @return The Daos whose score is between min and max inclusive, in ascending order of score and then id
+     */
+    public Stream<Dao> range(double min, double max) {
+        return range(min, max, false);
+    }
+
+    /**
+     * @param reverse Whether to return Daos in descending rather than ascending order
+     * @return The Daos whose score is between min and max inclusive, read lazily a page at a time
+     */
+    public Stream<Dao> range(double min, double max, boolean reverse) {
+        return range(rcommando.getKeyLayout().getIndexKeys(type), min, max, reverse);
+    }
+
+    /**
+     * @return The Daos whose field, which must have a numeric index, is between min and max inclusive in ascending
+     * order of the field and then id. Daos without a numeric value for the field are not included
+     */
+    public Stream<Dao> range(String field, double min, double max) {
+        return range(field, min, max, false);
+    }
+
+    public Stream<Dao> range(String field, double min, double max, boolean reverse) {
+        return range(numericIndexKeys(field), min, max, reverse);
+    }
+
+    private Stream<Dao> range(List<String> keys, double min, double max, boolean reverse) {
+        Iterator<IndexEntry> entries = new MergedRangeIterator(keys, min, max, reverse);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entries,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).map(IndexEntry::getDao);
+    }
+
+    /**
+     * @return The n entries with the highest values of a field with a numeric index, highest first. The score of
+     * each entry is the field's value
+     */
+    public List<IndexEntry> topN(String field, int n) {
+        return page(numericIndexKeys(field), Double.POSITIVE_INFINITY, null, n, true);
+    }
+
+    /**
+     * @return The first page of the index in ascending order of score and then id
+     */
+    public List<IndexEntry> page(int limit) {
+        return page(rcommando.getKeyLayout().getIndexKeys(type), Double.NEGATIVE_INFINITY, null, limit, false);
+    }
+
+    /**
+     * Keyset pagination: returns the entries ordered after the given score and id, which are those of the last entry
+     * of the previous page. Unlike offsets, a position remains valid while Daos are added and removed.
+     */
+    public List<IndexEntry> page(double afterScore, String afterId, int limit) {
+        return page(rcommando.getKeyLayout().getIndexKeys(type), afterScore, afterId, limit, false);
+    }
+
+    /**
+     * @return The first page of the index in descending order of score and then id, such as newest first
+     */
+    public List<IndexEntry> pageReverse(int limit) {
+        return page(rcommando.getKeyLayout().getIndexKeys(type), Double.POSITIVE_INFINITY, null, limit, true);
+    }
+
+    public List<IndexEntry> pageReverse(double beforeScore, String beforeId, int limit) {
+        return page(rcommando.getKeyLayout().getIndexKeys(type), beforeScore, beforeId, limit, true);
+    }
+
+    private List<IndexEntry> page(List<String> keys, double score, String id, int limit, boolean reverse) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        double min = reverse ? Double.NEGATIVE_INFINITY : score;
+        double max = reverse ? score : Double.POSITIVE_INFINITY;
+        String wireId = formatter.toWire(id);
+        // Each shard contributes at most a page, the first entries of the merged shards form the page
+        List<ScoredValue<String>> candidates = new ArrayList<>();
+        for (String key : keys) {
+            candidates.addAll(rangePage(key, min, max, score, wireId, reverse, limit));
+        }
+        candidates.sort(entryOrder(reverse));
+        List<IndexEntry> page = new ArrayList<>(Math.min(limit, candidates.size()));
+        for (ScoredValue<String> candidate : candidates.subList(0, Math.min(limit, candidates.size()))) {
+            page.add(toEntry(candidate));
+        }
+        return page;
+    }
+
+    /*
+     * Reads up to limit entries of one index key between min and max that are ordered after the given position. When
+     * the position's id is still in the index with the position's score, reading starts from the rank following it.
+     * Otherwise the score bound includes the position's score so entries tied with it are read, and those up to the
+     * position's id are skipped. A null id starts at the bound itself
+     */
+    private List<ScoredValue<String>> rangePage(String indexKey, double min, double max, double afterScore,
+            String afterId, boolean reverse, int limit) {
+        if (afterId != null) {
+            List<ScoredValue<String>> following = rankPage(indexKey, min, max, afterScore, afterId, reverse, limit);
+            if (following != null) {
+                return following;
+            }
+        }
+
+        Range<Double> range = Range.from(boundary(min, true), boundary(max, false));
+        List<ScoredValue<String>> page = new ArrayList<>(limit);
+        long offset = 0;
+        while (page.size() < limit) {
+            Limit pageLimit = Limit.create(offset, limit);
+            List<ScoredValue<String>> values = reverse
+                    ? rcommando.core().zrevrangebyscoreWithScores(indexKey, range, pageLimit)
+                    : rcommando.core().zrangebyscoreWithScores(indexKey, range, pageLimit);
+            for (ScoredValue<String> value : values) {
+                if (afterId != null && value.getScore() == afterScore
+                        && compareMembers(value.getValue(), afterId) * (reverse ? -1 : 1) <= 0) {
+                    continue;
+                }
+                if (page.size() < limit) {
+                    page.add(value);
+                }
+            }
+            if (values.size() < limit) {
+                break;
+            }
+            offset += values.size();
+        }
+        return page;
+    }
+
+    /*
+     * Reads the entries ranked after the position's id, or returns null if the id has since been removed or rescored.
+     * Every Dao in a type's primary index has the same score, so this avoids skipping over all of the entries tied
+     * with the position, which would make walking the whole index quadratic
+     */
+    private List<ScoredValue<String>> rankPage(String indexKey, double min, double max, double afterScore,
+            String afterId, boolean reverse, int limit) {
+        Long rank = reverse ? rcommando.core().zrevrank(indexKey, afterId) : rcommando.core().zrank(indexKey, afterId);
+        if (rank == null) {
+            return null;
+        }
+        // The position itself is read too, confirming that it was not moved since its rank was read
+        List<ScoredValue<String>> values = reverse
+                ? rcommando.core().zrevrangeWithScores(indexKey, rank, rank + limit)
+                : rcommando.core().zrangeWithScores(indexKey, rank, rank + limit);
+        if (values.isEmpty() || !values.get(0).getValue().equals(afterId) || values.get(0).getScore() != afterScore) {
+            return null;
+        }
+        List<ScoredValue<String>> page = new ArrayList<>(limit);
+        for (ScoredValue<String> value : values.subList(1, values.size())) {
+            if (reverse ? value.getScore() < min : value.getScore() > max) {
+                break;
+            }
+            page.add(value);
+        }
+        return page;
+    }
+
+    private Range.Boundary<Double> boundary(double value, boolean lower) {
+        if ((lower && value == Double.NEGATIVE_INFINITY) || (!lower && value == Double.POSITIVE_INFINITY)) {
+            return Range.Boundary.unbounded();
+        }
+        return Range.Boundary.including(value);
+    }
+
+    private IndexEntry toEntry(ScoredValue<String> value) {
+        return new IndexEntry(get(formatter.fromWire(value.getValue())), value.getScore());
+    }
+
+    private static Comparator<ScoredValue<String>> entryOrder(boolean reverse) {
+        Comparator<ScoredValue<String>> order = Comparator.<ScoredValue<String>>comparingDouble(ScoredValue::getScore)
+                .thenComparing(ScoredValue::getValue, Index::compareMembers);
+        return reverse ? order.reversed() : order;
+    }
+
+    /*
+     * Orders members as Redis does, by their bytes. Wire strings are either UTF-8 text, whose byte order is code point
+     * order, or ISO-8859-1 strings with one char per byte
+     */
+    private static int compareMembers(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    /**
+     * @return A parallel stream over the type's Daos, partitioned by rank. See {@link #partitionedSpliterator(int)}
+     */
+    public Stream<Dao> parallelStream() {
+        return StreamSupport.stream(partitionedSpliterator(DEFAULT_RANGE_PAGE_SIZE), true);
+    }
+
+    /**
+     * A Spliterator that reads the index by rank with ZRANGE, one page at a time, and splits by dividing the remaining
+     * ranks. Ranks shift as Daos are added and removed, so unlike iterator() a Dao may be skipped or returned twice if
+     * the type is modified during the traversal.
+     *
+     * @param pageSize The number of ids read by each ZRANGE
+     */
+    public Spliterator<Dao> partitionedSpliterator(int pageSize) {
+        return partitionedSpliterator(pageSize, rcommando::core);
+    }
+
+    /*
+     * @param commands Supplies the commands to read with on the calling thread
+     */
+    private Spliterator<Dao> partitionedSpliterator(int pageSize, Supplier<RedisClusterCommands<String, String>> commands) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        Deque<RankRange> ranges = new ArrayDeque<>();
+        for (String indexKey : rcommando.getKeyLayout().getIndexKeys(type)) {
+            long size = commands.get().zcard(indexKey);
+            if (size > 0) {
+                ranges.add(new RankRange(indexKey, 0, size));
+            }
+        }
+        return new RankRangeSpliterator(ranges, pageSize, commands);
+    }
+
+    /**
+     * Performs an action for every Dao of the type using a pool of the given number of threads. Each thread reads one
+     * page at a time on a connection of its own, so the pages are read concurrently rather than queued on the shared
+     * connection. The connections are closed before returning. Returns once every action has completed, rethrowing
+     * the first exception thrown by an action.
+     */
+    public void forEachParallel(Consumer<? super Dao> action, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Map<Thread, RedaoConnection<String, String>> connections = new ConcurrentHashMap<>();
+        Supplier<RedisClusterCommands<String, String>> commands = () -> connections
+                .computeIfAbsent(Thread.currentThread(), thread -> rcommando.connect()).sync();
+        try {
+            pool.submit(() -> StreamSupport.stream(partitionedSpliterator(DEFAULT_RANGE_PAGE_SIZE, commands), true)
+                    .forEach(action)).get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            } else if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new RedisCommandoException("Unable to process " + type, ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RedisCommandoException("Interrupted while processing " + type, ex);
+        } finally {
+            pool.shutdownNow();
+            // Other workers may still be reading after an action has failed, wait for them before closing
+            pool.awaitQuiescence(rcommando.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            connections.values().forEach(RedaoConnection::close);
+        }
+    }
+
+    /**
+     * Reads the same fields of many Daos with one pipelined HMGET each, so the whole batch costs a single round trip
+     */
+    protected List<DaoValues> fetch(List<Dao> daos, String[] fields) {
+        NearCache cache = rcommando.getNearCache();
+        if (cache != null) {
+            // Hits are served locally, misses are read one by one and then kept current by the near cache
+            return daos.stream().map(dao -> dao.get(fields)).collect(Collectors.toList());
+        } else if (rcommando.isByteValueCodecEnabled()) {
+            RedisClusterAsyncCommands<String, byte[]> commands = rcommando.asyncByteValueCore();
+            List<RedisFuture<List<KeyValue<String, byte[]>>>> futures = daos.stream()
+                    .map(dao -> commands.hmget(dao.getPath(), fields)).collect(Collectors.toList());
+            return await(futures).stream().map(values -> DaoValues.fromBytes(formatter, values))
+                    .collect(Collectors.toList());
+        } else {
+            RedisClusterAsyncCommands<String, String> commands = rcommando.asyncCore();
+            List<RedisFuture<List<KeyValue<String, String>>>> futures = daos.stream()
+                    .map(dao -> commands.hmget(dao.getPath(), fields)).collect(Collectors.toList());
+            return await(futures).stream().map(values -> new DaoValues(formatter, values))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private <T> List<T> await(List<RedisFuture<T>> futures) {
+        long timeout = rcommando.getTimeout().toMillis() * Math.max(1, futures.size() / 1000);
+        if (!LettuceFutures.awaitAll(timeout, TimeUnit.MILLISECONDS, futures.toArray(new RedisFuture[0]))) {
+            throw new RedisCommandoException("Timed out fetching " + futures.size() + " " + type + " values");
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        for (RedisFuture<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException ex) {
+                throw new RedisCommandoException("Unable to fetch " + type + " values", ex.getCause());
+            } catch (InterruptedException ex) {
+                throw new RedisCommandoException("Interrupted while fetching " + type + " values", ex);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Creates an equality index on a field, which {@link #where(String, Object)} queries. Every Dao mutation keeps
+     * the index consistent within the same script. Daos that already exist are indexed in the background, in chunks
+     * of ids, and until the returned future completes queries may be missing some of them. Creating an index that
+     * already exists only indexes existing Daos again.
+     */
+    public CompletableFuture<Void> createIndex(String field) {
+        return createFieldIndex(field, EQUALITY_INDEX);
+    }
+
+    /**
+     * Creates a numeric index on a field, which orders Daos by the field's value for {@link #range(String, double,
+     * double)}, {@link #topN(String, int)} and {@link ProxyIndex#sortedBy}. Values that are not numbers are not
+     * indexed. Existing Daos are indexed in the background as with {@link #createIndex(String)}
+     */
+    public CompletableFuture<Void> createNumericIndex(String field) {
+        return createFieldIndex(field, NUMERIC_INDEX);
+    }
+
+    /**
+     * Creates a prefix index on a string field, which {@link #prefix(String, String, int)} queries. Values that are
+     * not strings are not indexed. Existing Daos are indexed in the background as with {@link #createIndex(String)}
+     *
+     * @param caseInsensitive Whether values and prefixes are compared ignoring the case of ASCII letters
+     */
+    public CompletableFuture<Void> createPrefixIndex(String field, boolean caseInsensitive) {
+        return createFieldIndex(field, caseInsensitive ? CASE_INSENSITIVE_PREFIX_INDEX : PREFIX_INDEX);
+    }
+
+    /**
+     * Creates a location index on a field holding an object with numeric lat and lon properties, which
+     * {@link #within(double, double, double, GeoArgs.Unit)} queries. A type has at most one location index. Existing
+     * Daos are indexed in the background as with {@link #createIndex(String)}
+     */
+    public CompletableFuture<Void> createLocationIndex(String field) {
+        return createFieldIndex(field, LOCATION_INDEX);
+    }
+
+    /**
+     * Creates a location index on a pair of numeric latitude and longitude fields
+     */
+    public CompletableFuture<Void> createLocationIndex(String latitudeField, String longitudeField) {
+        // Either field locates a Dao, so backfilling the latitudes indexes every complete location
+        defineFieldIndex(formatter.toWire(longitudeField), LONGITUDE_INDEX);
+        return createFieldIndex(latitudeField, LATITUDE_INDEX);
+    }
+
+    protected CompletableFuture<Void> createFieldIndex(String field, String kind) {
+        String wireField = formatter.toWire(field);
+        // Defined before the backfill starts so that every concurrent write is indexed by the Dao scripts
+        defineFieldIndex(wireField, kind);
+        return CompletableFuture.runAsync(() -> backfill(wireField), r -> {
+            Thread thread = new Thread(r, "redao-index-backfill-" + type + "-" + field);
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    private void defineFieldIndex(String wireField, String kind) {
+        for (String indexKey : rcommando.getKeyLayout().getIndexKeys(type)) {
+            rcommando.executeScript(Scripts.DAO_CREATE_INDEX, ScriptOutputType.INTEGER, new String[] {indexKey},
+                    new String[] {wireField, kind});
+        }
+    }
+
+    /*
+     * ZSCAN returns every id present for the whole scan, any id added during the scan is indexed by the Dao scripts
+     */
+    private void backfill(String wireField) {
+        ScanArgs scanArgs = ScanArgs.Builder.limit(BACKFILL_CHUNK_SIZE);
+        for (String indexKey : rcommando.getKeyLayout().getIndexKeys(type)) {
+            ScoredValueScanCursor<String> cursor = rcommando.core().zscan(indexKey, scanArgs);
+            while (true) {
+                if (!cursor.getValues().isEmpty()) {
+                    String[] args = new String[cursor.getValues().size() + 1];
+                    args[0] = wireField;
+                    for (int i=0; i<cursor.getValues().size(); i++) {
+                        args[i + 1] = cursor.getValues().get(i).getValue();
+                    }
+                    rcommando.executeScript(Scripts.DAO_BACKFILL_INDEX, ScriptOutputType.INTEGER,
+                            new String[] {indexKey}, args);
+                }
+                if (cursor.isFinished()) {
+                    break;
+                }
+                cursor = rcommando.core().zscan(indexKey, cursor, scanArgs);
+            }
+        }
+    }
+
+    /**
+     * @return The Daos whose field equals the value, using the field's equality index (see createIndex)
+     */
+    public Set<Dao> where(String field, Object value) {
+        String[] args = new String[] {formatter.toWire(field), formatter.serialize(value)};
+        List<CompletionStage<List<String>>> results = new ArrayList<>();
+        for (String indexKey : rcommando.getKeyLayout().getIndexKeys(type)) {
+            results.add(rcommando.executeScriptAsync(Scripts.DAO_WHERE, ScriptOutputType.MULTI,
+                    new String[] {indexKey}, args));
+        }
+        Set<Dao> daos = new LinkedHashSet<>();
+        for (CompletionStage<List<String>> result : results) {
+            for (String id : join(result)) {
+                daos.add(get(formatter.fromWire(id)));
+            }
+        }
+        return daos;
+    }
+
+    /**
+     * @return Up to limit Daos whose field starts with the prefix, ordered by the field's value and then id, using the
+     * field's prefix index (see createPrefixIndex)
+     */
+    public List<Dao> prefix(String field, String prefix, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        String[] args = new String[] {formatter.toWire(field), formatter.toWire(prefix), String.valueOf(limit)};
+        List<CompletionStage<List<String>>> results = new ArrayList<>();
+        for (String indexKey : rcommando.getKeyLayout().getIndexKeys(type)) {
+            results.add(rcommando.executeScriptAsync(Scripts.DAO_PREFIX, ScriptOutputType.MULTI,
+                    new String[] {indexKey}, args));
+        }
+        // Members are value\0id, each shard contributes at most limit of them in order
+        List<String> members = new ArrayList<>();
+        for (CompletionStage<List<String>> result : results) {
+            members.addAll(join(result));
+        }
+        members.sort(Index::compareMembers);
+        List<Dao> daos = new ArrayList<>(Math.min(limit, members.size()));
+        for (String member : members.subList(0, Math.min(limit, members.size()))) {
+            daos.add(get(formatter.fromWire(member.substring(member.lastIndexOf('\0') + 1))));
+        }
+        return daos;
+    }
+
+    /**
+     * @return The Daos located within the radius of a point, nearest first, using the type's location index (see
+     * createLocationIndex)
+     */
+    public Stream<Dao> within(double latitude, double longitude, double radius, GeoArgs.Unit unit) {
+        return within(latitude, longitude, radius, unit, 0);
+    }
+
+    /**
+     * @param limit The maximum number of Daos, the nearest ones, or 0 for all of them
+     */
+    public Stream<Dao> within(double latitude, double longitude, double radius, GeoArgs.Unit unit, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative");
+        }
+        List<String> indexKeys = rcommando.getKeyLayout().getIndexKeys(type);
+        List<String> kinds = rcommando.core().hvals(indexKeys.get(0) + ":idx");
+        if (!kinds.contains(LOCATION_INDEX) && !kinds.contains(LATITUDE_INDEX)) {
+            throw new RedisCommandoException("No location index on " + type);
+        }
+        GeoArgs geoArgs = new GeoArgs().withDistance().asc();
+        if (limit > 0) {
+            geoArgs.withCount(limit);
+        }
+        // Each shard contributes its nearest members, which are merged by distance
+        RedisClusterAsyncCommands<String, String> commands = rcommando.asyncCore();
+        List<GeoWithin<String>> members = new ArrayList<>();
+        await(indexKeys.stream()
+                .map(indexKey -> commands.georadius(indexKey + ":geo", longitude, latitude, radius, unit, geoArgs))
+                .collect(Collectors.toList())).forEach(members::addAll);
+        members.sort(Comparator.<GeoWithin<String>>comparingDouble(GeoWithin::getDistance)
+                .thenComparing(GeoWithin::getMember, Index::compareMembers));
+        return members.stream().limit(limit > 0 ? limit : Long.MAX_VALUE)
+                .map(member -> get(formatter.fromWire(member.getMember())));
+    }
+
+    /**
+     * @return A new query that filters the type's Daos inside Redis, see {@link Query}
+     */
+    public Query query() {
+        return new Query(rcommando, formatter, this);
+    }
+
+    /*
+     * The sorted sets of a field's numeric index, one per index key. Keys are UTF-8 so the length prefix written by
+     * the Dao scripts is the field's UTF-8 length
+     */
+    private List<String> numericIndexKeys(String field) {
+        List<String> indexKeys = rcommando.getKeyLayout().getIndexKeys(type);
+        String kind = rcommando.core().hget(indexKeys.get(0) + ":idx", formatter.toWire(field));
+        if (!NUMERIC_INDEX.equals(kind)) {
+            throw new RedisCommandoException("No numeric index on field " + field + " of " + type);
+        }
+        String suffix = ":idx:" + field.getBytes(StandardCharsets.UTF_8).length + ":" + field;
+        return indexKeys.stream().map(indexKey -> indexKey + suffix).collect(Collectors.toList());
+    }
+
+    protected <T extends Proxy> String getGetterFieldName(Class<T> proxyClass, Function<? super T, ?> getter) {
+        return rcommando.getGetterFieldName(proxyClass, getter);
+    }
+
+    protected ProxyFactory getProxyFactory(Class<? extends Proxy> proxyClass) {
+        return rcommando.getProxyFactory(proxyClass);
+    }
+
+    public AsyncIndex async() {
+        return rcommando.async().getPrimaryIndex(type);
+    }
     
+    /*
+     * Scans each of the type's index keys in turn. On Redis Cluster every shard is routed to the master that owns it.
+     * The next page is requested as soon as the current one arrives, so the scan proceeds while the page is consumed
+     */
     private class IndexIterator implements Iterator<Dao> {
 
-        private final List<ScoredValue<String>> buffer;
-        private final ScoredValueStreamingChannel<String> channel;
-        private StreamScanCursor cursor;
-        
-        public IndexIterator() {
-            this.buffer = new LinkedList<>();
-            this.channel = value -> buffer.add(value);
-            this.cursor = rcommando.core().zscan(channel, type);
+        private final ScanArgs scanArgs;
+        private final Deque<String> buffer;
+        private final Iterator<String> indexKeys;
+        private final Set<String> seen;
+        private String indexKey;
+        private RedisFuture<ScoredValueScanCursor<String>> pending;
+
+        public IndexIterator(int scanCount, boolean distinct) {
+            this.scanArgs = ScanArgs.Builder.limit(scanCount);
+            this.buffer = new ArrayDeque<>(scanCount);
+            this.indexKeys = rcommando.getKeyLayout().getIndexKeys(type).iterator();
+            this.seen = distinct ? new HashSet<>() : null;
+            this.indexKey = indexKeys.next();
+            this.pending = rcommando.asyncCore().zscan(indexKey, scanArgs);
         }
 
         @Override
         public boolean hasNext() {
-        	if (!buffer.isEmpty()) {
-        		return true;
-        	} else if (cursor.isFinished()) {
-        		return false;
-        	} else {
-                cursor = rcommando.core().zscan(channel, type, cursor);
-                return this.hasNext();
-        	}
+            while (buffer.isEmpty() && pending != null) {
+                ScoredValueScanCursor<String> page = LettuceFutures.awaitOrCancel(pending,
+                        rcommando.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+                String pageKey = indexKey;
+                if (!page.isFinished()) {
+                    pending = rcommando.asyncCore().zscan(indexKey, page, scanArgs);
+                } else if (indexKeys.hasNext()) {
+                    indexKey = indexKeys.next();
+                    pending = rcommando.asyncCore().zscan(indexKey, scanArgs);
+                } else {
+                    pending = null;
+                }
+                for (ScoredValue<String> value : page.getValues()) {
+                    if (seen == null || seen.add(value.getValue())) {
+                        buffer.addLast(value.getValue());
+                    }
+                }
+                if (seen != null && !pageKey.equals(indexKey)) {
+                    // An id is only ever in one index key, so repeats need only be tracked within a key
+                    seen.clear();
+                }
+            }
+            return !buffer.isEmpty();
         }
 
         @Override
         public Dao next() {
-            return get(buffer.remove(0).getValue());
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return get(formatter.fromWire(buffer.removeFirst()));
+        }
+    }
+
+    private static class RankRange {
+
+        private final String indexKey;
+        private long start;
+        private final long end;
+
+        private RankRange(String indexKey, long start, long end) {
+            this.indexKey = indexKey;
+            this.start = start;
+            this.end = end;
+        }
+
+        private long size() {
+            return end - start;
+        }
+    }
+
+    /*
+     * Traverses a set of rank ranges, each within one index key. Splitting hands over half of the ranges or, once only
+     * one is left, the upper half of its ranks
+     */
+    private class RankRangeSpliterator implements Spliterator<Dao> {
+
+        private final Deque<RankRange> ranges;
+        private final int pageSize;
+        private final Supplier<RedisClusterCommands<String, String>> commands;
+        private final Deque<String> buffer;
+
+        private RankRangeSpliterator(Deque<RankRange> ranges, int pageSize,
+                Supplier<RedisClusterCommands<String, String>> commands) {
+            this.ranges = ranges;
+            this.pageSize = pageSize;
+            this.commands = commands;
+            this.buffer = new ArrayDeque<>(pageSize);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Dao> action) {
+            while (buffer.isEmpty() && !ranges.isEmpty()) {
+                RankRange range = ranges.peekFirst();
+                long stop = Math.min(range.end, range.start + pageSize) - 1;
+                List<String> ids = commands.get().zrange(range.indexKey, range.start, stop);
+                range.start = stop + 1;
+                if (ids.isEmpty() || range.size() <= 0) {
+                    // An empty page means the index has shrunk past the end of the range
+                    ranges.removeFirst();
+                }
+                buffer.addAll(ids);
+            }
+            if (buffer.isEmpty()) {
+                return false;
+            }
+            action.accept(get(formatter.fromWire(buffer.removeFirst())));
+            return true;
+        }
+
+        @Override
+        public Spliterator<Dao> trySplit() {
+            Deque<RankRange> split = new ArrayDeque<>();
+            if (ranges.size() > 1) {
+                int half = ranges.size() / 2;
+                while (split.size() < half) {
+                    split.addFirst(ranges.removeLast());
+                }
+            } else if (ranges.size() == 1 && ranges.peekFirst().size() >= 2L * pageSize) {
+                RankRange range = ranges.removeFirst();
+                long mid = range.start + range.size() / 2;
+                ranges.add(new RankRange(range.indexKey, range.start, mid));
+                split.add(new RankRange(range.indexKey, mid, range.end));
+            } else {
+                return null;
+            }
+            return new RankRangeSpliterator(split, pageSize, commands);
+        }
+
+        @Override
+        public long estimateSize() {
+            long size = buffer.size();
+            for (RankRange range : ranges) {
+                size += range.size();
+            }
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.NONNULL | Spliterator.CONCURRENT;
+        }
+    }
+
+    /*
+     * Merges a keyset cursor per sorted set, the index keys or a field's numeric index keys, so that entries are
+     * returned in order across every shard
+     */
+    private class MergedRangeIterator implements Iterator<IndexEntry> {
+
+        private final PriorityQueue<RangeCursor> cursors;
+
+        private MergedRangeIterator(List<String> keys, double min, double max, boolean reverse) {
+            Comparator<ScoredValue<String>> order = entryOrder(reverse);
+            this.cursors = new PriorityQueue<>((a, b) -> order.compare(a.buffer.peekFirst(), b.buffer.peekFirst()));
+            for (String key : keys) {
+                RangeCursor cursor = new RangeCursor(key, min, max, reverse);
+                if (cursor.fill()) {
+                    cursors.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !cursors.isEmpty();
+        }
+
+        @Override
+        public IndexEntry next() {
+            RangeCursor cursor = cursors.poll();
+            if (cursor == null) {
+                throw new NoSuchElementException();
+            }
+            ScoredValue<String> value = cursor.buffer.removeFirst();
+            if (cursor.fill()) {
+                cursors.add(cursor);
+            }
+            return toEntry(value);
+        }
+    }
+
+    private class RangeCursor {
+
+        private final String indexKey;
+        private final double min;
+        private final double max;
+        private final boolean reverse;
+        private final Deque<ScoredValue<String>> buffer;
+        private double lastScore;
+        private String lastId;
+        private boolean exhausted;
+
+        private RangeCursor(String indexKey, double min, double max, boolean reverse) {
+            this.indexKey = indexKey;
+            this.min = min;
+            this.max = max;
+            this.reverse = reverse;
+            this.buffer = new ArrayDeque<>(DEFAULT_RANGE_PAGE_SIZE);
+            this.lastScore = reverse ? max : min;
+        }
+
+        /**
+         * @return Whether the cursor has a current entry, reading the next page if necessary
+         */
+        private boolean fill() {
+            if (buffer.isEmpty() && !exhausted) {
+                double lower = reverse ? min : lastScore;
+                double upper = reverse ? lastScore : max;
+                List<ScoredValue<String>> page = rangePage(indexKey, lower, upper, lastScore, lastId, reverse,
+                        DEFAULT_RANGE_PAGE_SIZE);
+                exhausted = page.size() < DEFAULT_RANGE_PAGE_SIZE;
+                if (!page.isEmpty()) {
+                    ScoredValue<String> last = page.get(page.size() - 1);
+                    lastScore = last.getScore();
+                    lastId = last.getValue();
+                }
+                buffer.addAll(page);
+            }
+            return !buffer.isEmpty();
         }
     }
 }
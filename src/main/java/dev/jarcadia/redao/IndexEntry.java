@@ -0,0 +1,34 @@
+package dev.jarcadia.redao;
+
+/**
+ * A Dao together with its score in the type's index, or in a field's numeric index where the score is the field's
+ * value. The score and id of the last entry of a page are the position from which the next page continues, see
+ * {@link Index#page(double, String, int)}
+ */
+public class IndexEntry {
+
+    private final Dao dao;
+    private final double score;
+
+    protected IndexEntry(Dao dao, double score) {
+        this.dao = dao;
+        this.score = score;
+    }
+
+    public Dao getDao() {
+        return dao;
+    }
+
+    public String getId() {
+        return dao.getId();
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return dao + "@" + score;
+    }
+}
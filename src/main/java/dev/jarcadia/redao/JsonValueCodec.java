@@ -0,0 +1,30 @@
+package dev.jarcadia.redao;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class JsonValueCodec implements ValueCodec {
+
+    @Override
+    public LuaFormat getLuaFormat() {
+        return LuaFormat.JSON;
+    }
+
+    @Override
+    public byte[] encode(ObjectMapper mapper, Object value) throws IOException {
+        return mapper.writeValueAsBytes(value);
+    }
+
+    @Override
+    public <T> T decode(ObjectMapper mapper, byte[] bytes, JavaType type) throws IOException {
+        return mapper.readValue(bytes, type);
+    }
+
+    @Override
+    public JsonNode decodeTree(ObjectMapper mapper, byte[] bytes) throws IOException {
+        return mapper.readTree(bytes);
+    }
+}
@@ -0,0 +1,24 @@
+package dev.jarcadia.redao;
+
+import java.util.List;
+
+/**
+ * Determines the keys used to store each type's index and Daos. All keys touched by a single Dao mutation must hash to
+ * the same slot so that the Dao scripts can run on Redis Cluster, and a Dao's key must be its index key followed by a
+ * slash and its id because the scripts derive the id from it.
+ */
+interface KeyLayout {
+
+    String getTypesKey(String type, String id);
+
+    String getIndexKey(String type, String id);
+
+    String getDaoKey(String type, String id);
+
+    /**
+     * @return Every index key of a type, which together hold the ids of all of its Daos
+     */
+    List<String> getIndexKeys(String type);
+
+    String getChangeChannel(String type);
+}
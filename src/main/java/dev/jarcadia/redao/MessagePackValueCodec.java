@@ -0,0 +1,230 @@
+package dev.jarcadia.redao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Encodes values as MessagePack by way of Jackson's tree model, so the ObjectMapper determines the structure of each
+ * value exactly as it does for JSON. Only the types that Redis' cmsgpack library supports are produced: nil, booleans,
+ * integers, floats, strings, binary, arrays and maps. Arbitrary precision decimals are encoded as doubles and map keys
+ * are always decoded as strings.
+ */
+class MessagePackValueCodec implements ValueCodec {
+
+    private final JsonNodeFactory nodes = JsonNodeFactory.instance;
+
+    @Override
+    public LuaFormat getLuaFormat() {
+        return LuaFormat.MESSAGE_PACK;
+    }
+
+    @Override
+    public byte[] encode(ObjectMapper mapper, Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, value == null ? null : mapper.valueToTree(value));
+        return out.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(ObjectMapper mapper, byte[] bytes, JavaType type) throws IOException {
+        return mapper.readerFor(type).readValue(decodeTree(mapper, bytes));
+    }
+
+    @Override
+    public JsonNode decodeTree(ObjectMapper mapper, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            JsonNode node = read(buffer);
+            if (buffer.hasRemaining()) {
+                throw new IOException("Unexpected " + buffer.remaining() + " trailing bytes in MessagePack value");
+            }
+            return node;
+        } catch (RuntimeException ex) {
+            throw new IOException("Malformed MessagePack value", ex);
+        }
+    }
+
+    private void write(ByteArrayOutputStream out, JsonNode node) throws IOException {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            out.write(0xc0);
+        } else if (node.isBoolean()) {
+            out.write(node.booleanValue() ? 0xc3 : 0xc2);
+        } else if (node.isIntegralNumber() && node.canConvertToLong()) {
+            writeLong(out, node.longValue());
+        } else if (node.isBigInteger() && node.bigIntegerValue().signum() > 0 && node.bigIntegerValue().bitLength() <= 64) {
+            out.write(0xcf);
+            writeBytes(out, node.bigIntegerValue().longValue(), 8);
+        } else if (node.isFloat()) {
+            out.write(0xca);
+            writeBytes(out, Float.floatToIntBits(node.floatValue()), 4);
+        } else if (node.isNumber()) {
+            out.write(0xcb);
+            writeBytes(out, Double.doubleToLongBits(node.doubleValue()), 8);
+        } else if (node.isBinary()) {
+            byte[] bytes = node.binaryValue();
+            writeHeader(out, bytes.length, -1, 0xc4, 0xc5, 0xc6);
+            out.write(bytes);
+        } else if (node.isArray()) {
+            writeHeader(out, node.size(), 0x90, -1, 0xdc, 0xdd);
+            for (JsonNode element : node) {
+                write(out, element);
+            }
+        } else if (node.isObject()) {
+            writeHeader(out, node.size(), 0x80, -1, 0xde, 0xdf);
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                writeString(out, field.getKey());
+                write(out, field.getValue());
+            }
+        } else {
+            // Text, and any embedded object that Jackson could not express as a tree, is written as a string
+            writeString(out, node.asText());
+        }
+    }
+
+    private void writeString(ByteArrayOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeHeader(out, bytes.length, 0xa0, 0xd9, 0xda, 0xdb);
+        out.write(bytes);
+    }
+
+    private void writeLong(ByteArrayOutputStream out, long value) {
+        if (value >= 0 && value < 128) {
+            out.write((int) value);
+        } else if (value < 0 && value >= -32) {
+            out.write((int) value & 0xff);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            out.write(0xd0);
+            writeBytes(out, value, 1);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            out.write(0xd1);
+            writeBytes(out, value, 2);
+        } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            out.write(0xd2);
+            writeBytes(out, value, 4);
+        } else {
+            out.write(0xd3);
+            writeBytes(out, value, 8);
+        }
+    }
+
+    /*
+     * Writes the header for a string, binary, array or map of the given length using the smallest form available.
+     * A fix form of -1 or an 8 bit form of -1 indicates that the type does not have that form
+     */
+    private void writeHeader(ByteArrayOutputStream out, int length, int fix, int form8, int form16, int form32) {
+        int fixLimit = fix == 0xa0 ? 32 : 16;
+        if (fix != -1 && length < fixLimit) {
+            out.write(fix | length);
+        } else if (form8 != -1 && length < 0x100) {
+            out.write(form8);
+            writeBytes(out, length, 1);
+        } else if (length < 0x10000) {
+            out.write(form16);
+            writeBytes(out, length, 2);
+        } else {
+            out.write(form32);
+            writeBytes(out, length, 4);
+        }
+    }
+
+    private void writeBytes(ByteArrayOutputStream out, long value, int count) {
+        for (int i=count-1; i>=0; i--) {
+            out.write((int) (value >>> (i * 8)) & 0xff);
+        }
+    }
+
+    private JsonNode read(ByteBuffer in) throws IOException {
+        int b = in.get() & 0xff;
+        if (b <= 0x7f) {
+            return nodes.numberNode(b);
+        } else if (b <= 0x8f) {
+            return readMap(in, b & 0x0f);
+        } else if (b <= 0x9f) {
+            return readArray(in, b & 0x0f);
+        } else if (b <= 0xbf) {
+            return nodes.textNode(readString(in, b & 0x1f));
+        } else if (b >= 0xe0) {
+            return nodes.numberNode((byte) b);
+        }
+
+        switch (b) {
+            case 0xc0: return nodes.nullNode();
+            case 0xc2: return nodes.booleanNode(false);
+            case 0xc3: return nodes.booleanNode(true);
+            case 0xc4: return nodes.binaryNode(readBytes(in, in.get() & 0xff));
+            case 0xc5: return nodes.binaryNode(readBytes(in, in.getShort() & 0xffff));
+            case 0xc6: return nodes.binaryNode(readBytes(in, readLength(in)));
+            case 0xca: return nodes.numberNode(in.getFloat());
+            case 0xcb: return nodes.numberNode(in.getDouble());
+            case 0xcc: return nodes.numberNode(in.get() & 0xff);
+            case 0xcd: return nodes.numberNode(in.getShort() & 0xffff);
+            case 0xce: return nodes.numberNode(in.getInt() & 0xffffffffL);
+            case 0xcf: {
+                long value = in.getLong();
+                return value >= 0 ? nodes.numberNode(value)
+                        : nodes.numberNode(new BigInteger(Long.toUnsignedString(value)));
+            }
+            case 0xd0: return nodes.numberNode(in.get());
+            case 0xd1: return nodes.numberNode(in.getShort());
+            case 0xd2: return nodes.numberNode(in.getInt());
+            case 0xd3: return nodes.numberNode(in.getLong());
+            case 0xd9: return nodes.textNode(readString(in, in.get() & 0xff));
+            case 0xda: return nodes.textNode(readString(in, in.getShort() & 0xffff));
+            case 0xdb: return nodes.textNode(readString(in, readLength(in)));
+            case 0xdc: return readArray(in, in.getShort() & 0xffff);
+            case 0xdd: return readArray(in, readLength(in));
+            case 0xde: return readMap(in, in.getShort() & 0xffff);
+            case 0xdf: return readMap(in, readLength(in));
+            default: throw new IOException("Unsupported MessagePack type 0x" + Integer.toHexString(b));
+        }
+    }
+
+    private ArrayNode readArray(ByteBuffer in, int size) throws IOException {
+        ArrayNode array = nodes.arrayNode(size);
+        for (int i=0; i<size; i++) {
+            array.add(read(in));
+        }
+        return array;
+    }
+
+    private ObjectNode readMap(ByteBuffer in, int size) throws IOException {
+        ObjectNode map = nodes.objectNode();
+        for (int i=0; i<size; i++) {
+            String key = read(in).asText();
+            map.set(key, read(in));
+        }
+        return map;
+    }
+
+    private String readString(ByteBuffer in, int length) {
+        return new String(readBytes(in, length), StandardCharsets.UTF_8);
+    }
+
+    private byte[] readBytes(ByteBuffer in, int length) {
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private int readLength(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length < 0) {
+            throw new IOException("MessagePack value is too large");
+        }
+        return length;
+    }
+}
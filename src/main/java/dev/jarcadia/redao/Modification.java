@@ -9,11 +9,17 @@ public class Modification {
 	private final Dao dao;
     private final List<ModifiedValue> changes;
     private final boolean inserted;
+    private final boolean deleted;
 
     protected Modification(Dao dao, boolean inserted, List<ModifiedValue> changes) {
+        this(dao, inserted, false, changes);
+    }
+
+    protected Modification(Dao dao, boolean inserted, boolean deleted, List<ModifiedValue> changes) {
     	this.dao = dao;
         this.changes = changes;
         this.inserted = inserted;
+        this.deleted = deleted;
     }
 
     public Dao getDao() {
@@ -24,6 +30,10 @@ public class Modification {
         return inserted;
     }
 
+    public boolean isDelete() {
+        return deleted;
+    }
+
     public List<ModifiedValue> getChanges() {
         return changes;
     }
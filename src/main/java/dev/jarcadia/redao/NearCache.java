@@ -0,0 +1,285 @@
+package dev.jarcadia.redao;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import dev.jarcadia.redao.exception.RedisCommandoException;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.push.PushListener;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is responsible for caching Dao hashes in memory using server-assisted client side caching. Cache misses
+ * are read on a dedicated RESP3 connection with CLIENT TRACKING enabled, so Redis pushes an invalidation message on
+ * that connection whenever any client modifies a hash that was read through it. Entries are also evicted when the
+ * cache is full (least recently used first) or their time to live has elapsed.
+ *
+ * Each cached hash holds the fields that have been read so far, including fields known to be absent. A hash read in
+ * full with HGETALL is complete and can answer any field.
+ */
+class NearCache implements PushListener, Closeable {
+
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(NearCache.class);
+
+    private final StatefulRedisConnection<String, String> connection;
+    private final RedisAsyncCommands<String, String> commands;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+    private final AtomicLongArray generations;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final LongAdder invalidations;
+
+    protected NearCache(StatefulRedisConnection<String, String> connection, int maxSize, Duration ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Near cache size must be at least one");
+        }
+        this.connection = connection;
+        this.commands = connection.async();
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > NearCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.generations = new AtomicLongArray(GENERATION_STRIPES);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.invalidations = new LongAdder();
+
+        connection.addListener(this);
+        enableTracking();
+    }
+
+    private void enableTracking() {
+        try {
+            await(commands.clientTracking(TrackingArgs.Builder.enabled()));
+        } catch (RedisCommandExecutionException ex) {
+            throw new RedisCommandoException("Unable to enable client tracking (Redis 6+ with RESP3 is required)", ex);
+        }
+    }
+
+    protected String hget(String key, String field) {
+        Entry entry = getEntry(key);
+        if (entry != null && entry.has(field)) {
+            hits.increment();
+            return entry.values.get(field);
+        }
+        misses.increment();
+        long generation = getGeneration(key);
+        String value = await(commands.hget(key, field));
+        Map<String, String> values = new HashMap<>();
+        values.put(field, value);
+        merge(key, generation, values, false);
+        return value;
+    }
+
+    protected List<KeyValue<String, String>> hmget(String key, String... fields) {
+        Entry entry = getEntry(key);
+        if (entry != null && entry.hasAll(fields)) {
+            hits.increment();
+            List<KeyValue<String, String>> result = new ArrayList<>(fields.length);
+            for (String field : fields) {
+                result.add(KeyValue.fromNullable(field, entry.values.get(field)));
+            }
+            return result;
+        }
+        misses.increment();
+        long generation = getGeneration(key);
+        List<KeyValue<String, String>> result = await(commands.hmget(key, fields));
+        Map<String, String> values = new HashMap<>();
+        for (KeyValue<String, String> kv : result) {
+            values.put(kv.getKey(), kv.getValueOrElse(null));
+        }
+        merge(key, generation, values, false);
+        return result;
+    }
+
+    protected Map<String, String> hgetall(String key) {
+        Entry entry = getEntry(key);
+        if (entry != null && entry.complete) {
+            hits.increment();
+            return entry.present();
+        }
+        misses.increment();
+        long generation = getGeneration(key);
+        Map<String, String> result = await(commands.hgetall(key));
+        merge(key, generation, new HashMap<>(result), true);
+        return result;
+    }
+
+    /**
+     * Removes a hash from the cache. Reads of the hash that are in flight are not cached when they complete
+     */
+    protected void invalidate(String key) {
+        synchronized (entries) {
+            generations.incrementAndGet(stripe(key));
+            entries.remove(key);
+        }
+        invalidations.increment();
+    }
+
+    protected void invalidateAll() {
+        synchronized (entries) {
+            for (int i=0; i<GENERATION_STRIPES; i++) {
+                generations.incrementAndGet(i);
+            }
+            invalidations.add(entries.size());
+            entries.clear();
+        }
+    }
+
+    /*
+     * Invalidation messages are not delivered while the connection is down and tracking must be enabled again once
+     * it has been reestablished, so everything cached beforehand is discarded
+     */
+    protected void onReconnect() {
+        invalidateAll();
+        commands.clientTracking(TrackingArgs.Builder.enabled()).whenComplete((status, ex) -> {
+            if (ex != null) {
+                logger.warn("Unable to re-enable client tracking after reconnect", ex);
+            }
+            invalidateAll();
+        });
+    }
+
+    @Override
+    public void onPushMessage(PushMessage message) {
+        if ("invalidate".equals(message.getType())) {
+            List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+            Object keys = content.size() > 1 ? content.get(1) : null;
+            if (keys instanceof List) {
+                for (Object key : (List<?>) keys) {
+                    invalidate((String) key);
+                }
+            } else {
+                // A null key list is sent when the database is flushed
+                invalidateAll();
+            }
+        }
+    }
+
+    protected NearCacheStats getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new NearCacheStats(size, hits.sum(), misses.sum(), evictions.sum(), invalidations.sum());
+    }
+
+    private Entry getEntry(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isExpired()) {
+                entries.remove(key);
+                evictions.increment();
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private void merge(String key, long generation, Map<String, String> values, boolean complete) {
+        synchronized (entries) {
+            if (generations.get(stripe(key)) != generation) {
+                // The hash was modified while it was being read
+                return;
+            }
+            Entry existing = entries.get(key);
+            if (existing != null && !existing.isExpired() && !complete) {
+                Map<String, String> merged = new HashMap<>(existing.values);
+                merged.putAll(values);
+                entries.put(key, new Entry(merged, existing.complete, existing.expiresAt));
+            } else {
+                entries.put(key, new Entry(values, complete, System.nanoTime() + ttlNanos));
+            }
+        }
+    }
+
+    private long getGeneration(String key) {
+        return generations.get(stripe(key));
+    }
+
+    private int stripe(String key) {
+        return (key.hashCode() & 0x7fffffff) % GENERATION_STRIPES;
+    }
+
+    private <T> T await(RedisFuture<T> future) {
+        return LettuceFutures.awaitOrCancel(future, connection.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void close() {
+        connection.removeListener(this);
+        connection.close();
+    }
+
+    private static class Entry {
+
+        private final Map<String, String> values;
+        private final boolean complete;
+        private final long expiresAt;
+
+        private Entry(Map<String, String> values, boolean complete, long expiresAt) {
+            this.values = values;
+            this.complete = complete;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean has(String field) {
+            return complete || values.containsKey(field);
+        }
+
+        private boolean hasAll(String[] fields) {
+            for (String field : fields) {
+                if (!has(field)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Map<String, String> present() {
+            Map<String, String> present = new LinkedHashMap<>();
+            values.forEach((field, value) -> {
+                if (value != null) {
+                    present.put(field, value);
+                }
+            });
+            return Collections.unmodifiableMap(present);
+        }
+
+        private boolean isExpired() {
+            return System.nanoTime() - expiresAt > 0;
+        }
+    }
+}
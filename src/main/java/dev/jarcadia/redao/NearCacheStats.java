@@ -0,0 +1,58 @@
+package dev.jarcadia.redao;
+
+/**
+ * A point in time snapshot of the near cache counters
+ */
+public class NearCacheStats {
+
+    private final int size;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long invalidations;
+
+    protected NearCacheStats(int size, long hits, long misses, long evictions, long invalidations) {
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * @return The number of Daos removed because the cache was full or their entry expired
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return The number of Daos removed because they were modified, by this or any other client
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    @Override
+    public String toString() {
+        return "NearCacheStats[size=" + size + " hits=" + hits + " misses=" + misses + " evictions=" + evictions
+                + " invalidations=" + invalidations + "]";
+    }
+}
@@ -0,0 +1,23 @@
+package dev.jarcadia.redao;
+
+import java.util.Iterator;
+
+import dev.jarcadia.redao.proxy.Proxy;
+
+/**
+ * Creates proxies of a single proxy interface, either generated implementations or dynamic proxies
+ */
+interface ProxyFactory {
+
+    /**
+     * @return The fields read by the proxy's getters, in the order expected by {@link #create(Dao, Iterator)}
+     */
+    String[] getFieldNames();
+
+    Proxy create(Dao dao);
+
+    /**
+     * Creates a proxy whose getters are populated from already fetched values, one for each of getFieldNames()
+     */
+    Proxy create(Dao dao, Iterator<DaoValue> values);
+}
@@ -1,22 +1,58 @@
 package dev.jarcadia.redao;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import dev.jarcadia.redao.proxy.Proxy;
+import io.lettuce.core.GeoArgs;
 
 public class ProxyIndex<T extends Proxy> implements Iterable<T> {
 
+    private static final int DEFAULT_PREFETCH_SIZE = 100;
+
     private final Index sourceIndex;
     private final Class<T> proxyClass;
+    private final int prefetchSize;
 
     protected ProxyIndex(Index sourceIndex, Class<T> proxyClass) {
+    	this(sourceIndex, proxyClass, 0);
+    }
+
+    private ProxyIndex(Index sourceIndex, Class<T> proxyClass, int prefetchSize) {
     	this.sourceIndex = sourceIndex;
     	this.proxyClass = proxyClass;
+    	this.prefetchSize = prefetchSize;
+    }
+
+    /**
+     * @return A view of this index whose iterators, streams and subsets read the getter values of their proxies in
+     * pipelined batches rather than one round trip per proxy
+     */
+    public ProxyIndex<T> prefetching() {
+    	return prefetching(DEFAULT_PREFETCH_SIZE);
+    }
+
+    /**
+     * @param batchSize The number of proxies whose values are read together
+     */
+    public ProxyIndex<T> prefetching(int batchSize) {
+    	if (batchSize < 1) {
+    		throw new IllegalArgumentException("Prefetch batch size must be positive");
+    	}
+    	return new ProxyIndex<>(sourceIndex, proxyClass, batchSize);
     }
     
     public String getKey() {
@@ -37,18 +73,58 @@ public class ProxyIndex<T extends Proxy> implements Iterable<T> {
     
     @Override
     public Iterator<T> iterator() {
-        return new ProxiedObjectIterator(sourceIndex.iterator());
+        return prefetchSize > 0 ? new PrefetchingIterator(sourceIndex.iterator())
+                : new ProxiedObjectIterator(sourceIndex.iterator());
     }
     
     public Stream<T> stream() {
         return StreamSupport.stream(this.spliterator(), false);
     }
     
+    /**
+     * @param getter A getter of the proxy interface, such as PersonProxy::getAge, whose field has a numeric index
+     * @return The proxies in ascending order of the getter's field, read lazily from the field's numeric index. Proxies
+     * whose field is missing or not a number are not included
+     */
+    public Stream<T> sortedBy(Function<? super T, ?> getter) {
+    	return sortedBy(getter, false);
+    }
+
+    public Stream<T> sortedBy(Function<? super T, ?> getter, boolean descending) {
+    	String field = sourceIndex.getGetterFieldName(proxyClass, getter);
+    	Iterator<Dao> daos = sourceIndex.range(field, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, descending)
+    			.iterator();
+    	return proxies(daos);
+    }
+
+    /**
+     * @return The proxies located within the radius of a point, nearest first. See
+     * {@link Index#within(double, double, double, GeoArgs.Unit, int)}
+     */
+    public Stream<T> within(double latitude, double longitude, double radius, GeoArgs.Unit unit) {
+    	return within(latitude, longitude, radius, unit, 0);
+    }
+
+    public Stream<T> within(double latitude, double longitude, double radius, GeoArgs.Unit unit, int limit) {
+    	return proxies(sourceIndex.within(latitude, longitude, radius, unit, limit).iterator());
+    }
+
     public Set<T> getSubset(Collection<String> ids) {
+    	if (prefetchSize > 0) {
+    		Set<T> subset = new HashSet<>();
+    		new PrefetchingIterator(ids.stream().map(sourceIndex::get).iterator()).forEachRemaining(subset::add);
+    		return subset;
+    	}
     	return ids.stream().map(id -> this.get(id))
     			.collect(Collectors.toSet());
     }
     
+    private Stream<T> proxies(Iterator<Dao> daos) {
+    	Iterator<T> proxies = prefetchSize > 0 ? new PrefetchingIterator(daos) : new ProxiedObjectIterator(daos);
+    	return StreamSupport.stream(Spliterators.spliteratorUnknownSize(proxies,
+    			Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
     private class ProxiedObjectIterator implements Iterator<T> {
     	
     	private final Iterator<Dao> source;
@@ -68,4 +144,52 @@ public class ProxyIndex<T extends Proxy> implements Iterable<T> {
         }
         
     }
+
+    /*
+     * Reads ahead prefetchSize Daos from the source and fetches their getter values in one pipelined batch
+     */
+    private class PrefetchingIterator implements Iterator<T> {
+
+        private final Iterator<Dao> source;
+        private final ProxyFactory factory;
+        private final Deque<T> page;
+
+        public PrefetchingIterator(Iterator<Dao> source) {
+            this.source = source;
+            this.factory = sourceIndex.getProxyFactory(proxyClass);
+            this.page = new ArrayDeque<>(prefetchSize);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (page.isEmpty() && source.hasNext()) {
+                fetchPage();
+            }
+            return !page.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.removeFirst();
+        }
+
+        private void fetchPage() {
+            List<Dao> daos = new ArrayList<>(prefetchSize);
+            while (daos.size() < prefetchSize && source.hasNext()) {
+                daos.add(source.next());
+            }
+            String[] fields = factory.getFieldNames();
+            if (fields.length == 0) {
+                daos.forEach(dao -> page.add(proxyClass.cast(factory.create(dao))));
+            } else {
+                List<DaoValues> values = sourceIndex.fetch(daos, fields);
+                for (int i=0; i<daos.size(); i++) {
+                    page.add(proxyClass.cast(factory.create(daos.get(i), values.get(i).iterator())));
+                }
+            }
+        }
+    }
 }
@@ -1,124 +1,112 @@
 package dev.jarcadia.redao;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import dev.jarcadia.redao.ProxyMetadata.Dispatch;
 import dev.jarcadia.redao.ProxyMetadata.Getter;
-import dev.jarcadia.redao.exception.ProxyException;
 import dev.jarcadia.redao.exception.RedisCommandoException;
-import dev.jarcadia.redao.proxy.Proxy;
 
 class ProxyInvocationHandler implements InvocationHandler {
-	
+
 	private final Dao dao;
 	private final ProxyMetadata metadata;
-	private final Map<Method, Object> getterValues;
+	private final AtomicReferenceArray<Object> getterValues;
+	// Default method handles bound to the proxy, created on first use
+	private final AtomicReferenceArray<MethodHandle> boundDefaults;
 
 	protected ProxyInvocationHandler(Dao dao, ProxyMetadata metadata) {
 		this.dao = dao;
 		this.metadata = metadata;
-		this.getterValues = new ConcurrentHashMap<>();
+		this.getterValues = new AtomicReferenceArray<>(metadata.getGetters().size());
+		this.boundDefaults = new AtomicReferenceArray<>(metadata.getDefaultMethodCount());
 	}
-	
+
 	@Override
 	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-		switch(metadata.getType(method)) {
+		Dispatch dispatch = metadata.getDispatch(method);
+		switch(dispatch.getType()) {
 		case DEFAULT:
-			return invokeDefault(proxy, method, args);
+			return invokeDefault(proxy, dispatch.getIndex(), args);
 		case GETTER:
-			return invokeGetter(method);
+			return invokeGetter(dispatch.getIndex());
 		case SETTER:
-			return invokeSetter(metadata.getSetterFields(method), args);
+			return invokeSetter(dispatch, args);
 		case CLEARER:
-			return invokeClearer(metadata.getClearerFields(method));
+			return invokeClearer(dispatch);
 		case PASSTHROUGH:
-			return invokePassthrough(metadata.getObjectMethod(method), args);
-		case IMPLEMENTED:
-			return invokeImplemented(method, args);
+			return dispatch.getHandle().invokeExact(dao, args);
 		default:
 			throw new RedisCommandoException("Unable to proxy unrecognized method " + method.getName());
 		}
 	}
-	
-	private Object invokeDefault(Object proxy, Method method, Object[] args) throws IllegalAccessException, Throwable {
-        return metadata.getLookup()
-                .unreflectSpecial(method, method.getDeclaringClass())
-                .bindTo(proxy)
-                .invokeWithArguments(args);
+
+	private Object invokeDefault(Object proxy, int index, Object[] args) throws Throwable {
+		MethodHandle handle = boundDefaults.get(index);
+		if (handle == null) {
+			// Racing threads bind equivalent handles, either may be kept
+			handle = metadata.getDefaultHandle(index).bindTo(proxy);
+			boundDefaults.set(index, handle);
+		}
+		return handle.invokeExact(args);
 	}
 
-	private Object invokeGetter(Method method) {
-        Object value = getterValues.get(method);
+	private Object invokeGetter(int index) {
+        Object value = getterValues.get(index);
         if (value == null) {
         	loadCache();
-        	return getterValues.get(method);
+        	return getterValues.get(index);
         } else {
             return value;
         }
 	}
-	
-	private Object invokeSetter(String[] fields, Object[] args) {
-		Map<String, Object> values = new HashMap<>();
+
+	private Object invokeSetter(Dispatch dispatch, Object[] args) {
+		String[] fields = dispatch.getFields();
+		Object[] fieldsAndValues = new Object[fields.length * 2];
 		for (int i=0; i<fields.length; i++) {
-			values.put(fields[i], args[i]);
-            setCacheValue(fields[i], args[i]);
+			fieldsAndValues[i * 2] = fields[i];
+			fieldsAndValues[i * 2 + 1] = args[i];
+			setCacheValue(dispatch.getGetterIndexes()[i], args[i]);
 		}
-		return dao.setAll(values);
+		return dao.set(fieldsAndValues);
 	}
 
-	private Object invokeClearer(String[] fields) {
-		for (String field : fields) {
-			setCacheValue(field, null);
+	private Object invokeClearer(Dispatch dispatch) {
+		for (int index : dispatch.getGetterIndexes()) {
+			setCacheValue(index, null);
 		}
-		return dao.clear(fields);
-	}
-	
-	private Object invokePassthrough(Method objMethod, Object[] args) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
-        return objMethod.invoke(dao, args);
+		return dao.clear(dispatch.getFields());
 	}
-	
-	private Object invokeImplemented(Method method, Object[] args) {
-		if (method.equals(metadata.getDaoGetter())) {
-			return dao;
-		} else if (method.equals(metadata.getReproxyMethod())) {
-			// Extract args
-		    return dao.as((Class<? extends Proxy>) args[0]);
-		} else {
-			throw new ProxyException("No implementation defined for proxy-implemented method " + method.getName());
-		}
-	}
-	
+
 	private void loadCache() {
-//		System.out.println("Lazy loading values for " + dao.getSetKey() + "." + dao.getId());
     	if (!metadata.getGetters().isEmpty()) {
-            Iterator<DaoValue> values = dao.get(metadata.getGetterFieldNames()).iterator();
-            for (Getter getter : metadata.getGetters()) {
-                DaoValue rcv = values.next();
-                Object value = rcv.isPresent() ? rcv.as(getter.getReturnType()) : 
-                    Optional.class.equals(getter.getReturnType().getRawClass()) ? Optional.empty() : null;
-                if (value == null) {
-                	this.getterValues.remove(getter.getMethod());
-                } else {
-                    this.getterValues.put(getter.getMethod(), value);
-                }
-            }
+            populate(dao.get(metadata.getGetterFieldNames()).iterator());
     	}
 	}
-	
-	private void setCacheValue(String fieldName, Object value) {
-        Method companionGetter = metadata.getGetter(fieldName);
-        if (companionGetter != null) {
-        	if (value == null) {
-        		getterValues.remove(companionGetter);
-        	} else {
-                getterValues.put(companionGetter, value);
-        	}
+
+	/**
+	 * Caches getter values, one for each of the metadata's getter field names
+	 */
+	protected void populate(Iterator<DaoValue> values) {
+		List<Getter> getters = metadata.getGetters();
+        for (int i=0; i<getters.size(); i++) {
+            Getter getter = getters.get(i);
+            DaoValue rcv = values.next();
+            Object value = rcv.isPresent() ? rcv.as(getter.getReturnType()) :
+                Optional.class.equals(getter.getReturnType().getRawClass()) ? Optional.empty() : null;
+            getterValues.set(i, value);
+        }
+	}
+
+	private void setCacheValue(int getterIndex, Object value) {
+        if (getterIndex != -1) {
+        	getterValues.set(getterIndex, value);
         }
 	}
 }
@@ -1,92 +1,130 @@
 package dev.jarcadia.redao;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.databind.JavaType;
+import dev.jarcadia.redao.exception.ProxyException;
 import dev.jarcadia.redao.exception.RedisCommandoException;
 import dev.jarcadia.redao.proxy.Proxy;
 
+/**
+ * The dispatch table for dynamic proxies of a proxy interface. Each proxy method is resolved once to a Dispatch entry
+ * holding everything needed to invoke it: getters and default methods are identified by their index into per-handler
+ * arrays, and passthroughs and default methods are invoked through MethodHandles that are unreflected and adapted to a
+ * uniform (target, Object[]) signature up front.
+ *
+ * The Method instances passed to an InvocationHandler are those of the generated proxy class, which are equal to but
+ * not the same as the interface's methods. Entries are therefore found by equality once and then appended to a pair
+ * of arrays holding each proxy Method and its Dispatch at the same index. Dispatching a call scans the handful of
+ * Methods by identity, so it does not hash or compare Method objects.
+ */
 class ProxyMetadata {
-	
+
 	protected enum Type {
-		DEFAULT, GETTER, SETTER, CLEARER, PASSTHROUGH, IMPLEMENTED;
+		DEFAULT, GETTER, SETTER, CLEARER, PASSTHROUGH;
 	}
-	
+
+	private static final MethodType PASSTHROUGH_TYPE = MethodType.methodType(Object.class, Dao.class, Object[].class);
+	private static final MethodType DEFAULT_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
 	private final Class<? extends Proxy> proxyClass;
-	private final Method daoGetter;
-	private final Method reproxyMethod;
-	private final Map<Method, Type> typeMap;
 	private final List<Getter> getters;
-	private final Map<String, Method> fieldToGetterMap;
 	private final String[] getterFieldNames;
-	private final Map<Method, String[]> setterFieldsMap;
-	private final Map<Method, String[]> clearerFieldsMap;
-	private final Map<Method, Method> passthroughMethodsMap;
-	private final MethodHandles.Lookup lookup;
+	private final MethodHandle[] defaultHandles;
+	private final Map<Method, Dispatch> dispatchTable;
+	private final Method[] resolvedMethods;
+	private final Dispatch[] resolvedDispatches;
+	// Published after the array slots it covers are written
+	private volatile int resolvedCount;
 
 	public ProxyMetadata(Class<? extends Proxy> proxyClass, Method daoGetter, Method reproxyMethod,
 			Set<Method> defaultMethods, List<Getter> getters, Map<Method, String[]> setters,
 			Map<Method, String[]> clearers, Map<Method, Method> passthroughMethodsMap, MethodHandles.Lookup lookup) {
 		this.proxyClass = proxyClass;
-		this.daoGetter = daoGetter;
-		this.reproxyMethod = reproxyMethod;
 		this.getters = List.copyOf(getters);
-		this.fieldToGetterMap = Map.copyOf(getters.stream().collect(Collectors.toMap(Getter::getFieldName, Getter::getMethod)));
-		this.getterFieldNames = getters.stream().map(Getter::getFieldName).collect(Collectors.toList()).toArray(new String[0]);
-		this.setterFieldsMap = Map.copyOf(setters);
-		this.clearerFieldsMap = Map.copyOf(clearers);
-		this.passthroughMethodsMap = passthroughMethodsMap;
-		this.lookup = lookup;
-		
-		this.typeMap = new HashMap<>();
-		typeMap.put(daoGetter, Type.IMPLEMENTED);
-		typeMap.put(reproxyMethod, Type.IMPLEMENTED);
-		
+		this.getterFieldNames = getters.stream().map(Getter::getFieldName).toArray(String[]::new);
+		this.defaultHandles = new MethodHandle[defaultMethods.size()];
+		this.dispatchTable = new HashMap<>();
+
+		if (daoGetter != null) {
+			MethodHandle identity = MethodHandles.dropArguments(MethodHandles.identity(Dao.class), 1, Object[].class);
+			dispatchTable.put(daoGetter, new Dispatch(Type.PASSTHROUGH, -1, identity.asType(PASSTHROUGH_TYPE), null, null));
+		}
+		if (reproxyMethod != null) {
+			dispatchTable.put(reproxyMethod, passthrough(getDaoMethod("as", Class.class)));
+		}
+
+		int defaultIndex = 0;
 		for (Method method : defaultMethods) {
-			typeMap.put(method, Type.DEFAULT);
+			defaultHandles[defaultIndex] = unreflectDefault(lookup, method);
+			dispatchTable.put(method, new Dispatch(Type.DEFAULT, defaultIndex++, null, null, null));
 		}
-		
-		for (Getter getter : getters) {
-			typeMap.put(getter.getMethod(), Type.GETTER);
+
+		for (int i=0; i<getters.size(); i++) {
+			dispatchTable.put(getters.get(i).getMethod(), new Dispatch(Type.GETTER, i, null, null, null));
 		}
-		
-		for (Method setter : setters.keySet()) {
-			typeMap.put(setter, Type.SETTER);
+
+		for (Map.Entry<Method, String[]> setter : setters.entrySet()) {
+			String[] fields = setter.getValue();
+			dispatchTable.put(setter.getKey(), new Dispatch(Type.SETTER, -1, null, fields, getGetterIndexes(fields)));
 		}
 
-		for (Method clearer : clearers.keySet()) {
-			typeMap.put(clearer, Type.CLEARER);
+		for (Map.Entry<Method, String[]> clearer : clearers.entrySet()) {
+			String[] fields = clearer.getValue();
+			dispatchTable.put(clearer.getKey(), new Dispatch(Type.CLEARER, -1, null, fields, getGetterIndexes(fields)));
 		}
-		
-		for (Method proxyMethod : passthroughMethodsMap.keySet()) {
-			typeMap.put(proxyMethod, Type.PASSTHROUGH);
+
+		for (Map.Entry<Method, Method> passthrough : passthroughMethodsMap.entrySet()) {
+			dispatchTable.put(passthrough.getKey(), passthrough(passthrough.getValue()));
 		}
+
+		this.resolvedMethods = new Method[dispatchTable.size()];
+		this.resolvedDispatches = new Dispatch[dispatchTable.size()];
 	}
-	
+
 	protected Class<? extends Proxy> getProxyClass() {
 		return proxyClass;
 	}
 
-	protected Type getType(Method method) {
-		Type type = typeMap.get(method);
-		if (type == null) {
-			throw new RedisCommandoException("Proxy method " + proxyClass.getName() + "." + method.getName() + " is not supported");
-		}
-		return type;
+	protected Dispatch getDispatch(Method method) {
+		int index = indexOf(method, resolvedCount);
+		return index == -1 ? resolve(method) : resolvedDispatches[index];
 	}
-	
-	protected Method getDaoGetter() {
-		return daoGetter;
+
+	private int indexOf(Method method, int count) {
+		for (int i=0; i<count; i++) {
+			if (resolvedMethods[i] == method) {
+				return i;
+			}
+		}
+		return -1;
 	}
 
-	protected Method getReproxyMethod() {
-		return reproxyMethod;
+	private synchronized Dispatch resolve(Method method) {
+		int count = resolvedCount;
+		int index = indexOf(method, count);
+		if (index != -1) {
+			return resolvedDispatches[index];
+		}
+		Dispatch dispatch = dispatchTable.get(method);
+		if (dispatch == null) {
+			throw new RedisCommandoException("Proxy method " + proxyClass.getName() + "." + method.getName() + " is not supported");
+		}
+		// A proxy class has a fixed set of methods so this happens at most once per method. Should proxy classes from
+		// several class loaders share this metadata, the methods beyond capacity are resolved by equality every call
+		if (count < resolvedMethods.length) {
+			resolvedMethods[count] = method;
+			resolvedDispatches[count] = dispatch;
+			this.resolvedCount = count + 1;
+		}
+		return dispatch;
 	}
 
 	protected List<Getter> getGetters() {
@@ -96,25 +134,103 @@ class ProxyMetadata {
 	public String[] getGetterFieldNames() {
 		return getterFieldNames;
 	}
-	
-	protected String[] getSetterFields(Method setter) {
-		return setterFieldsMap.get(setter);
+
+	protected int getDefaultMethodCount() {
+		return defaultHandles.length;
 	}
 
-	protected String[] getClearerFields(Method clearer) {
-		return clearerFieldsMap.get(clearer);
+	/**
+	 * @return The default method's handle of type (Object, Object[])Object, to be bound to a proxy instance
+	 */
+	protected MethodHandle getDefaultHandle(int index) {
+		return defaultHandles[index];
 	}
-	
-	protected Method getObjectMethod(Method proxyMethod) {
-		return passthroughMethodsMap.get(proxyMethod);
+
+	private int[] getGetterIndexes(String[] fields) {
+		int[] indexes = new int[fields.length];
+		for (int i=0; i<fields.length; i++) {
+			indexes[i] = -1;
+			for (int j=0; j<getterFieldNames.length; j++) {
+				if (getterFieldNames[j].equals(fields[i])) {
+					indexes[i] = j;
+				}
+			}
+		}
+		return indexes;
 	}
 
-	protected Method getGetter(String fieldName) {
-		return fieldToGetterMap.get(fieldName);
+	private Dispatch passthrough(Method daoMethod) {
+		try {
+			MethodHandle handle = MethodHandles.publicLookup().unreflect(daoMethod).asFixedArity()
+					.asSpreader(Object[].class, daoMethod.getParameterCount());
+			return new Dispatch(Type.PASSTHROUGH, -1, handle.asType(PASSTHROUGH_TYPE), null, null);
+		} catch (IllegalAccessException e) {
+			throw new ProxyException("Unable to access passthrough method " + daoMethod.getName() + " on " + Dao.class.getName(), e);
+		}
+	}
+
+	private MethodHandle unreflectDefault(MethodHandles.Lookup lookup, Method method) {
+		try {
+			return lookup.unreflectSpecial(method, method.getDeclaringClass()).asFixedArity()
+					.asSpreader(Object[].class, method.getParameterCount())
+					.asType(DEFAULT_TYPE);
+		} catch (IllegalAccessException e) {
+			throw new ProxyException("Unable to access default method " + proxyClass.getName() + "." + method.getName(), e);
+		}
 	}
-	
-	protected MethodHandles.Lookup getLookup() {
-		return this.lookup;
+
+	private Method getDaoMethod(String name, Class<?>... parameterTypes) {
+		try {
+			return Dao.class.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			throw new ProxyException("Unable to find method " + name + " on " + Dao.class.getName(), e);
+		}
+	}
+
+	protected static class Dispatch {
+
+		private final Type type;
+		private final int index;
+		private final MethodHandle handle;
+		private final String[] fields;
+		private final int[] getterIndexes;
+
+		private Dispatch(Type type, int index, MethodHandle handle, String[] fields, int[] getterIndexes) {
+			this.type = type;
+			this.index = index;
+			this.handle = handle;
+			this.fields = fields;
+			this.getterIndexes = getterIndexes;
+		}
+
+		protected Type getType() {
+			return type;
+		}
+
+		/**
+		 * @return The index of the getter or default method
+		 */
+		protected int getIndex() {
+			return index;
+		}
+
+		/**
+		 * @return For passthroughs, a handle of type (Dao, Object[])Object
+		 */
+		protected MethodHandle getHandle() {
+			return handle;
+		}
+
+		protected String[] getFields() {
+			return fields;
+		}
+
+		/**
+		 * @return For setters and clearers, the index of each field's getter or -1 if the field has no getter
+		 */
+		protected int[] getGetterIndexes() {
+			return getterIndexes;
+		}
 	}
 
 	protected static class Getter {
@@ -128,7 +244,7 @@ class ProxyMetadata {
 			this.fieldName = fieldName;
 			this.returnType = returnType;
 		}
-		
+
 		public Method getMethod() {
 			return method;
 		}
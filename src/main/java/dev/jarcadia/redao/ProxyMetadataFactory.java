@@ -3,6 +3,7 @@ package dev.jarcadia.redao;
 import java.beans.Introspector;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -16,6 +17,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -109,6 +111,36 @@ public class ProxyMetadataFactory {
 		return new ProxyMetadata(proxyClass, daoGetter, reproxyMethod, defaultMethods, getters, setterFieldsMap, clearerFieldsMap, passthroughMethodsMap, lookup);
 	}
 	
+	/**
+	 * Identifies the field read by a getter given as a method reference, such as PersonProxy::getAge, by invoking it
+	 * on a recording proxy that has no Dao
+	 */
+	protected <T extends Proxy> String getGetterFieldName(Class<T> proxyClass, Function<? super T, ?> getter) {
+		Method[] invoked = new Method[1];
+		T recorder = proxyClass.cast(java.lang.reflect.Proxy.newProxyInstance(proxyClass.getClassLoader(),
+				new Class<?>[] {proxyClass}, (proxy, method, args) -> {
+					if (invoked[0] == null) {
+						invoked[0] = method;
+					}
+					// Zero or false for primitive return types so that unboxing the result succeeds
+					Class<?> returnType = method.getReturnType();
+					return returnType.isPrimitive() && returnType != Void.TYPE ?
+							Array.get(Array.newInstance(returnType, 1), 0) : null;
+				}));
+		getter.apply(recorder);
+		Method method = invoked[0];
+		if (method == null || method.isDefault() || isStatic(method) || isTypeGetter(method) || isIdGetter(method)
+				|| isDaoGetter(method)) {
+			throw new ProxyException("Expected a getter of " + proxyClass.getName());
+		} else if (isGetter(method)) {
+			return getFieldNameFromMethod(method, "get");
+		} else if (isBooleanGetter(method)) {
+			return getFieldNameFromMethod(method, "is");
+		} else {
+			throw new ProxyException(proxyClass.getName() + "." + method.getName() + " is not a getter");
+		}
+	}
+
 	private boolean isStatic(Method method) {
 		return Modifier.isStatic(method.getModifiers());
 	}
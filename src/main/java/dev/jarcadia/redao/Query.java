@@ -0,0 +1,254 @@
+package dev.jarcadia.redao;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.ScriptOutputType;
+
+/**
+ * A filtered scan of a type that is evaluated inside Redis. Each script call walks one ZSCAN page of the type's index,
+ * tests the predicates against the Dao hashes and returns only the ids and requested fields of matching Daos, so no
+ * call blocks Redis for longer than a page and only matches are sent to the client.
+ *
+ * Predicates compare decoded field values. A Dao missing a field only matches a whereNe predicate on that field, and
+ * the ordering predicates only match numbers compared with numbers or strings compared with strings. As with ZSCAN,
+ * results are unordered and a Dao added or removed during the query may or may not be returned.
+ *
+ * For repeated queries on the same field prefer a maintained index, see {@link Index#createIndex(String)}
+ */
+public class Query {
+
+    private static final int DEFAULT_PAGE_SIZE = 200;
+
+    private final RedaoCommando rcommando;
+    private final ValueFormatter formatter;
+    private final Index index;
+    private final List<String> predicates;
+    private final List<String> fields;
+    private int pageSize;
+
+    protected Query(RedaoCommando rcommando, ValueFormatter formatter, Index index) {
+        this.rcommando = rcommando;
+        this.formatter = formatter;
+        this.index = index;
+        this.predicates = new ArrayList<>();
+        this.fields = new ArrayList<>();
+        this.pageSize = DEFAULT_PAGE_SIZE;
+    }
+
+    public Query whereEq(String field, Object value) {
+        return where("eq", field, value);
+    }
+
+    public Query whereNe(String field, Object value) {
+        return where("ne", field, value);
+    }
+
+    public Query whereGt(String field, Object value) {
+        return where("gt", field, value);
+    }
+
+    public Query whereGte(String field, Object value) {
+        return where("gte", field, value);
+    }
+
+    public Query whereLt(String field, Object value) {
+        return where("lt", field, value);
+    }
+
+    public Query whereLte(String field, Object value) {
+        return where("lte", field, value);
+    }
+
+    private Query where(String op, String field, Object value) {
+        Collections.addAll(predicates, op, formatter.toWire(field), formatter.serialize(value));
+        return this;
+    }
+
+    /**
+     * The fields whose values are returned with each matching Dao
+     */
+    public Query fields(String... fields) {
+        Collections.addAll(this.fields, fields);
+        return this;
+    }
+
+    /**
+     * @param pageSize The ZSCAN COUNT hint of each script call, which bounds the work done per call
+     */
+    public Query pageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * @return The matching Daos, each page being requested while the previous one is consumed
+     */
+    public Stream<QueryResult> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new ResultIterator(),
+                Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Runs the query a page at a time, for example across requests. A page may be empty while the query is not
+     * finished.
+     *
+     * @param cursor The cursor of the previous page, or null for the first page
+     */
+    public Page page(String cursor) {
+        List<String> indexKeys = rcommando.getKeyLayout().getIndexKeys(index.getType());
+        Position position = cursor == null ? new Position(0, "0") : Position.parse(cursor, indexKeys.size());
+        List<Object> reply = index.join(fetch(indexKeys.get(position.shard), position.scanCursor));
+        Position next = position.next((String) reply.get(0), indexKeys.size());
+        return new Page(parse(reply), next == null ? null : next.toString());
+    }
+
+    private CompletionStage<List<Object>> fetch(String indexKey, String scanCursor) {
+        List<String> args = new ArrayList<>(3 + predicates.size() + fields.size());
+        args.add(scanCursor);
+        args.add(String.valueOf(pageSize));
+        args.add(String.valueOf(predicates.size() / 3));
+        args.addAll(predicates);
+        fields.stream().map(formatter::toWire).forEach(args::add);
+        return rcommando.executeScriptAsync(Scripts.DAO_QUERY, ScriptOutputType.MULTI, new String[] {indexKey},
+                args.toArray(new String[0]));
+    }
+
+    /*
+     * A reply is the next ZSCAN cursor followed by the id and field values of each match
+     */
+    @SuppressWarnings("unchecked")
+    private List<QueryResult> parse(List<Object> reply) {
+        List<QueryResult> results = new ArrayList<>((reply.size() - 1) / 2);
+        for (int i=1; i<reply.size(); i+=2) {
+            String id = formatter.fromWire((String) reply.get(i));
+            List<String> values = (List<String>) reply.get(i + 1);
+            List<KeyValue<String, String>> fieldValues = new ArrayList<>(fields.size());
+            for (int f=0; f<fields.size(); f++) {
+                fieldValues.add(KeyValue.fromNullable(fields.get(f), values.get(f)));
+            }
+            results.add(new QueryResult(index.get(id), new DaoValues(formatter, fieldValues)));
+        }
+        return results;
+    }
+
+    public static class Page {
+
+        private final List<QueryResult> results;
+        private final String cursor;
+
+        private Page(List<QueryResult> results, String cursor) {
+            this.results = results;
+            this.cursor = cursor;
+        }
+
+        public List<QueryResult> getResults() {
+            return results;
+        }
+
+        /**
+         * @return The cursor from which the next page continues, or null if the query is finished
+         */
+        public String getCursor() {
+            return cursor;
+        }
+
+        public boolean isFinished() {
+            return cursor == null;
+        }
+    }
+
+    /*
+     * The index key being scanned, by its position in the key layout, and the ZSCAN cursor within it
+     */
+    private static class Position {
+
+        private final int shard;
+        private final String scanCursor;
+
+        private Position(int shard, String scanCursor) {
+            this.shard = shard;
+            this.scanCursor = scanCursor;
+        }
+
+        private static Position parse(String cursor, int shards) {
+            int separator = cursor.indexOf(':');
+            try {
+                int shard = Integer.parseInt(cursor.substring(0, separator));
+                if (shard >= 0 && shard < shards) {
+                    long scanCursor = Long.parseUnsignedLong(cursor.substring(separator + 1));
+                    return new Position(shard, Long.toUnsignedString(scanCursor));
+                }
+            } catch (NumberFormatException | IndexOutOfBoundsException ex) {
+                // Reported below
+            }
+            throw new IllegalArgumentException("Invalid query cursor " + cursor);
+        }
+
+        /**
+         * @return The position after a page that returned the given ZSCAN cursor, or null after the last page
+         */
+        private Position next(String nextScanCursor, int shards) {
+            if (!"0".equals(nextScanCursor)) {
+                return new Position(shard, nextScanCursor);
+            }
+            return shard + 1 < shards ? new Position(shard + 1, "0") : null;
+        }
+
+        @Override
+        public String toString() {
+            return shard + ":" + scanCursor;
+        }
+    }
+
+    /*
+     * Requests the next page as soon as a page arrives so that it is read while the current page is consumed
+     */
+    private class ResultIterator implements Iterator<QueryResult> {
+
+        private final List<String> indexKeys;
+        private final Deque<QueryResult> buffer;
+        private Position position;
+        private CompletionStage<List<Object>> pending;
+
+        private ResultIterator() {
+            this.indexKeys = rcommando.getKeyLayout().getIndexKeys(index.getType());
+            this.buffer = new ArrayDeque<>();
+            this.position = new Position(0, "0");
+            this.pending = fetch(indexKeys.get(0), "0");
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (buffer.isEmpty() && pending != null) {
+                List<Object> reply = index.join(pending);
+                position = position.next((String) reply.get(0), indexKeys.size());
+                pending = position == null ? null : fetch(indexKeys.get(position.shard), position.scanCursor);
+                buffer.addAll(parse(reply));
+            }
+            return !buffer.isEmpty();
+        }
+
+        @Override
+        public QueryResult next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return buffer.removeFirst();
+        }
+    }
+}
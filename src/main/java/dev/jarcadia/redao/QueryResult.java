@@ -0,0 +1,32 @@
+package dev.jarcadia.redao;
+
+/**
+ * A Dao matched by a {@link Query} together with the values of the query's fields, in the order requested
+ */
+public class QueryResult {
+
+    private final Dao dao;
+    private final DaoValues values;
+
+    protected QueryResult(Dao dao, DaoValues values) {
+        this.dao = dao;
+        this.values = values;
+    }
+
+    public Dao getDao() {
+        return dao;
+    }
+
+    public String getId() {
+        return dao.getId();
+    }
+
+    public DaoValues getValues() {
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return dao.toString();
+    }
+}
@@ -1,6 +1,8 @@
 package dev.jarcadia.redao;
 
 import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -9,9 +11,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import dev.jarcadia.redao.exception.RedisCommandoException;
 import dev.jarcadia.redao.callbacks.DaoDeletedCallback;
@@ -24,50 +36,122 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.lettuce.core.LettuceFutures;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
 import io.lettuce.core.RedisNoScriptException;
 import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.api.StatefulRedisConnection;
-import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import reactor.core.Disposable;
 
 public class RedaoCommando implements Closeable {
     
     private final Logger logger = LoggerFactory.getLogger(RedaoCommando.class);
 
-    private final RedisClient redis;
+    private final Connector connector;
+    private final KeyLayout keyLayout;
+    private final ValueCodec valueCodec;
     private final ObjectMapper objectMapper;
     private final ValueFormatter formatter;
     private final ProxyMetadataFactory proxyMetadataFactory;
-    private final StatefulRedisConnection<String, String> connection;
-    private final RedisCommands<String, String> commands;
-    private final Map<String, String> scriptCache;
+    private final RedaoConnection<String, String> connection;
+    private final RedisClusterCommands<String, String> commands;
+    private final RedisClusterAsyncCommands<String, String> asyncCommands;
+    private final ScriptRegistry scriptRegistry;
+    private final List<Disposable> reconnectListeners;
     private final Map<String, Set<DaoInsertedCallback>> insertCallbackMap;
     private final Map<String, Set<DaoDeletedCallback>> deleteCallbackMap;
     private final Map<String, Map<String, Set<DaoValueModifiedCallback>>> changeCallbackMap;
-    private final Map<Class<? extends Proxy>, ProxyMetadata> proxyMetadataMap;
+    private final Map<Class<? extends Proxy>, ProxyFactory> proxyFactories;
+    private final Set<ReplicatedIndex> replicatedIndexes;
     private final AtomicBoolean closing;
     private final List<java.util.concurrent.CountDownLatch> shutdownLatches;
 
     private ExternalUpdatePopper updatePopper;
+    private volatile AutoBatcher autoBatcher;
+    private volatile FunctionLibrary functionLibrary;
+    private volatile CallbackDispatcher callbackDispatcher;
+    private volatile NearCache nearCache;
+    private volatile RedaoConnection<String, byte[]> byteValueConnection;
+    private RedaoConnection<String, String> pipelineConnection;
+    private AsyncRedaoCommando async;
+    private ExecutorService asyncCallbackExecutor;
 
     public static RedaoCommando create(RedisClient client) {
-        return new RedaoCommando(client);
+        return new RedaoCommando(Connector.standalone(client));
+    }
+
+    /**
+     * Creates a RedaoCommando that stores Dao values and publishes change messages using the given codec. Every client
+     * of the same data must use the same codec. Raw values read or written through {@link #core()}, {@link #eval()}
+     * or a {@link Subscription} are in the codec's format, with binary formats carried as ISO-8859-1 strings.
+     */
+    public static RedaoCommando create(RedisClient client, ValueCodec valueCodec) {
+        return new RedaoCommando(Connector.standalone(client, ValueFormatter.connectionCodec(valueCodec)), valueCodec);
+    }
+
+    /**
+     * Creates a RedaoCommando backed by a Redis Cluster, indexing each type in 16 shards
+     */
+    public static RedaoCommando create(RedisClusterClient client) {
+        return create(client, 16);
+    }
+
+    /**
+     * Creates a RedaoCommando backed by a Redis Cluster. Each Dao's keys are hash tagged so that a Dao and the index
+     * shard containing it always share a slot, and each type's index is split into the given number of shards so
+     * that writes to a type are spread across the cluster. Counting and iterating an Index visits every shard.
+     *
+     * Batch.executeAtomically requires every Dao in the batch to map to the same slot and the number of shards must
+     * not change once data has been written.
+     */
+    public static RedaoCommando create(RedisClusterClient client, int shards) {
+        return new RedaoCommando(Connector.cluster(client, shards));
+    }
+
+    public static RedaoCommando create(RedisClusterClient client, int shards, ValueCodec valueCodec) {
+        return new RedaoCommando(Connector.cluster(client, shards, ValueFormatter.connectionCodec(valueCodec)),
+                valueCodec);
     }
 
     RedaoCommando(RedisClient redis) {
-        this.redis = redis;
+        this(Connector.standalone(redis));
+    }
+
+    RedaoCommando(Connector connector) {
+        this(connector, ValueCodec.JSON);
+    }
+
+    RedaoCommando(Connector connector, ValueCodec valueCodec) {
+        this.connector = connector;
+        this.keyLayout = connector.getKeyLayout();
+        this.valueCodec = valueCodec;
     	this.objectMapper = new RedaoObjectMapper(this);
-    	this.formatter = new ValueFormatter(objectMapper);
+    	this.formatter = new ValueFormatter(objectMapper, valueCodec);
     	this.proxyMetadataFactory = new ProxyMetadataFactory(objectMapper);
-        this.connection = redis.connect();
+        this.connection = connector.connect();
         this.commands = connection.sync();
-        this.scriptCache = new ConcurrentHashMap<>();
+        this.asyncCommands = connection.async();
+        this.scriptRegistry = new ScriptRegistry(asyncCommands, connection.getTimeout());
+        this.scriptRegistry.preload(Scripts.all().stream()
+                .map(script -> Scripts.forFormat(script, valueCodec.getLuaFormat()))
+                .collect(Collectors.toList()));
         this.insertCallbackMap = new ConcurrentHashMap<>();
         this.deleteCallbackMap = new ConcurrentHashMap<>();
         this.changeCallbackMap = new ConcurrentHashMap<>();
-        this.proxyMetadataMap = new ConcurrentHashMap<>();
+        this.proxyFactories = new ConcurrentHashMap<>();
+        this.replicatedIndexes = ConcurrentHashMap.newKeySet();
         this.closing = new AtomicBoolean(false);
         this.shutdownLatches = Collections.synchronizedList(new LinkedList<>());
+        this.reconnectListeners = Collections.synchronizedList(new ArrayList<>());
+        this.reconnectListeners.add(connector.onReconnect(connection.getStatefulConnection(),
+                this::reloadScriptsAfterReconnect));
     }
 
     public void enableExternalUpdateProcessing() {
@@ -78,14 +162,205 @@ public class RedaoCommando implements Closeable {
         this.registerShutdownLatches(this.updatePopper.getDrainedLatch());
     }
 
+    /**
+     * Enables gathering of concurrent Dao reads and writes into shared flushes using a 200 microsecond window and
+     * at most 128 commands per flush
+     */
+    public void enableAutoBatching() {
+        this.enableAutoBatching(Duration.ofNanos(200_000), 128);
+    }
+
+    /**
+     * Enables gathering of concurrent Dao reads and writes into shared flushes. Commands issued by Dao get, set and
+     * other script based operations are buffered on a dedicated connection and written together once either
+     * maxBatchSize commands are pending or the window has elapsed since the first pending command.
+     *
+     * This trades up to one window of latency per command for far fewer syscalls and packets when many threads are
+     * issuing commands at once. It is generally not beneficial with only a handful of calling threads.
+     */
+    public synchronized void enableAutoBatching(Duration window, int maxBatchSize) {
+        if (this.autoBatcher != null) {
+            throw new IllegalStateException("Auto-batching is already enabled");
+        }
+        AutoBatcher batcher = new AutoBatcher(connector.connect(), window, maxBatchSize);
+        batcher.start();
+        this.autoBatcher = batcher;
+    }
+
+    /**
+     * Reads Dao values as raw bytes on a dedicated connection, which the value codec parses directly. This avoids
+     * decoding every value into an intermediate String, which is only created if a value's raw form is requested.
+     * Worthwhile for large JSON values or high volume getAll reads. Reads served by the near cache are unaffected.
+     */
+    public synchronized void enableByteValueCodec() {
+        if (this.byteValueConnection != null) {
+            throw new IllegalStateException("The byte value codec is already enabled");
+        }
+        this.byteValueConnection = connector.connect(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE));
+    }
+
+    /**
+     * Enables an in-memory cache of up to 10,000 Dao hashes, each cached for at most 5 minutes
+     */
+    public void enableNearCache() {
+        this.enableNearCache(10_000, Duration.ofMinutes(5));
+    }
+
+    /**
+     * Enables an in-memory cache of Dao hashes serving Dao get and getAll. Redis tracks the hashes read into the cache
+     * (CLIENT TRACKING) and notifies this instance as soon as any client modifies one, so cached values are not
+     * served after a change is visible in Redis, other than during the brief delay for the notification to arrive.
+     * Mutations made through this instance invalidate the affected Dao before returning. Requires Redis 6+ and is not
+     * supported on Redis Cluster.
+     *
+     * @param maxSize The maximum number of Daos to cache, beyond which the least recently used is evicted
+     * @param ttl The maximum time a Dao is cached, which bounds staleness should an invalidation ever be missed
+     */
+    public synchronized void enableNearCache(int maxSize, Duration ttl) {
+        if (this.nearCache != null) {
+            throw new IllegalStateException("The near cache is already enabled");
+        } else if (connector.isCluster()) {
+            throw new UnsupportedOperationException("The near cache is not supported on Redis Cluster");
+        }
+        StatefulRedisConnection<String, String> cacheConnection = connector.connectStandalone();
+        NearCache cache = new NearCache(cacheConnection, maxSize, ttl);
+        this.reconnectListeners.add(connector.onReconnect(cacheConnection, () -> {
+            if (!closing.get()) {
+                cache.onReconnect();
+            }
+        }));
+        this.nearCache = cache;
+    }
+
+    /**
+     * @return A snapshot of the near cache counters, or null if the near cache is not enabled
+     */
+    public NearCacheStats getNearCacheStats() {
+        NearCache cache = this.nearCache;
+        return cache == null ? null : cache.getStats();
+    }
+
+    /**
+     * Moves registered insert, change and delete callbacks off of the mutating thread onto a pool of daemon worker
+     * threads, one per available processor, with up to 10,000 pending mutations per type. Writers block while their
+     * type's queue is full.
+     */
+    public void enableCallbackDispatcher() {
+        this.enableCallbackDispatcher(CallbackDispatcher.daemonThreadFactory(),
+                Runtime.getRuntime().availableProcessors(), 10_000, CallbackOverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Moves registered insert, change and delete callbacks off of the mutating thread onto a pool of worker threads
+     * created by the given factory. A factory producing virtual threads may be provided on runtimes that support them.
+     *
+     * Callbacks for the same Dao run one at a time in the order its mutations completed, while callbacks for
+     * different Daos run concurrently. Exceptions thrown by callbacks are logged rather than propagated to the writer.
+     * Each type may have up to queueCapacity mutations with pending callbacks, beyond which the overflow policy
+     * applies. See {@link #getCallbackStats()} for queue depth and latency.
+     */
+    public synchronized void enableCallbackDispatcher(ThreadFactory threadFactory, int workers, int queueCapacity,
+            CallbackOverflowPolicy overflowPolicy) {
+        if (this.callbackDispatcher != null) {
+            throw new IllegalStateException("The callback dispatcher is already enabled");
+        }
+        this.callbackDispatcher = new CallbackDispatcher(threadFactory, workers, queueCapacity, overflowPolicy);
+    }
+
+    /**
+     * @return A snapshot of the callback queue for each type that has dispatched callbacks, or an empty map if the
+     * callback dispatcher is not enabled
+     */
+    public Map<String, CallbackStats> getCallbackStats() {
+        CallbackDispatcher dispatcher = this.callbackDispatcher;
+        return dispatcher == null ? Map.of() : dispatcher.getStats();
+    }
+
+    /**
+     * Switches the Dao write path (set, touch, delete, clear and atomic batches) from EVALSHA to FCALL against a
+     * versioned Redis Functions library, installing or upgrading the library first if necessary. Requires Redis 7+
+     * and the JSON value codec.
+     */
+    public synchronized void enableFunctionLibrary() {
+        if (valueCodec.getLuaFormat() != ValueCodec.LuaFormat.JSON) {
+            throw new UnsupportedOperationException("The function library requires the JSON value codec");
+        }
+        FunctionLibrary library = new FunctionLibrary(connector, asyncCommands, connection.getTimeout());
+        library.install();
+        this.functionLibrary = library;
+    }
+
     public RedaoCommando clone() {
-        return new RedaoCommando(redis);
+        return new RedaoCommando(connector, valueCodec);
     }
 
-    public RedisCommands<String, String> core() {
+    public RedisClusterCommands<String, String> core() {
         return commands;
     }
     
+    /**
+     * Provides the non-blocking counterpart of this RedaoCommando. Operations issued through it share this instance's
+     * connection, script cache and registered callbacks.
+     *
+     * Registered callbacks for asynchronous mutations are invoked on a single dedicated thread in the order that the
+     * mutations completed, before the returned CompletionStage completes.
+     */
+    public synchronized AsyncRedaoCommando async() {
+        if (async == null) {
+            this.asyncCallbackExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "redao-async-callbacks");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.async = new AsyncRedaoCommando(this, formatter);
+        }
+        return async;
+    }
+
+    protected Duration getTimeout() {
+        return connection.getTimeout();
+    }
+
+    protected boolean isByteValueCodecEnabled() {
+        return byteValueConnection != null;
+    }
+
+    protected RedisClusterAsyncCommands<String, byte[]> asyncByteValueCore() {
+        return byteValueConnection.async();
+    }
+
+    /**
+     * Executes a command on the byte value connection and waits for its result
+     */
+    protected <T> T dispatchBytes(Function<RedisClusterAsyncCommands<String, byte[]>, RedisFuture<T>> command) {
+        RedaoConnection<String, byte[]> bytes = this.byteValueConnection;
+        return LettuceFutures.awaitOrCancel(command.apply(bytes.async()), bytes.getTimeout().toNanos(),
+                TimeUnit.NANOSECONDS);
+    }
+
+    protected NearCache getNearCache() {
+        return nearCache;
+    }
+
+    protected KeyLayout getKeyLayout() {
+        return keyLayout;
+    }
+
+    protected RedisClusterAsyncCommands<String, String> asyncCore() {
+        return asyncCommands;
+    }
+
+    /**
+     * @return A new connection for work that should not share the core connection, to be closed by the caller
+     */
+    protected RedaoConnection<String, String> connect() {
+        return connector.connect();
+    }
+
+    protected synchronized ExecutorService getAsyncCallbackExecutor() {
+        return asyncCallbackExecutor;
+    }
+    
     public ObjectMapper getObjectMapper() {
     	return this.objectMapper;
     }
@@ -96,12 +371,18 @@ public class RedaoCommando implements Closeable {
     }
 
     public String hgetset(String hashKey, String field, String value) {
-        return commands.eval("local old = redis.call('hget',KEYS[1],ARGV[1]); redis.call('hset',KEYS[1],ARGV[1],ARGV[2]); return old;", ScriptOutputType.VALUE, new String[] {hashKey}, field, value);
+        return eval()
+                .cachedScript(Scripts.HGETSET)
+                .addKey(hashKey)
+                .addArgs(field, value)
+                .returnValue();
     }
 
     public Set<String> mergeIntoSetIfDistinct(String setKey, Collection<String> values) {
         Set<String> result = new HashSet<>();
-        String tempSetKey = UUID.randomUUID().toString();
+        // The temporary set must share a slot with the target set on Redis Cluster
+        String hashTag = setKey.contains("{") ? setKey : "{" + setKey + "}";
+        String tempSetKey = hashTag + "/" + UUID.randomUUID().toString();
         List<String> duplicates =  eval()
         		.cachedScript(Scripts.MERGE_INTO_SET_IF_DISTINCT)
         		.addKeys(setKey, tempSetKey)
@@ -129,6 +410,28 @@ public class RedaoCommando implements Closeable {
         return new ProxyIndex<T>(set, proxyClass);
     }
 
+    /**
+     * Creates an in-memory copy of every Dao of a type that is kept current by the type's change messages. The copy
+     * holds a pub/sub connection and a thread, so it should be shared and must be closed when no longer needed.
+     */
+    public ReplicatedIndex getReplicatedIndex(String type) {
+        ReplicatedIndex replicated = new ReplicatedIndex(this, formatter, getPrimaryIndex(type));
+        replicatedIndexes.add(replicated);
+        return replicated;
+    }
+
+    public <T extends Proxy> ReplicatedProxyIndex<T> getReplicatedIndex(String type, Class<T> proxyClass) {
+        return new ReplicatedProxyIndex<T>(getReplicatedIndex(type), proxyClass);
+    }
+
+    protected void unregisterReplicatedIndex(ReplicatedIndex replicated) {
+        replicatedIndexes.remove(replicated);
+    }
+
+    public Batch batch() {
+        return new Batch(this);
+    }
+
     public Eval eval() {
         return new Eval(this, this.formatter);
     }
@@ -138,30 +441,212 @@ public class RedaoCommando implements Closeable {
     }
 
     public Subscription subscribe(BiConsumer<String, String> handler) {
-        return new Subscription(redis.connectPubSub(), formatter, handler);
+        return new Subscription(connector.connectPubSub(), formatter, handler);
     }
 
     public Subscription subscribe(String channel, BiConsumer<String, String> handler) {
-        return new Subscription(redis.connectPubSub(), formatter, handler, channel);
+        return new Subscription(connector.connectPubSub(), formatter, handler, channel);
+    }
+
+    /**
+     * Runs an action each time the subscription's own connection is reestablished, for subscribers that must catch
+     * up on messages published while disconnected
+     */
+    protected Disposable onReconnect(Subscription subscription, Runnable action) {
+        return connector.onReconnect(subscription.getConnection(), action);
+    }
+
+    /**
+     * Registers a script and loads it into Redis. Registered scripts are reloaded along with the internal scripts
+     * whenever Redis loses its script cache. Scripts executed through {@link #eval()} are registered automatically
+     * on first use.
+     *
+     * @return The SHA1 digest of the script
+     */
+    public String registerScript(String script) {
+        return scriptRegistry.getDigest(script);
     }
 
     protected <T> T executeScript(String script, ScriptOutputType outputType, String[] keys, String[] args) {
-        String digest = scriptCache.computeIfAbsent(script, s -> commands.scriptLoad(s));
+        FunctionLibrary library = this.functionLibrary;
+        String function = library == null ? null : Scripts.getFunctionName(script);
+        if (function != null) {
+            return executeFunction(library, function, outputType, keys, args);
+        }
+
+        String digest = scriptRegistry.getDigest(Scripts.forFormat(script, valueCodec.getLuaFormat()));
+        long generation = scriptRegistry.getGeneration();
         try {
-            return commands.evalsha(digest, outputType, keys, args);
+            return dispatch(c -> c.evalsha(digest, outputType, keys, args));
         } catch (RedisNoScriptException ex) {
-        	scriptCache.remove(script);
-        	return executeScript(script, outputType, keys, args);
+            scriptRegistry.reloadAll(generation);
+            try {
+                return dispatch(c -> c.evalsha(digest, outputType, keys, args));
+            } catch (RedisCommandExecutionException retryEx) {
+                throw new RedisCommandoException("Error executing " + script, retryEx);
+            }
         } catch (RedisCommandExecutionException ex) {
             throw new RedisCommandoException("Error executing " + script, ex);
         }
     }
 
-    @SuppressWarnings("unchecked")
+    private <T> T executeFunction(FunctionLibrary library, String function, ScriptOutputType outputType,
+            String[] keys, String[] args) {
+        try {
+            return dispatch(c -> library.<T>fcall(c, function, outputType, keys, args));
+        } catch (RedisCommandExecutionException ex) {
+            if (FunctionLibrary.isFunctionNotFound(ex)) {
+                // Library was removed (FUNCTION FLUSH or DELETE), reinstall and retry once
+                library.install();
+                return dispatch(c -> library.<T>fcall(c, function, outputType, keys, args));
+            }
+            throw new RedisCommandoException("Error executing function " + function, ex);
+        }
+    }
+
+    /**
+     * Executes a command and waits for its result, routing it through the auto-batcher when enabled
+     */
+    protected <T> T dispatch(Function<RedisClusterAsyncCommands<String, String>, RedisFuture<T>> command) {
+        AutoBatcher batcher = this.autoBatcher;
+        if (batcher == null) {
+            return LettuceFutures.awaitOrCancel(command.apply(asyncCommands), connection.getTimeout().toNanos(),
+                    TimeUnit.NANOSECONDS);
+        } else {
+            return batcher.dispatch(command);
+        }
+    }
+
+    protected <T> CompletionStage<T> executeScriptAsync(String script, ScriptOutputType outputType, String[] keys, String[] args) {
+        FunctionLibrary library = this.functionLibrary;
+        String function = library == null ? null : Scripts.getFunctionName(script);
+        if (function != null) {
+            return library.<T>fcall(asyncCommands, function, outputType, keys, args)
+                    .exceptionallyCompose(ex -> {
+                        Throwable cause = unwrap(ex);
+                        if (FunctionLibrary.isFunctionNotFound(cause)) {
+                            // Library was removed (FUNCTION FLUSH or DELETE), reinstall and retry once
+                            return library.installAsync()
+                                    .thenCompose(v -> library.<T>fcall(asyncCommands, function, outputType, keys, args))
+                                    .exceptionallyCompose(retryEx -> functionFailure(function, unwrap(retryEx)));
+                        }
+                        return functionFailure(function, cause);
+                    });
+        }
+
+        long generation = scriptRegistry.getGeneration();
+        return scriptRegistry.getDigestAsync(Scripts.forFormat(script, valueCodec.getLuaFormat()))
+                .thenCompose(digest -> asyncCommands.<T>evalsha(digest, outputType, keys, args)
+                        .exceptionallyCompose(ex -> {
+                            if (unwrap(ex) instanceof RedisNoScriptException) {
+                                return scriptRegistry.reloadAllAsync(generation)
+                                        .thenCompose(v -> asyncCommands.<T>evalsha(digest, outputType, keys, args));
+                            } else {
+                                return CompletableFuture.failedFuture(ex);
+                            }
+                        }))
+                .exceptionallyCompose(ex -> {
+                    Throwable cause = unwrap(ex);
+                    if (cause instanceof RedisCommandExecutionException) {
+                        return CompletableFuture.failedFuture(new RedisCommandoException("Error executing " + script, cause));
+                    } else {
+                        return CompletableFuture.failedFuture(cause);
+                    }
+                });
+    }
+
+    private <T> CompletionStage<T> functionFailure(String function, Throwable cause) {
+        return CompletableFuture.failedFuture(cause instanceof RedisCommandoException ? cause
+                : new RedisCommandoException("Error executing function " + function, cause));
+    }
+
+    private Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException || ex instanceof ExecutionException ? ex.getCause() : ex;
+    }
+
+    /*
+     * Redis may have restarted without its script cache while this instance's connection was down
+     */
+    private void reloadScriptsAfterReconnect() {
+        if (!closing.get()) {
+            scriptRegistry.reloadAllAsync(scriptRegistry.getGeneration()).whenComplete((v, ex) -> {
+                if (ex != null) {
+                    logger.warn("Unable to reload scripts after reconnect", ex);
+                }
+            });
+        }
+    }
+
+    /*
+     * Pipelined scripts are written to a dedicated connection with auto-flush disabled so that commands from other
+     * threads on the shared connection are never held back. Only one batch may use the connection at a time.
+     */
+    protected List<Object> executeScriptsPipelined(List<Batch.Operation> operations) {
+        RedaoConnection<String, String> pipeline = getPipelineConnection();
+        List<RedisFuture<Object>> futures = new ArrayList<>(operations.size());
+        synchronized (pipeline) {
+            FunctionLibrary library = this.functionLibrary;
+            for (Batch.Operation op : operations) {
+                String function = library == null ? null : Scripts.getFunctionName(op.getScript());
+                if (function != null) {
+                    futures.add(library.fcall(pipeline.async(), function, op.getOutputType(), op.getKeys(), op.getArgs()));
+                } else {
+                    String script = Scripts.forFormat(op.getScript(), valueCodec.getLuaFormat());
+                    String digest = scriptRegistry.getDigest(script);
+                    futures.add(pipeline.async().evalsha(digest, op.getOutputType(), op.getKeys(), op.getArgs()));
+                }
+            }
+            pipeline.flushCommands();
+            long timeout = pipeline.getTimeout().toMillis() * Math.max(1, operations.size() / 1000);
+            if (!LettuceFutures.awaitAll(timeout, TimeUnit.MILLISECONDS, futures.toArray(new RedisFuture[0]))) {
+                throw new RedisCommandoException("Timed out waiting for " + operations.size() + " pipelined scripts");
+            }
+        }
+
+        List<Object> results = new ArrayList<>(futures.size());
+        for (int i=0; i<futures.size(); i++) {
+            Batch.Operation op = operations.get(i);
+            try {
+                results.add(futures.get(i).get());
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RedisNoScriptException || FunctionLibrary.isFunctionNotFound(ex.getCause())) {
+                    // Script cache or library was flushed mid-batch, fall back to executing this operation individually
+                    results.add(executeScript(op.getScript(), op.getOutputType(), op.getKeys(), op.getArgs()));
+                } else {
+                    throw new RedisCommandoException("Error executing " + op.getScript(), ex.getCause());
+                }
+            } catch (InterruptedException ex) {
+                throw new RedisCommandoException("Interrupted while executing pipelined scripts", ex);
+            }
+        }
+        return results;
+    }
+
+    private synchronized RedaoConnection<String, String> getPipelineConnection() {
+        if (pipelineConnection == null) {
+            pipelineConnection = connector.connect();
+            pipelineConnection.setAutoFlushCommands(false);
+        }
+        return pipelineConnection;
+    }
+
 	protected <T extends Proxy> T createObjectProxy(Dao object, Class<T> proxyClass) {
-    	ProxyMetadata metadata = proxyMetadataMap.computeIfAbsent(proxyClass, pc -> proxyMetadataFactory.create(pc));
-    	ProxyInvocationHandler handler = new ProxyInvocationHandler(object, metadata);
-    	return (T) java.lang.reflect.Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class[] {proxyClass}, handler);
+    	return proxyClass.cast(getProxyFactory(proxyClass).create(object));
+    }
+
+    /*
+     * Uses the implementation generated by ProxyProcessor when present, otherwise dynamic proxies
+     */
+    protected ProxyFactory getProxyFactory(Class<? extends Proxy> proxyClass) {
+        return proxyFactories.computeIfAbsent(proxyClass, pc -> {
+            ProxyFactory generated = GeneratedProxies.find(pc);
+            return generated != null ? generated
+                    : new DynamicProxyFactory(this.getClass().getClassLoader(), proxyMetadataFactory.create(pc));
+        });
+    }
+
+    protected <T extends Proxy> String getGetterFieldName(Class<T> proxyClass, Function<? super T, ?> getter) {
+        return proxyMetadataFactory.getGetterFieldName(proxyClass, getter);
     }
 
     public void registerObjectInsertCallback(String setKey, DaoInsertedCallback handler) {
@@ -181,17 +666,27 @@ public class RedaoCommando implements Closeable {
     protected void invokeObjectInsertCallbacks(Dao dao) {
         Set<DaoInsertedCallback> insertCallbacks = insertCallbackMap.get(dao.getType());
         if (insertCallbacks != null) {
-            for (DaoInsertedCallback callback : insertCallbacks) {
-                callback.onInsert(dao);
-            }
+            invokeCallbacks(dao.getType(), dao.getId(), () -> {
+                for (DaoInsertedCallback callback : insertCallbacks) {
+                    callback.onInsert(dao);
+                }
+            });
         }
     }
 
     protected void invokeChangeCallbacks(Modification result) {
         Set<DaoInsertedCallback> insertCallbacks = insertCallbackMap.get(result.getDao().getType());
         Map<String, Set<DaoValueModifiedCallback>> changeCallbacksForSet = changeCallbackMap.get(result.getDao().getType());
-        
-        if (insertCallbacks != null && result.isInsert()) {
+        boolean invokeInsert = insertCallbacks != null && result.isInsert();
+        if (invokeInsert || changeCallbacksForSet != null) {
+            invokeCallbacks(result.getDao().getType(), result.getDao().getId(),
+                    () -> runChangeCallbacks(result, invokeInsert ? insertCallbacks : null, changeCallbacksForSet));
+        }
+    }
+
+    private void runChangeCallbacks(Modification result, Set<DaoInsertedCallback> insertCallbacks,
+            Map<String, Set<DaoValueModifiedCallback>> changeCallbacksForSet) {
+        if (insertCallbacks != null) {
             for (DaoInsertedCallback callback : insertCallbacks) {
                 callback.onInsert(result.getDao());
             }
@@ -220,9 +715,23 @@ public class RedaoCommando implements Closeable {
     protected void invokeDeleteCallbacks(String setKey, String id) {
         Set<DaoDeletedCallback> deleteCallbacks = deleteCallbackMap.get(setKey);
         if (deleteCallbacks != null) {
-            for (DaoDeletedCallback callback : deleteCallbacks) {
-                callback.onDelete(setKey, id);
-            }
+            invokeCallbacks(setKey, id, () -> {
+                for (DaoDeletedCallback callback : deleteCallbacks) {
+                    callback.onDelete(setKey, id);
+                }
+            });
+        }
+    }
+
+    /*
+     * Callbacks run inline on the mutating thread unless the callback dispatcher has been enabled
+     */
+    private void invokeCallbacks(String type, String id, Runnable callbacks) {
+        CallbackDispatcher dispatcher = this.callbackDispatcher;
+        if (dispatcher == null) {
+            callbacks.run();
+        } else {
+            dispatcher.dispatch(type, id, callbacks);
         }
     }
 
@@ -236,6 +745,10 @@ public class RedaoCommando implements Closeable {
     public void close() {
         if (closing.compareAndSet(false, true)) {
 
+            synchronized (reconnectListeners) {
+                reconnectListeners.forEach(Disposable::dispose);
+            }
+
             // Close the external update popper if it has been starter
             if (updatePopper != null) {
                 updatePopper.close();
@@ -248,6 +761,39 @@ public class RedaoCommando implements Closeable {
                     new RuntimeException("Interrupted while waiting for RedisCommando shutdown latch").printStackTrace();
                 }
             }
+            if (autoBatcher != null) {
+                autoBatcher.close();
+            }
+
+            ExecutorService callbackExecutor = getAsyncCallbackExecutor();
+            if (callbackExecutor != null) {
+                callbackExecutor.shutdown();
+                try {
+                    callbackExecutor.awaitTermination(connection.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    logger.warn("Interrupted while waiting for async callbacks to complete");
+                }
+            }
+            // Callbacks queued by mutations made before closing are run before the connection is closed
+            CallbackDispatcher dispatcher = this.callbackDispatcher;
+            if (dispatcher != null) {
+                this.callbackDispatcher = null;
+                dispatcher.close(connection.getTimeout());
+            }
+            if (nearCache != null) {
+                nearCache.close();
+            }
+            if (byteValueConnection != null) {
+                byteValueConnection.close();
+            }
+            for (ReplicatedIndex replicated : List.copyOf(replicatedIndexes)) {
+                replicated.close();
+            }
+            synchronized (this) {
+                if (pipelineConnection != null) {
+                    pipelineConnection.close();
+                }
+            }
             connection.close();
         }
     }
@@ -0,0 +1,69 @@
+package dev.jarcadia.redao;
+
+import java.io.Closeable;
+import java.time.Duration;
+
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+
+/**
+ * A connection to either a single Redis node or a Redis Cluster, presented through the cluster command interfaces
+ * which the standalone command interfaces also implement. A cluster connection routes each command to the node owning
+ * its key. Standalone only commands, such as SELECT and MULTI, are therefore not available.
+ */
+class RedaoConnection<K, V> implements Closeable {
+
+    private final StatefulConnection<K, V> connection;
+    private final RedisClusterCommands<K, V> sync;
+    private final RedisClusterAsyncCommands<K, V> async;
+
+    private RedaoConnection(StatefulConnection<K, V> connection, RedisClusterCommands<K, V> sync,
+            RedisClusterAsyncCommands<K, V> async) {
+        this.connection = connection;
+        this.sync = sync;
+        this.async = async;
+    }
+
+    protected static <K, V> RedaoConnection<K, V> of(StatefulRedisConnection<K, V> connection) {
+        return new RedaoConnection<>(connection, connection.sync(), connection.async());
+    }
+
+    protected static <K, V> RedaoConnection<K, V> of(StatefulRedisClusterConnection<K, V> connection) {
+        return new RedaoConnection<>(connection, connection.sync(), connection.async());
+    }
+
+    protected RedisClusterCommands<K, V> sync() {
+        return sync;
+    }
+
+    protected RedisClusterAsyncCommands<K, V> async() {
+        return async;
+    }
+
+    /**
+     * @return The underlying Lettuce connection
+     */
+    protected StatefulConnection<K, V> getStatefulConnection() {
+        return connection;
+    }
+
+    protected Duration getTimeout() {
+        return connection.getTimeout();
+    }
+
+    protected void setAutoFlushCommands(boolean autoFlush) {
+        connection.setAutoFlushCommands(autoFlush);
+    }
+
+    protected void flushCommands() {
+        connection.flushCommands();
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+}
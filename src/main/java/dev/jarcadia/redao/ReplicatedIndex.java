@@ -0,0 +1,361 @@
+package dev.jarcadia.redao;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import dev.jarcadia.redao.exception.RedisCommandoException;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+
+/**
+ * An in-memory copy of every Dao of a type. The copy is bulk loaded when created and kept current by applying the
+ * changes published on the type's change channel, so get, has, count and iteration are served without any round trips.
+ * Change messages have been through Lua, whose JSON encoder rounds numbers to 14 significant digits, so they only
+ * identify which fields changed. The raw values of those fields are read from Redis when the change is applied.
+ *
+ * Each change message carries the Dao's version, which increases by exactly one per modification. A message whose
+ * version is not the next expected version reveals a missed change, in which case only that Dao is reloaded. The whole
+ * copy is reloaded after the connection to Redis is reestablished since deletions may have been missed while
+ * disconnected.
+ *
+ * Internal fields (those starting with an underscore) are not published, so they are read from Redis on demand.
+ * Changes made by any client, including this one, are visible once their change message has been received.
+ */
+public class ReplicatedIndex implements Iterable<Dao>, Closeable {
+
+    private static final int LOAD_CHUNK_SIZE = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(ReplicatedIndex.class);
+
+    private final RedaoCommando rcommando;
+    private final ValueFormatter formatter;
+    private final Index index;
+    private final ExecutorService applier;
+    private final Subscription subscription;
+    private final Disposable reconnectListener;
+    private volatile Map<String, Replica> replicas;
+
+    protected ReplicatedIndex(RedaoCommando rcommando, ValueFormatter formatter, Index index) {
+        this.rcommando = rcommando;
+        this.formatter = formatter;
+        this.index = index;
+        this.replicas = new ConcurrentHashMap<>();
+        // Messages and reloads are applied by a single thread, in the order they were received
+        this.applier = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "redao-replica-" + index.getType());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Subscribe before loading so that no change made during the load is missed
+        this.subscription = rcommando.subscribe(rcommando.getKeyLayout().getChangeChannel(index.getType()),
+                (channel, message) -> applier.execute(() -> apply(message)));
+        this.reconnectListener = rcommando.onReconnect(subscription, this::resync);
+        await(applier.submit(this::loadAll));
+    }
+
+    public String getType() {
+        return index.getType();
+    }
+
+    public long count() {
+        return replicas.size();
+    }
+
+    public boolean has(String id) {
+        return replicas.containsKey(id);
+    }
+
+    public Dao get(String id) {
+        return new ReplicatedDao(id);
+    }
+
+    @Override
+    public Iterator<Dao> iterator() {
+        Iterator<String> ids = new ArrayList<>(replicas.keySet()).iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public Dao next() {
+                return get(ids.next());
+            }
+        };
+    }
+
+    public Stream<Dao> stream() {
+        return StreamSupport.stream(this.spliterator(), false);
+    }
+
+    /**
+     * @return The Redis backed Index that this copy is replicated from
+     */
+    public Index source() {
+        return index;
+    }
+
+    /*
+     * Reloads every Dao in the background once the subscription has been reestablished, since changes published while
+     * it was down were missed. Changes received while reloading are applied afterwards
+     */
+    private void resync() {
+        if (!applier.isShutdown()) {
+            applier.execute(this::loadAll);
+        }
+    }
+
+    @Override
+    public void close() {
+        reconnectListener.dispose();
+        subscription.close();
+        applier.shutdown();
+        rcommando.unregisterReplicatedIndex(this);
+    }
+
+    private void loadAll() {
+        Map<String, Replica> loaded = new ConcurrentHashMap<>();
+        List<String> ids = new ArrayList<>(LOAD_CHUNK_SIZE);
+        for (Dao dao : index) {
+            ids.add(dao.getId());
+            if (ids.size() == LOAD_CHUNK_SIZE) {
+                loadChunk(ids, loaded);
+                ids.clear();
+            }
+        }
+        loadChunk(ids, loaded);
+        this.replicas = loaded;
+        logger.debug("Loaded {} {} Daos", loaded.size(), index.getType());
+    }
+
+    private void loadChunk(List<String> ids, Map<String, Replica> loaded) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<RedisFuture<Map<String, String>>> futures = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            futures.add(rcommando.asyncCore().hgetall(index.get(id).getPath()));
+        }
+        if (!LettuceFutures.awaitAll(rcommando.getTimeout().toMillis(), TimeUnit.MILLISECONDS,
+                futures.toArray(new RedisFuture[0]))) {
+            throw new RedisCommandoException("Timed out loading " + index.getType() + " Daos");
+        }
+        for (int i=0; i<ids.size(); i++) {
+            Replica replica = Replica.fromHash(futures.get(i).toCompletableFuture().join());
+            if (replica != null) {
+                loaded.put(ids.get(i), replica);
+            }
+        }
+    }
+
+    private void reload(String id) {
+        Replica replica = Replica.fromHash(rcommando.core().hgetall(index.get(id).getPath()));
+        if (replica == null) {
+            replicas.remove(id);
+        } else {
+            replicas.put(id, replica);
+        }
+    }
+
+    private void apply(String message) {
+        JsonNode changes;
+        try {
+            changes = formatter.asNode(message);
+        } catch (RuntimeException ex) {
+            logger.warn("Unable to parse {} change {}, resyncing", index.getType(), message, ex);
+            loadAll();
+            return;
+        }
+        Iterator<Map.Entry<String, JsonNode>> iter = changes.fields();
+        while (iter.hasNext()) {
+            Map.Entry<String, JsonNode> change = iter.next();
+            try {
+                apply(change.getKey(), change.getValue());
+            } catch (RuntimeException ex) {
+                logger.warn("Unable to apply {} change {}, reloading {}", index.getType(), message,
+                        change.getKey(), ex);
+                reloadAfterFailure(change.getKey());
+            }
+        }
+    }
+
+    private void reloadAfterFailure(String id) {
+        try {
+            reload(id);
+        } catch (RuntimeException ex) {
+            // Drop the stale replica rather than serve it, a reconnect resyncs the whole index
+            logger.warn("Unable to reload {} {}", index.getType(), id, ex);
+            replicas.remove(id);
+        }
+    }
+
+    private void apply(String id, JsonNode change) {
+        if (change.isNull()) {
+            replicas.remove(id);
+            return;
+        }
+
+        long version = change.path("v").asLong();
+        Replica current = replicas.get(id);
+        long expected = current == null ? 1 : current.version + 1;
+        if (version == expected) {
+            Map<String, String> fields = current == null ? new HashMap<>() : new HashMap<>(current.fields);
+            List<String> modified = new ArrayList<>();
+            Iterator<Map.Entry<String, JsonNode>> iter = change.fields();
+            while (iter.hasNext()) {
+                Map.Entry<String, JsonNode> field = iter.next();
+                if (field.getKey().equals("v")) {
+                    continue;
+                } else if (field.getValue().isNull()) {
+                    fields.remove(field.getKey());
+                } else {
+                    modified.add(field.getKey());
+                }
+            }
+            if (!modified.isEmpty() && !readModified(id, version, modified, fields)) {
+                // Modified again or deleted since this change, the reloaded Dao already reflects the later changes
+                reload(id);
+                return;
+            }
+            replicas.put(id, new Replica(version, fields));
+        } else if (version > expected) {
+            // A change was missed, for example one that only modified internal fields and was not published
+            reload(id);
+        }
+        // Otherwise the change is already reflected, typically because it was made during a load
+    }
+
+    /*
+     * Reads the raw values of the modified fields along with the version, which must still be that of the change
+     * so that the values belong to it
+     *
+     * @return false if the Dao has been modified or deleted since the change
+     */
+    private boolean readModified(String id, long version, List<String> modified, Map<String, String> fields) {
+        String[] toRead = modified.toArray(new String[modified.size() + 1]);
+        toRead[modified.size()] = "v";
+        List<KeyValue<String, String>> values = rcommando.core().hmget(index.get(id).getPath(), toRead);
+        KeyValue<String, String> current = values.get(modified.size());
+        if (!current.hasValue() || Long.parseLong(current.getValue()) != version) {
+            return false;
+        }
+        for (int i=0; i<modified.size(); i++) {
+            KeyValue<String, String> value = values.get(i);
+            if (value.hasValue()) {
+                fields.put(modified.get(i), value.getValue());
+            } else {
+                fields.remove(modified.get(i));
+            }
+        }
+        return true;
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RedisCommandoException("Unable to load replicated index", e);
+        }
+    }
+
+    private static class Replica {
+
+        private final long version;
+        private final Map<String, String> fields;
+
+        private Replica(long version, Map<String, String> fields) {
+            this.version = version;
+            this.fields = Collections.unmodifiableMap(fields);
+        }
+
+        private static Replica fromHash(Map<String, String> hash) {
+            if (hash == null || hash.isEmpty()) {
+                return null;
+            }
+            Map<String, String> fields = new HashMap<>();
+            hash.forEach((field, value) -> {
+                if (!field.equals("v") && !field.startsWith("_")) {
+                    fields.put(field, value);
+                }
+            });
+            return new Replica(Long.parseLong(hash.getOrDefault("v", "0")), fields);
+        }
+
+        private String get(String field) {
+            return field.equals("v") ? String.valueOf(version) : fields.get(field);
+        }
+    }
+
+    /*
+     * A Dao whose reads of public fields are served from the replicated copy. Mutations are applied to Redis as usual
+     */
+    private class ReplicatedDao extends Dao {
+
+        private ReplicatedDao(String id) {
+            super(rcommando, formatter, index.getType(), id);
+        }
+
+        @Override
+        public boolean exists() {
+            return has(getId());
+        }
+
+        @Override
+        public DaoValue get(String field) {
+            if (field.startsWith("_")) {
+                return super.get(field);
+            }
+            Replica replica = replicas.get(getId());
+            return new DaoValue(formatter, field, replica == null ? null : replica.get(field));
+        }
+
+        @Override
+        public DaoValues get(String... fields) {
+            for (String field : fields) {
+                if (field.startsWith("_")) {
+                    return super.get(fields);
+                }
+            }
+            Replica replica = replicas.get(getId());
+            List<KeyValue<String, String>> values = new ArrayList<>(fields.length);
+            for (String field : fields) {
+                values.add(KeyValue.fromNullable(field, replica == null ? null : replica.get(field)));
+            }
+            return new DaoValues(formatter, values);
+        }
+
+        /**
+         * @return Every public field of the Dao along with its version, internal fields are omitted
+         */
+        @Override
+        public DaoValues getAll() {
+            Replica replica = replicas.get(getId());
+            Map<String, String> values = new HashMap<>();
+            if (replica != null) {
+                values.putAll(replica.fields);
+                values.put("v", String.valueOf(replica.version));
+            }
+            return new DaoValues(formatter, values);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package dev.jarcadia.redao;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import dev.jarcadia.redao.proxy.Proxy;
+
+/**
+ * Proxies the Daos of a {@link ReplicatedIndex}, so that proxy getters are served from the in-memory copy
+ */
+public class ReplicatedProxyIndex<T extends Proxy> implements Iterable<T>, Closeable {
+
+    private final ReplicatedIndex sourceIndex;
+    private final Class<T> proxyClass;
+
+    protected ReplicatedProxyIndex(ReplicatedIndex sourceIndex, Class<T> proxyClass) {
+        this.sourceIndex = sourceIndex;
+        this.proxyClass = proxyClass;
+    }
+
+    public String getKey() {
+        return sourceIndex.getType();
+    }
+
+    public long size() {
+        return sourceIndex.count();
+    }
+
+    public boolean has(String id) {
+        return sourceIndex.has(id);
+    }
+
+    public T get(String id) {
+        return sourceIndex.get(id).as(proxyClass);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        Iterator<Dao> source = sourceIndex.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return source.next().as(proxyClass);
+            }
+        };
+    }
+
+    public Stream<T> stream() {
+        return StreamSupport.stream(this.spliterator(), false);
+    }
+
+    @Override
+    public void close() {
+        sourceIndex.close();
+    }
+}
@@ -0,0 +1,146 @@
+package dev.jarcadia.redao;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.jarcadia.redao.exception.RedisCommandoException;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is responsible for tracking every script that has been executed or registered, keyed by its SHA1 digest,
+ * and for (re)loading them into Redis. Digests are computed locally so that a script can be invoked with EVALSHA
+ * without first asking Redis to load it.
+ *
+ * When Redis loses its script cache (restart, failover or SCRIPT FLUSH) all registered scripts are reloaded in a
+ * single pipelined burst rather than one NOSCRIPT miss per script.
+ */
+class ScriptRegistry {
+
+    private final Logger logger = LoggerFactory.getLogger(ScriptRegistry.class);
+
+    private final RedisClusterAsyncCommands<String, String> commands;
+    private final Duration timeout;
+    private final Map<String, String> digestsByScript;
+    private final Map<String, String> scriptsByDigest;
+    private final AtomicLong generation;
+
+    protected ScriptRegistry(RedisClusterAsyncCommands<String, String> commands, Duration timeout) {
+        this.commands = commands;
+        this.timeout = timeout;
+        this.digestsByScript = new ConcurrentHashMap<>();
+        this.scriptsByDigest = new ConcurrentHashMap<>();
+        this.generation = new AtomicLong();
+    }
+
+    /**
+     * Registers and loads the provided scripts using a single pipelined burst
+     */
+    protected void preload(Collection<String> scripts) {
+        for (String script : scripts) {
+            digestsByScript.computeIfAbsent(script, this::register);
+        }
+        load(scripts);
+    }
+
+    /**
+     * @return The digest of a script, registering and loading it first if it has not been seen before
+     */
+    protected String getDigest(String script) {
+        return digestsByScript.computeIfAbsent(script, s -> {
+            String digest = register(s);
+            load(List.of(s));
+            return digest;
+        });
+    }
+
+    protected CompletionStage<String> getDigestAsync(String script) {
+        String digest = digestsByScript.get(script);
+        if (digest != null) {
+            return CompletableFuture.completedFuture(digest);
+        } else {
+            return commands.scriptLoad(script).thenApply(d -> {
+                scriptsByDigest.put(d, script);
+                digestsByScript.put(script, d);
+                return d;
+            });
+        }
+    }
+
+    protected Collection<String> getScripts() {
+        return scriptsByDigest.values();
+    }
+
+    /**
+     * @return A value that changes each time all scripts are reloaded. Callers that observed a NOSCRIPT error pass the
+     * generation they observed before executing to {@link #reloadAll(long)} so that concurrent failures cause only one
+     * reload
+     */
+    protected long getGeneration() {
+        return generation.get();
+    }
+
+    protected synchronized void reloadAll(long observedGeneration) {
+        if (generation.get() == observedGeneration) {
+            logger.info("Reloading {} scripts", scriptsByDigest.size());
+            load(new ArrayList<>(scriptsByDigest.values()));
+            generation.incrementAndGet();
+        }
+    }
+
+    protected CompletionStage<Void> reloadAllAsync(long observedGeneration) {
+        if (generation.get() != observedGeneration) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (String script : scriptsByDigest.values()) {
+            futures.add(commands.scriptLoad(script).toCompletableFuture());
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenRun(() -> generation.compareAndSet(observedGeneration, observedGeneration + 1));
+    }
+
+    private void load(Collection<String> scripts) {
+        // Commands are written without waiting for each response, so the loads are effectively pipelined
+        List<RedisFuture<String>> futures = new ArrayList<>(scripts.size());
+        for (String script : scripts) {
+            futures.add(commands.scriptLoad(script));
+        }
+        for (RedisFuture<String> future : futures) {
+            LettuceFutures.awaitOrCancel(future, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String register(String script) {
+        String digest = sha1(script);
+        scriptsByDigest.put(digest, script);
+        return digest;
+    }
+
+    private static String sha1(String script) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RedisCommandoException("SHA-1 is not available to compute script digests", e);
+        }
+    }
+}
@@ -1,104 +1,514 @@
 package dev.jarcadia.redao;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 class Scripts {
 	
-	protected static String DAO_TOUCH = """
-        --Keys types, type, path, changeChannelKey
-        --Args score
-        local v = redis.call('hincrby', KEYS[3], 'v', 1);
-        if (v == 1) then
-            redis.call('sadd', KEYS[1], KEYS[2]);
-            local id = string.sub(KEYS[3], string.len(KEYS[2]) + 2);
-            redis.call('zadd', KEYS[2], ARGV[1], id);
-            redis.call('publish', KEYS[4], '{"' .. id .. '":{"v":' .. v .. '}}');
-        end
-        return v;
-    """;
-        
-    protected static String DAO_CHECKED_DELETE = """
-    	--Keys types, type, path, changeChannelKey
-		local removed = redis.call('del', KEYS[3]);
-		if (removed == 1) then 
-			-- TODO REMOVE from RC if empty
-			
-            local id = string.sub(KEYS[3], string.len(KEYS[2]) + 2);
-			redis.call('zrem', KEYS[2], id);
-			redis.call('publish', KEYS[4], '{"' .. id .. '":null}')
-		end
-		return removed;
-    """;
-    
-    protected static String DAO_SET = """
-        --Keys types, type, path, changeChannelKey
-        --Args score field value [field value...] 
-        local changed = false;
-        local publish = false;
-        local update = {};
-        local changes = {};
-        for i=2,#ARGV,2 do
-            local prev = redis.call('hget', KEYS[3], ARGV[i]);
-            if (prev ~= ARGV[i+1]) then
-                redis.call('hset', KEYS[3], ARGV[i], ARGV[i+1]);
-                changed = true;
-                table.insert(changes, ARGV[i]);
-                table.insert(changes, prev);
-                table.insert(changes, ARGV[i+1]);
-                if (string.sub(ARGV[i], 1, 1) ~= '_') then
-                    update[ARGV[i]] = cjson.decode(ARGV[i+1])
-                	publish = true;
-                end
-            end
-        end
-
-        if (changed) then
-    		-- Extract ID from keys
-            local id = string.sub(KEYS[3], string.len(KEYS[2]) + 2);
-            -- Bump version 
-            local ver = redis.call('hincrby', KEYS[3], 'v', 1);
-            -- Add version as first element in response
-            table.insert(changes, 1, tostring(ver));
-            if (ver == 1) then
-                -- If this is version 1, add to zset
-                redis.call('zadd', KEYS[2], ARGV[1], id);
-                -- Add to RC set
-				redis.call('sadd', KEYS[1], KEYS[2]);
-                -- Always publish on insert (even if only internal fields were changed - they won't be in the update)
-                publish = true;
-            end
-            if (publish) then
-                update['v'] = ver;
-                redis.call('publish', KEYS[4], '{"' .. id .. '":' .. cjson.encode(update) .. '}');
-            end
-        end
-        return changes
-    """;
-    
-    protected static String DAO_CLEAR_FIELD = """
-    	--Keys setKey, hashKey, changeChannelKey
-        --Args [fields ...]
-        local changed = false;
-        local cleared = {};
-        local update = ''
-        for i=1,#ARGV do
-            local prev = redis.call('hget', KEYS[2], ARGV[i]);
-            if (prev) then
-                redis.call('hdel', KEYS[2], ARGV[i]);
-                changed = true;
-                table.insert(cleared, ARGV[i]);
-                table.insert(cleared, prev);
-                update = update .. ',"' .. ARGV[i] .. '":null'
-            end
-        end
-        if (changed) then
-            local id = string.sub(KEYS[2], string.len(KEYS[1]) + 2);
-            local ver = redis.call('hincrby', KEYS[2], 'v', 1);
-            table.insert(cleared, 1, tostring(ver));
-            redis.call('publish', KEYS[3], '{"' .. id .. '":{"v":'.. ver .. update .. '}}');
-        end
-        return cleared;
+	/*
+	 * Decodes Dao values and encodes change messages. Every Dao script starts with one of these preludes, JSON by
+	 * default, which is swapped for the MessagePack prelude when a binary ValueCodec is in use (see forFormat)
+	 */
+	private static final String JSON_PRELUDE = """
+        local NULL = cjson.null;
+        local decodeValue = cjson.decode;
+        local function encodeChange(id, update)
+            return cjson.encode({[id] = update or NULL});
+        end
+        local function encodeCleared(id, ver, cleared)
+            local update = '';
+            for i=1,#cleared do
+                update = update .. ',' .. cjson.encode(cleared[i]) .. ':null';
+            end
+            return '{' .. cjson.encode(id) .. ':{"v":' .. ver .. update .. '}}';
+        end
+    """;
+
+	private static final String MESSAGE_PACK_PRELUDE = """
+        local NULL = cjson.null;
+        local function decodeValue(value)
+            local decoded = cmsgpack.unpack(value);
+            if (decoded == nil) then
+                return NULL;
+            end
+            return decoded;
+        end
+        local function encodeChange(id, update)
+            return cmsgpack.pack({[id] = update or NULL});
+        end
+        local function encodeCleared(id, ver, cleared)
+            local update = {v = ver};
+            for i=1,#cleared do
+                update[cleared[i]] = NULL;
+            end
+            return cmsgpack.pack({[id] = update});
+        end
+    """;
+
+	/*
+	 * Shared Lua implementations of the Dao mutations. Each Dao script below is composed of these functions followed by
+	 * a single call, which allows several mutations to also be composed into one atomic script (see DAO_MULTI)
+	 */
+	private static final String DAO_FUNCTIONS = JSON_PRELUDE + """
+        local function argsFrom(argv, start)
+            local args = {};
+            for i=start,#argv do
+                args[i - start + 1] = argv[i];
+            end
+            return args;
+        end
+
+        --Keys derived from typeKey are not declared in KEYS, so they must begin with typeKey to share its hash tag and
+        --therefore its slot on Redis Cluster, see ClusterKeyLayout
+        --Field indexes of a type are defined in the hash typeKey:idx as field -> kind
+        local function fieldIndexes(typeKey)
+            local defs = redis.call('hgetall', typeKey .. ':idx');
+            if (#defs == 0) then
+                return nil;
+            end
+            local indexes = {};
+            for i=1,#defs,2 do
+                indexes[defs[i]] = defs[i+1];
+            end
+            return indexes;
+        end
+
+        --The field's length keeps keys unambiguous when field names contain the separator
+        local function fieldIndexKey(typeKey, field, value)
+            return typeKey .. ':idx:' .. string.len(field) .. ':' .. field .. ':' .. value;
+        end
+
+        --Numeric and prefix indexes are sorted sets, a field has at most one index
+        local function sortedIndexKey(typeKey, field)
+            return typeKey .. ':idx:' .. string.len(field) .. ':' .. field;
+        end
+
+        --Prefix index members are the value, a NUL byte and the id with score 0, so they are ordered by value and then
+        --id. The separator is built with string.char since an escape in this text block would be decoded by Java
+        local function prefixMember(kind, value, id)
+            local str = decodeValue(value);
+            if (type(str) ~= 'string') then
+                return nil;
+            end
+            if (kind == 'ilex') then
+                str = string.lower(str);
+            end
+            return str .. string.char(0) .. id;
+        end
+
+        local function numberValue(value)
+            if (value) then
+                local decoded = decodeValue(value);
+                if (type(decoded) == 'number') then
+                    return decoded;
+                end
+            end
+            return nil;
+        end
+
+        --A type has at most one location, either a 'geo' field holding {lat, lon} or a 'lat' and a 'lon' field. The
+        --location is read back from the hash so that it is current whichever of its fields changed
+        local function indexLocation(indexes, typeKey, id)
+            local path = typeKey .. '/' .. id;
+            local lat, lon;
+            for field, kind in pairs(indexes) do
+                if (kind == 'geo') then
+                    local value = redis.call('hget', path, field);
+                    local location = value and decodeValue(value);
+                    if (type(location) == 'table') then
+                        lat, lon = location['lat'], location['lon'];
+                    end
+                elseif (kind == 'lat') then
+                    lat = numberValue(redis.call('hget', path, field));
+                elseif (kind == 'lon') then
+                    lon = numberValue(redis.call('hget', path, field));
+                end
+            end
+            --Coordinates that GEOADD rejects are left out of the index rather than failing the write
+            if (type(lat) == 'number' and type(lon) == 'number' and lat >= -85.05112878 and lat <= 85.05112878
+                    and lon >= -180 and lon <= 180) then
+                redis.call('geoadd', typeKey .. ':geo', lon, lat, id);
+            else
+                redis.call('zrem', typeKey .. ':geo', id);
+            end
+        end
+
+        local function indexField(indexes, typeKey, id, field, value)
+            local kind = indexes and indexes[field];
+            if (kind == 'eq') then
+                redis.call('sadd', fieldIndexKey(typeKey, field, value), id);
+            elseif (kind == 'num') then
+                --Values that are not numbers are left out of the index
+                local score = decodeValue(value);
+                if (type(score) == 'number') then
+                    redis.call('zadd', sortedIndexKey(typeKey, field), score, id);
+                end
+            elseif (kind == 'lex' or kind == 'ilex') then
+                local member = prefixMember(kind, value, id);
+                if (member) then
+                    redis.call('zadd', sortedIndexKey(typeKey, field), 0, member);
+                end
+            elseif (kind == 'geo' or kind == 'lat' or kind == 'lon') then
+                indexLocation(indexes, typeKey, id);
+            end
+        end
+
+        local function unindexField(indexes, typeKey, id, field, value)
+            local kind = indexes and indexes[field];
+            if (kind == 'eq' and value) then
+                redis.call('srem', fieldIndexKey(typeKey, field, value), id);
+            elseif (kind == 'num' and value) then
+                redis.call('zrem', sortedIndexKey(typeKey, field), id);
+            elseif ((kind == 'lex' or kind == 'ilex') and value) then
+                local member = prefixMember(kind, value, id);
+                if (member) then
+                    redis.call('zrem', sortedIndexKey(typeKey, field), member);
+                end
+            elseif ((kind == 'geo' or kind == 'lat' or kind == 'lon') and value) then
+                redis.call('zrem', typeKey .. ':geo', id);
+            end
+        end
+
+        local function daoTouch(types, typeKey, path, channel, args)
+            --Args score
+            local v = redis.call('hincrby', path, 'v', 1);
+            if (v == 1) then
+                redis.call('sadd', types, typeKey);
+                local id = string.sub(path, string.len(typeKey) + 2);
+                redis.call('zadd', typeKey, args[1], id);
+                redis.call('publish', channel, encodeChange(id, {v = v}));
+            end
+            return v;
+        end
+
+        local function daoDelete(types, typeKey, path, channel)
+            local indexes = fieldIndexes(typeKey);
+            if (indexes) then
+                local id = string.sub(path, string.len(typeKey) + 2);
+                for field in pairs(indexes) do
+                    unindexField(indexes, typeKey, id, field, redis.call('hget', path, field));
+                end
+            end
+            local removed = redis.call('del', path);
+            if (removed == 1) then
+                -- TODO REMOVE from RC if empty
+
+                local id = string.sub(path, string.len(typeKey) + 2);
+                redis.call('zrem', typeKey, id);
+                redis.call('publish', channel, encodeChange(id, nil));
+            end
+            return removed;
+        end
+
+        local function daoSet(types, typeKey, path, channel, args)
+            --Args score field value [field value...]
+            local changed = false;
+            local publish = false;
+            local update = {};
+            local changes = {};
+            local indexes = fieldIndexes(typeKey);
+            local id = string.sub(path, string.len(typeKey) + 2);
+            for i=2,#args,2 do
+                local prev = redis.call('hget', path, args[i]);
+                if (prev ~= args[i+1]) then
+                    redis.call('hset', path, args[i], args[i+1]);
+                    unindexField(indexes, typeKey, id, args[i], prev);
+                    indexField(indexes, typeKey, id, args[i], args[i+1]);
+                    changed = true;
+                    table.insert(changes, args[i]);
+                    table.insert(changes, prev);
+                    table.insert(changes, args[i+1]);
+                    if (string.sub(args[i], 1, 1) ~= '_') then
+                        update[args[i]] = decodeValue(args[i+1]);
+                        publish = true;
+                    end
+                end
+            end
+
+            if (changed) then
+                -- Bump version
+                local ver = redis.call('hincrby', path, 'v', 1);
+                -- Add version as first element in response
+                table.insert(changes, 1, tostring(ver));
+                if (ver == 1) then
+                    -- If this is version 1, add to zset
+                    redis.call('zadd', typeKey, args[1], id);
+                    -- Add to RC set
+                    redis.call('sadd', types, typeKey);
+                    -- Always publish on insert (even if only internal fields were changed - they won't be in the update)
+                    publish = true;
+                end
+                if (publish) then
+                    update['v'] = ver;
+                    redis.call('publish', channel, encodeChange(id, update));
+                end
+            end
+            return changes
+        end
+
+        local function daoClear(typeKey, path, channel, args)
+            --Args [fields ...]
+            local changed = false;
+            local cleared = {};
+            local fields = {};
+            local indexes = fieldIndexes(typeKey);
+            local id = string.sub(path, string.len(typeKey) + 2);
+            for i=1,#args do
+                local prev = redis.call('hget', path, args[i]);
+                if (prev) then
+                    redis.call('hdel', path, args[i]);
+                    unindexField(indexes, typeKey, id, args[i], prev);
+                    changed = true;
+                    table.insert(cleared, args[i]);
+                    table.insert(cleared, prev);
+                    table.insert(fields, args[i]);
+                end
+            end
+            if (changed) then
+                local ver = redis.call('hincrby', path, 'v', 1);
+                table.insert(cleared, 1, tostring(ver));
+                redis.call('publish', channel, encodeCleared(id, ver, fields));
+            end
+            return cleared;
+        end
+    """;
+
+	/*
+	 * The change channel is passed as an argument rather than a key because it is not a key. Every key passed to a
+	 * Dao script belongs to the same hash slot, which allows the scripts to run on Redis Cluster (see KeyLayout)
+	 */
+	private static final String DAO_TOUCH_BODY = """
+        --Keys types, type, path
+        --Args changeChannel score
+        return daoTouch(KEYS[1], KEYS[2], KEYS[3], ARGV[1], argsFrom(ARGV, 2));
+    """;
+
+    private static final String DAO_CHECKED_DELETE_BODY = """
+    	--Keys types, type, path
+    	--Args changeChannel
+        return daoDelete(KEYS[1], KEYS[2], KEYS[3], ARGV[1]);
+    """;
+
+    private static final String DAO_SET_BODY = """
+        --Keys types, type, path
+        --Args changeChannel score field value [field value...]
+        return daoSet(KEYS[1], KEYS[2], KEYS[3], ARGV[1], argsFrom(ARGV, 2));
+    """;
+
+    private static final String DAO_CLEAR_FIELD_BODY = """
+    	--Keys type, path
+        --Args changeChannel [fields ...]
+        return daoClear(KEYS[1], KEYS[2], ARGV[1], argsFrom(ARGV, 2));
     """;
 
+    private static final String DAO_MULTI_BODY = """
+        --Keys [types, type, path ...]
+        --Args [op changeChannel argCount [arg ...] ...] (one op per types/type/path triple)
+        --Redis does not roll back a script that fails partway, so every operation is checked for the errors its writes
+        --could raise before any is applied
+        local function invalid(op, path, args)
+            if (op ~= 'set' and op ~= 'touch' and op ~= 'clear' and op ~= 'delete') then
+                return 'Unknown Dao operation ' .. tostring(op);
+            end
+            local keyType = redis.call('type', path)['ok'];
+            if (keyType ~= 'hash' and keyType ~= 'none') then
+                return 'Dao ' .. path .. ' is not a hash';
+            end
+            if ((op == 'set' or op == 'touch') and not tonumber(args[1])) then
+                return 'Invalid score for Dao ' .. path;
+            end
+            if (op == 'set') then
+                if (#args % 2 ~= 1) then
+                    return 'Missing value for Dao ' .. path;
+                end
+                for i=3,#args,2 do
+                    if (not pcall(decodeValue, args[i])) then
+                        return 'Invalid value for ' .. path .. ' field ' .. args[i-1];
+                    end
+                end
+            end
+            return nil;
+        end
+
+        local ops = {};
+        local a = 1;
+        for k=1,#KEYS,3 do
+            local op = ARGV[a];
+            local channel = ARGV[a+1];
+            local n = tonumber(ARGV[a+2]) or 0;
+            local args = {};
+            for j=1,n do
+                args[j] = ARGV[a+2+j];
+            end
+            a = a + 3 + n;
+            local err = invalid(op, KEYS[k+2], args);
+            if (err) then
+                return redis.error_reply(err);
+            end
+            table.insert(ops, {op, k, channel, args});
+        end
+
+        local results = {};
+        for i=1,#ops do
+            local op, k, channel, args = ops[i][1], ops[i][2], ops[i][3], ops[i][4];
+            if (op == 'set') then
+                table.insert(results, daoSet(KEYS[k], KEYS[k+1], KEYS[k+2], channel, args));
+            elseif (op == 'touch') then
+                table.insert(results, daoTouch(KEYS[k], KEYS[k+1], KEYS[k+2], channel, args));
+            elseif (op == 'clear') then
+                table.insert(results, daoClear(KEYS[k+1], KEYS[k+2], channel, args));
+            else
+                table.insert(results, daoDelete(KEYS[k], KEYS[k+1], KEYS[k+2], channel));
+            end
+        end
+        return results;
+    """;
+
+    private static final String DAO_CREATE_INDEX_BODY = """
+        --Keys type
+        --Args field kind
+        local prev = redis.call('hget', KEYS[1] .. ':idx', ARGV[1]);
+        if (prev and prev ~= ARGV[2]) then
+            return redis.error_reply('Field ' .. ARGV[1] .. ' already has a ' .. prev .. ' index');
+        end
+        if (ARGV[2] == 'geo' or ARGV[2] == 'lat' or ARGV[2] == 'lon') then
+            --A type has one location, a geo field or a lat and lon pair
+            local defs = redis.call('hgetall', KEYS[1] .. ':idx');
+            for i=1,#defs,2 do
+                local kind = defs[i+1];
+                if (defs[i] ~= ARGV[1] and (kind == ARGV[2] or kind == 'geo'
+                        or (ARGV[2] == 'geo' and (kind == 'lat' or kind == 'lon')))) then
+                    return redis.error_reply('Field ' .. defs[i] .. ' already has a ' .. kind .. ' index');
+                end
+            end
+        end
+        redis.call('hset', KEYS[1] .. ':idx', ARGV[1], ARGV[2]);
+        return prev and 0 or 1;
+    """;
+
+    private static final String DAO_BACKFILL_INDEX_BODY = """
+        --Keys type
+        --Args field [id ...]
+        local indexes = fieldIndexes(KEYS[1]);
+        for i=2,#ARGV do
+            local value = redis.call('hget', KEYS[1] .. '/' .. ARGV[i], ARGV[1]);
+            if (value) then
+                indexField(indexes, KEYS[1], ARGV[i], ARGV[1], value);
+            end
+        end
+        return #ARGV - 1;
+    """;
+
+    private static final String DAO_WHERE_BODY = """
+        --Keys type
+        --Args field value
+        if (redis.call('hget', KEYS[1] .. ':idx', ARGV[1]) ~= 'eq') then
+            return redis.error_reply('No equality index on field ' .. ARGV[1]);
+        end
+        return redis.call('smembers', fieldIndexKey(KEYS[1], ARGV[1], ARGV[2]));
+    """;
+
+    private static final String DAO_PREFIX_BODY = """
+        --Keys type
+        --Args field prefix limit
+        local kind = redis.call('hget', KEYS[1] .. ':idx', ARGV[1]);
+        if (kind ~= 'lex' and kind ~= 'ilex') then
+            return redis.error_reply('No prefix index on field ' .. ARGV[1]);
+        end
+        local prefix = ARGV[2];
+        if (kind == 'ilex') then
+            prefix = string.lower(prefix);
+        end
+        local min, max = '-', '+';
+        if (#prefix > 0) then
+            --No UTF-8 or MessagePack string contains the byte 255. Built with string.char since a '\255' escape in
+            --this text block would be decoded by Java into the two byte UTF-8 encoding of U+00AD
+            min, max = '[' .. prefix, '(' .. prefix .. string.char(255);
+        end
+        return redis.call('zrangebylex', sortedIndexKey(KEYS[1], ARGV[1]), min, max, 'LIMIT', 0, tonumber(ARGV[3]));
+    """;
+
+    /*
+     * Walks one ZSCAN page of a type, returning the next cursor followed by the id and requested field values of each
+     * Dao that matches every predicate. Operands are serialized values decoded like the fields they are compared with
+     */
+    private static final String DAO_QUERY_BODY = """
+        --Keys type
+        --Args cursor count predicateCount [op field operand ...] [field ...]
+        local function matches(op, raw, operand)
+            if (not raw) then
+                return op == 'ne';
+            end
+            local value, expected = decodeValue(raw), decodeValue(operand);
+            if (op == 'eq' or op == 'ne') then
+                local equal;
+                if (type(value) == 'table' or type(expected) == 'table') then
+                    equal = raw == operand;
+                else
+                    equal = value == expected;
+                end
+                return equal == (op == 'eq');
+            end
+            if (type(value) ~= type(expected) or (type(value) ~= 'number' and type(value) ~= 'string')) then
+                return false;
+            end
+            if (op == 'gt') then
+                return value > expected;
+            elseif (op == 'gte') then
+                return value >= expected;
+            elseif (op == 'lt') then
+                return value < expected;
+            else
+                return value <= expected;
+            end
+        end
+
+        local scan = redis.call('zscan', KEYS[1], ARGV[1], 'COUNT', ARGV[2]);
+        local fieldsStart = 4 + tonumber(ARGV[3]) * 3;
+        local results = {scan[1]};
+        for i=1,#scan[2],2 do
+            local id = scan[2][i];
+            local path = KEYS[1] .. '/' .. id;
+            local matched = true;
+            for p=4,fieldsStart-1,3 do
+                if (not matches(ARGV[p], redis.call('hget', path, ARGV[p+1]), ARGV[p+2])) then
+                    matched = false;
+                    break;
+                end
+            end
+            if (matched) then
+                table.insert(results, id);
+                if (#ARGV >= fieldsStart) then
+                    table.insert(results, redis.call('hmget', path, unpack(ARGV, fieldsStart)));
+                else
+                    table.insert(results, {});
+                end
+            end
+        end
+        return results;
+    """;
+
+	protected static String DAO_TOUCH = DAO_FUNCTIONS + DAO_TOUCH_BODY;
+
+    protected static String DAO_CHECKED_DELETE = DAO_FUNCTIONS + DAO_CHECKED_DELETE_BODY;
+
+    protected static String DAO_SET = DAO_FUNCTIONS + DAO_SET_BODY;
+
+    protected static String DAO_CLEAR_FIELD = DAO_FUNCTIONS + DAO_CLEAR_FIELD_BODY;
+
+    protected static String DAO_MULTI = DAO_FUNCTIONS + DAO_MULTI_BODY;
+
+    protected static String DAO_CREATE_INDEX = DAO_FUNCTIONS + DAO_CREATE_INDEX_BODY;
+
+    protected static String DAO_BACKFILL_INDEX = DAO_FUNCTIONS + DAO_BACKFILL_INDEX_BODY;
+
+    protected static String DAO_WHERE = DAO_FUNCTIONS + DAO_WHERE_BODY;
+
+    protected static String DAO_PREFIX = DAO_FUNCTIONS + DAO_PREFIX_BODY;
+
+    protected static String DAO_QUERY = JSON_PRELUDE + DAO_QUERY_BODY;
+
     protected static String MERGE_INTO_SET_IF_DISTINCT = """
         redis.call('sadd', KEYS[2], unpack(ARGV));
         local inter = redis.call('sinter', KEYS[1], KEYS[2])
@@ -108,4 +518,90 @@ class Scripts {
         redis.call('del', KEYS[2]);
         return inter;
     """;
+
+    protected static String HGETSET = """
+        --Keys hashKey
+        --Args field value
+        local old = redis.call('hget', KEYS[1], ARGV[1]);
+        redis.call('hset', KEYS[1], ARGV[1], ARGV[2]);
+        return old;
+    """;
+
+    /*
+     * Reads Daos in bulk. The index key and every path must share a slot, so on Redis Cluster the ids are grouped by
+     * index shard. A Dao exists if its id is in the index, as with Index.has
+     */
+    protected static String DAO_GET_ALL = """
+        --Keys type, [path ...]
+        --Args [field ...]
+        local results = {};
+        for k=2,#KEYS do
+            local id = string.sub(KEYS[k], string.len(KEYS[1]) + 2);
+            if (not redis.call('zscore', KEYS[1], id)) then
+                results[k-1] = false;
+            elseif (#ARGV == 0) then
+                results[k-1] = {};
+            else
+                results[k-1] = redis.call('hmget', KEYS[k], unpack(ARGV));
+            end
+        end
+        return results;
+    """;
+
+    /**
+     * @return Every script used internally, which are preloaded when a RedaoCommando is created
+     */
+    protected static List<String> all() {
+        return List.of(DAO_TOUCH, DAO_CHECKED_DELETE, DAO_SET, DAO_CLEAR_FIELD, DAO_MULTI, MERGE_INTO_SET_IF_DISTINCT,
+                HGETSET, DAO_GET_ALL, DAO_CREATE_INDEX, DAO_BACKFILL_INDEX, DAO_WHERE,
+                DAO_PREFIX, DAO_QUERY);
+    }
+
+    /*
+     * Redis Functions library containing the Dao write path (Redis 7+). The version must be incremented whenever the
+     * library changes so that running instances upgrade the installed copy
+     */
+    protected static final int FUNCTION_LIBRARY_VERSION = 10;
+
+    protected static final String FUNCTION_LIBRARY = "#!lua name=redao\n" + DAO_FUNCTIONS + """
+        redis.register_function{function_name='redao_version', flags={'no-writes'}, callback=function(KEYS, ARGV)
+            return """ + FUNCTION_LIBRARY_VERSION + """
+        end}
+    """ + libraryFunction("redao_touch", DAO_TOUCH_BODY)
+            + libraryFunction("redao_checked_delete", DAO_CHECKED_DELETE_BODY)
+            + libraryFunction("redao_set", DAO_SET_BODY)
+            + libraryFunction("redao_clear_field", DAO_CLEAR_FIELD_BODY)
+            + libraryFunction("redao_multi", DAO_MULTI_BODY);
+
+    private static String libraryFunction(String name, String body) {
+        return "redis.register_function('" + name + "', function(KEYS, ARGV)\n" + body + "end)\n";
+    }
+
+    /**
+     * @return The equivalent of a script for the given value format. Only the Dao scripts depend on the format, any
+     * other script is returned as is
+     */
+    protected static String forFormat(String script, ValueCodec.LuaFormat format) {
+        if (format == ValueCodec.LuaFormat.JSON || !script.startsWith(JSON_PRELUDE)) {
+            return script;
+        }
+        return MESSAGE_PACK_SCRIPTS.computeIfAbsent(script,
+                s -> MESSAGE_PACK_PRELUDE + s.substring(JSON_PRELUDE.length()));
+    }
+
+    private static final Map<String, String> MESSAGE_PACK_SCRIPTS = new ConcurrentHashMap<>();
+
+    /**
+     * @return The name of the library function that is equivalent to a script, or null if it is not in the library
+     */
+    protected static String getFunctionName(String script) {
+        return FUNCTION_NAMES.get(script);
+    }
+
+    private static final Map<String, String> FUNCTION_NAMES = Map.of(
+            DAO_TOUCH, "redao_touch",
+            DAO_CHECKED_DELETE, "redao_checked_delete",
+            DAO_SET, "redao_set",
+            DAO_CLEAR_FIELD, "redao_clear_field",
+            DAO_MULTI, "redao_multi");
 }
@@ -0,0 +1,34 @@
+package dev.jarcadia.redao;
+
+import java.util.List;
+
+/**
+ * The original single node layout: one index zset per type named after the type and one hash per Dao at type/id.
+ */
+class StandaloneKeyLayout implements KeyLayout {
+
+    @Override
+    public String getTypesKey(String type, String id) {
+        return Keys.TYPES;
+    }
+
+    @Override
+    public String getIndexKey(String type, String id) {
+        return type;
+    }
+
+    @Override
+    public String getDaoKey(String type, String id) {
+        return type + "/" + id;
+    }
+
+    @Override
+    public List<String> getIndexKeys(String type) {
+        return List.of(type);
+    }
+
+    @Override
+    public String getChangeChannel(String type) {
+        return type + ".change";
+    }
+}
@@ -47,6 +47,10 @@ public class Subscription implements Closeable {
     	this.listener.unsubscribe(channel);
     }
     
+    protected StatefulRedisPubSubConnection<String, String> getConnection() {
+        return pubsubConnection;
+    }
+
     @Override
     public void close() {
     	this.listener.unsubscribeAll();
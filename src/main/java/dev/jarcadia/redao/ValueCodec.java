@@ -0,0 +1,44 @@
+package dev.jarcadia.redao;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Determines how Dao values are encoded when stored in Redis and how change messages are published. Values are still
+ * mapped to and from Java objects by the RedaoCommando's ObjectMapper, so custom serializers apply to every codec.
+ *
+ * The Dao scripts decode values and encode change messages within Redis, so every codec must produce one of the
+ * formats that Redis' Lua runtime understands (see {@link LuaFormat}).
+ */
+public interface ValueCodec {
+
+    /**
+     * Stores values as JSON text, the default
+     */
+    ValueCodec JSON = new JsonValueCodec();
+
+    /**
+     * Stores values as MessagePack, which is typically smaller and faster to parse than JSON, particularly for
+     * numeric values and nested objects. Values are not human readable in Redis
+     */
+    ValueCodec MESSAGE_PACK = new MessagePackValueCodec();
+
+    LuaFormat getLuaFormat();
+
+    byte[] encode(ObjectMapper mapper, Object value) throws IOException;
+
+    <T> T decode(ObjectMapper mapper, byte[] bytes, JavaType type) throws IOException;
+
+    JsonNode decodeTree(ObjectMapper mapper, byte[] bytes) throws IOException;
+
+    /**
+     * The formats understood by the Dao scripts, cjson and cmsgpack respectively
+     */
+    enum LuaFormat {
+        JSON,
+        MESSAGE_PACK
+    }
+}
@@ -0,0 +1,259 @@
+package dev.jarcadia.redao;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.type.CollectionType;
+
+/**
+ * This class is responsible for decoding JSON values as cheaply as possible. An ObjectReader is prepared once per type
+ * rather than resolved on every read, and values that are plain integers, decimals, booleans, escape-free strings or
+ * enum constants are parsed directly without invoking Jackson at all. Any value the fast paths do not recognize is
+ * left to Jackson so that coercion rules and error reporting are unchanged.
+ *
+ * Like Jackson's own deserializer cache, the prepared readers assume that the ObjectMapper is not reconfigured once
+ * values have been read.
+ */
+class ValueDecoders {
+
+    /**
+     * Returned by the fast paths for values they do not recognize
+     */
+    protected static final Object NO_FAST_PATH = new Object();
+
+    protected static final long NOT_A_LONG = Long.MIN_VALUE;
+
+    // Up to 18 digits always fits in a long, anything longer is left to Jackson
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private final ObjectMapper mapper;
+    private final Map<JavaType, ObjectReader> readers;
+    private final Map<Class<?>, CollectionType> listTypes;
+    private final Map<Class<?>, CollectionType> setTypes;
+    private final Map<Class<?>, Map<String, Object>> enumConstants;
+
+    protected ValueDecoders(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.readers = new ConcurrentHashMap<>();
+        this.listTypes = new ConcurrentHashMap<>();
+        this.setTypes = new ConcurrentHashMap<>();
+        this.enumConstants = new ConcurrentHashMap<>();
+    }
+
+    protected ObjectReader reader(JavaType type) {
+        return readers.computeIfAbsent(type, mapper::readerFor);
+    }
+
+    protected ObjectReader reader(Class<?> clazz) {
+        return reader(mapper.constructType(clazz));
+    }
+
+    protected CollectionType listOf(Class<?> clazz) {
+        return listTypes.computeIfAbsent(clazz, c -> mapper.getTypeFactory().constructCollectionType(List.class, c));
+    }
+
+    protected CollectionType setOf(Class<?> clazz) {
+        return setTypes.computeIfAbsent(clazz, c -> mapper.getTypeFactory().constructCollectionType(Set.class, c));
+    }
+
+    /**
+     * @return The decoded value, or NO_FAST_PATH if the value must be decoded by Jackson
+     */
+    protected Object decodeFast(String json, Class<?> raw) {
+        if (raw == String.class) {
+            int end = json.length() - 1;
+            if (end > 0 && json.charAt(0) == '"' && json.charAt(end) == '"' && json.indexOf('\\') == -1) {
+                return json.substring(1, end);
+            }
+        } else if (raw == Integer.class || raw == int.class) {
+            long value = parseLong(json);
+            if (value != NOT_A_LONG && value == (int) value) {
+                return (int) value;
+            }
+        } else if (raw == Long.class || raw == long.class) {
+            long value = parseLong(json);
+            if (value != NOT_A_LONG) {
+                return value;
+            }
+        } else if (raw == Double.class || raw == double.class) {
+            double value = parseDouble(json);
+            if (!Double.isNaN(value)) {
+                return value;
+            }
+        } else if (raw == Boolean.class || raw == boolean.class) {
+            if (json.equals("true")) {
+                return Boolean.TRUE;
+            } else if (json.equals("false")) {
+                return Boolean.FALSE;
+            }
+        } else if (raw.isEnum()) {
+            Object constant = getEnumConstants(raw).get(json);
+            if (constant != null) {
+                return constant;
+            }
+        }
+        return NO_FAST_PATH;
+    }
+
+    /**
+     * @return The decoded value of UTF-8 encoded JSON, or NO_FAST_PATH if the value must be decoded by Jackson
+     */
+    protected Object decodeFast(byte[] json, Class<?> raw) {
+        if (raw == String.class) {
+            int end = json.length - 1;
+            if (end > 0 && json[0] == '"' && json[end] == '"' && indexOf(json, (byte) '\\') == -1) {
+                return new String(json, 1, end - 1, StandardCharsets.UTF_8);
+            }
+        } else if (raw == Integer.class || raw == int.class) {
+            long value = parseLong(json);
+            if (value != NOT_A_LONG && value == (int) value) {
+                return (int) value;
+            }
+        } else if (raw == Long.class || raw == long.class) {
+            long value = parseLong(json);
+            if (value != NOT_A_LONG) {
+                return value;
+            }
+        } else if (raw == Double.class || raw == double.class || raw == Boolean.class || raw == boolean.class
+                || raw.isEnum()) {
+            // Short scalars are widened to a String and handled by the String fast paths
+            return json.length > 64 ? NO_FAST_PATH : decodeFast(new String(json, StandardCharsets.ISO_8859_1), raw);
+        }
+        return NO_FAST_PATH;
+    }
+
+    /**
+     * @return The value of a JSON integer that fits in a long, or NOT_A_LONG for anything else
+     */
+    protected static long parseLong(String json) {
+        int length = json.length();
+        int start = length > 0 && json.charAt(0) == '-' ? 1 : 0;
+        // JSON does not allow leading zeros, which Jackson reports as an error
+        if (length == start || length - start > MAX_LONG_DIGITS
+                || (length - start > 1 && json.charAt(start) == '0')) {
+            return NOT_A_LONG;
+        }
+        long value = 0;
+        for (int i=start; i<length; i++) {
+            char c = json.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_A_LONG;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return start == 1 ? -value : value;
+    }
+
+    protected static long parseLong(byte[] json) {
+        int length = json.length;
+        int start = length > 0 && json[0] == '-' ? 1 : 0;
+        if (length == start || length - start > MAX_LONG_DIGITS || (length - start > 1 && json[start] == '0')) {
+            return NOT_A_LONG;
+        }
+        long value = 0;
+        for (int i=start; i<length; i++) {
+            byte c = json[i];
+            if (c < '0' || c > '9') {
+                return NOT_A_LONG;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return start == 1 ? -value : value;
+    }
+
+    /**
+     * @return The value of a JSON number, or NaN if the text is not a plain JSON number
+     */
+    protected static double parseDouble(String json) {
+        long integer = parseLong(json);
+        if (integer != NOT_A_LONG) {
+            return integer;
+        }
+        return isJsonNumber(json) ? Double.parseDouble(json) : Double.NaN;
+    }
+
+    protected static double parseDouble(byte[] json) {
+        long integer = parseLong(json);
+        if (integer != NOT_A_LONG) {
+            return integer;
+        }
+        return json.length > 64 ? Double.NaN : parseDouble(new String(json, StandardCharsets.ISO_8859_1));
+    }
+
+    private static boolean isJsonNumber(String json) {
+        int i = 0;
+        int length = json.length();
+        if (i < length && json.charAt(i) == '-') {
+            i++;
+        }
+        int digits = i;
+        while (i < length && isDigit(json.charAt(i))) {
+            i++;
+        }
+        if (i == digits || (i - digits > 1 && json.charAt(digits) == '0')) {
+            return false;
+        }
+        if (i < length && json.charAt(i) == '.') {
+            int fraction = ++i;
+            while (i < length && isDigit(json.charAt(i))) {
+                i++;
+            }
+            if (i == fraction) {
+                return false;
+            }
+        }
+        if (i < length && (json.charAt(i) == 'e' || json.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (json.charAt(i) == '+' || json.charAt(i) == '-')) {
+                i++;
+            }
+            int exponent = i;
+            while (i < length && isDigit(json.charAt(i))) {
+                i++;
+            }
+            if (i == exponent) {
+                return false;
+            }
+        }
+        return i == length;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int indexOf(byte[] bytes, byte b) {
+        for (int i=0; i<bytes.length; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Each constant is keyed by its serialized form so that any naming customizations (@JsonProperty, @JsonValue)
+     * are honored. Constants are only matched by their exact serialized form, anything else is left to Jackson
+     */
+    private Map<String, Object> getEnumConstants(Class<?> enumClass) {
+        return enumConstants.computeIfAbsent(enumClass, c -> {
+            Map<String, Object> constants = new HashMap<>();
+            for (Object constant : c.getEnumConstants()) {
+                try {
+                    constants.put(mapper.writeValueAsString(constant), constant);
+                } catch (JsonProcessingException e) {
+                    // Left to Jackson
+                }
+            }
+            return constants;
+        });
+    }
+}
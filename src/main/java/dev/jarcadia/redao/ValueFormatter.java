@@ -1,6 +1,8 @@
 package dev.jarcadia.redao;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -9,24 +11,89 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.jarcadia.redao.exception.RcDeserializationException;
 import dev.jarcadia.redao.exception.RedisCommandoException;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
 
+/**
+ * This class is responsible for converting values to and from their stored form using the configured ValueCodec.
+ *
+ * Values travel over String valued connections. JSON values are UTF-8 text, while binary values are carried as
+ * ISO-8859-1 strings which map each byte to exactly one char. Strings that are passed through the same value slots
+ * but are not values, such as field names given as script arguments, are converted with {@link #toWire(String)} and
+ * {@link #fromWire(String)} so that they keep their UTF-8 bytes in Redis.
+ */
 class ValueFormatter {
 
     private final ObjectMapper mapper;
+    private final ValueCodec codec;
+    private final boolean json;
+    private final Charset charset;
+    private final ValueFormatter counters;
+    private final ValueDecoders decoders;
 
     public ValueFormatter(ObjectMapper mapper) {
+        this(mapper, ValueCodec.JSON);
+    }
+
+    public ValueFormatter(ObjectMapper mapper, ValueCodec codec) {
         this.mapper = mapper;
+        this.codec = codec;
+        this.json = codec == ValueCodec.JSON;
+        this.charset = getCharset(codec);
+        this.counters = json ? this : new ValueFormatter(mapper);
+        this.decoders = new ValueDecoders(mapper);
+    }
+
+    /**
+     * @return The formatter for a Dao field. The version is a Redis counter, stored as decimal text by every codec
+     */
+    protected ValueFormatter forField(String field) {
+        return "v".equals(field) ? counters : this;
+    }
+
+    /**
+     * @return The codec for connections carrying values encoded by the given ValueCodec
+     */
+    protected static RedisCodec<String, String> connectionCodec(ValueCodec codec) {
+        Charset charset = getCharset(codec);
+        return charset == StandardCharsets.UTF_8 ? StringCodec.UTF8
+                : RedisCodec.of(StringCodec.UTF8, new StringCodec(charset));
+    }
+
+    private static Charset getCharset(ValueCodec codec) {
+        return codec.getLuaFormat() == ValueCodec.LuaFormat.JSON ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+    }
+
+    protected String toWire(String str) {
+        return str == null || charset == StandardCharsets.UTF_8 ? str
+                : new String(str.getBytes(StandardCharsets.UTF_8), charset);
+    }
+
+    protected String fromWire(String str) {
+        return str == null || charset == StandardCharsets.UTF_8 ? str
+                : new String(str.getBytes(charset), StandardCharsets.UTF_8);
+    }
+
+    protected String toRawString(byte[] bytes) {
+        return new String(bytes, charset);
     }
 
     protected <T> T deserialize(String json, Class<T> clazz) throws RcDeserializationException {
         try {
-            return mapper.readValue(json, clazz);
+            if (!this.json) {
+                return codec.decode(mapper, json.getBytes(charset), mapper.constructType(clazz));
+            }
+            Object fast = json == null ? ValueDecoders.NO_FAST_PATH : decoders.decodeFast(json, clazz);
+            return fast != ValueDecoders.NO_FAST_PATH ? cast(fast) : decoders.reader(clazz).readValue(json);
         }
         catch (IOException e) {
-            throw new RcDeserializationException("Unable to deserialize JSON to " + clazz.getSimpleName(), e);
+            throw new RcDeserializationException("Unable to deserialize value to " + clazz.getSimpleName(), e);
         }
     }
-    
+
+    /**
+     * Parses JSON text regardless of the codec, for arguments that callers supply as JSON
+     */
     protected <T> T deserialize(String json, TypeReference<T> typeRef) throws RcDeserializationException {
         try {
             return mapper.readValue(json, typeRef);
@@ -35,31 +102,110 @@ class ValueFormatter {
             throw new RcDeserializationException("Unable to deserialize JSON", e);
         }
     }
-    
+
     protected <T> T deserialize(String json, JavaType type) throws RcDeserializationException {
         try {
-            return mapper.readValue(json, type);
+            if (!this.json) {
+                return codec.decode(mapper, json.getBytes(charset), type);
+            }
+            Object fast = json == null ? ValueDecoders.NO_FAST_PATH : decoders.decodeFast(json, type.getRawClass());
+            return fast != ValueDecoders.NO_FAST_PATH ? cast(fast) : decoders.reader(type).readValue(json);
         }
         catch (IOException e) {
-            throw new RcDeserializationException("Unable to deserialize JSON", e);
+            throw new RcDeserializationException("Unable to deserialize value", e);
         }
     }
-    
+
+    protected <T> T deserialize(byte[] json, Class<T> clazz) throws RcDeserializationException {
+        try {
+            if (!this.json) {
+                return codec.decode(mapper, json, mapper.constructType(clazz));
+            }
+            Object fast = decoders.decodeFast(json, clazz);
+            return fast != ValueDecoders.NO_FAST_PATH ? cast(fast) : decoders.reader(clazz).readValue(json);
+        }
+        catch (IOException e) {
+            throw new RcDeserializationException("Unable to deserialize value to " + clazz.getSimpleName(), e);
+        }
+    }
+
+    protected <T> T deserialize(byte[] json, JavaType type) throws RcDeserializationException {
+        try {
+            if (!this.json) {
+                return codec.decode(mapper, json, type);
+            }
+            Object fast = decoders.decodeFast(json, type.getRawClass());
+            return fast != ValueDecoders.NO_FAST_PATH ? cast(fast) : decoders.reader(type).readValue(json);
+        }
+        catch (IOException e) {
+            throw new RcDeserializationException("Unable to deserialize value", e);
+        }
+    }
+
+    /**
+     * Decodes an integer without boxing, see {@link ValueDecoders#parseLong(String)}
+     *
+     * @return The value or ValueDecoders.NOT_A_LONG if the value must be decoded with {@link #deserialize}
+     */
+    protected long parseLong(String value) {
+        return this.json && value != null ? ValueDecoders.parseLong(value) : ValueDecoders.NOT_A_LONG;
+    }
+
+    protected long parseLong(byte[] value) {
+        return this.json ? ValueDecoders.parseLong(value) : ValueDecoders.NOT_A_LONG;
+    }
+
+    /**
+     * @return The value or NaN if the value must be decoded with {@link #deserialize}
+     */
+    protected double parseDouble(String value) {
+        return this.json && value != null ? ValueDecoders.parseDouble(value) : Double.NaN;
+    }
+
+    protected double parseDouble(byte[] value) {
+        return this.json ? ValueDecoders.parseDouble(value) : Double.NaN;
+    }
+
+    protected JavaType listOf(Class<?> clazz) {
+        return decoders.listOf(clazz);
+    }
+
+    protected JavaType setOf(Class<?> clazz) {
+        return decoders.setOf(clazz);
+    }
+
+    protected JsonNode asNode(byte[] json) {
+        try {
+            return codec.decodeTree(mapper, json);
+        }
+        catch (IOException e) {
+            throw new RedisCommandoException("Unable to parse value", e);
+        }
+    }
+
     protected JsonNode asNode(String json) {
         try {
-            return mapper.readTree(json);
+            return this.json ? mapper.readTree(json) : codec.decodeTree(mapper, json.getBytes(charset));
         }
         catch (IOException e) {
-            throw new RedisCommandoException("Unable to parse JSON", e);
+            throw new RedisCommandoException("Unable to parse value", e);
         }
     }
-    
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object value) {
+        return (T) value;
+    }
+
     protected String serialize(Object obj) {
         try {
-            return mapper.writeValueAsString(obj);
+            return this.json ? mapper.writeValueAsString(obj) : new String(codec.encode(mapper, obj), charset);
         }
         catch (JsonProcessingException e) {
             throw new RedisCommandoException("Unable to serialize to JSON", e);
         }
+        catch (IOException e) {
+            throw new RedisCommandoException("Unable to serialize value", e);
+        }
     }
 }
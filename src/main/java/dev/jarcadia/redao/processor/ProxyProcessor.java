@@ -0,0 +1,513 @@
+package dev.jarcadia.redao.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import dev.jarcadia.redao.proxy.Internal;
+
+/**
+ * Generates an implementation class for each Proxy sub-interface at compile time. The generated class calls the
+ * underlying Dao directly and caches getter values in fields, so a generated proxy involves no reflection.
+ * Dao.as uses the generated class when it is present and falls back to a dynamic proxy otherwise.
+ *
+ * Methods are classified exactly as they are for dynamic proxies (see ProxyMetadataFactory). An interface that cannot
+ * be implemented this way, for example one with a method that has no Dao counterpart, is skipped with a warning and
+ * left to the dynamic proxy, which reports the problem at runtime.
+ *
+ * This processor is registered as a service, so it runs for any project that compiles against this library.
+ */
+@SupportedAnnotationTypes("*")
+public class ProxyProcessor extends AbstractProcessor {
+
+    private static final String PROXY = "dev.jarcadia.redao.proxy.Proxy";
+    private static final String DAO = "dev.jarcadia.redao.Dao";
+    private static final String DAO_VALUE = "dev.jarcadia.redao.DaoValue";
+    private static final String MODIFICATION = "dev.jarcadia.redao.Modification";
+
+    // Must match the name expected by GeneratedProxies
+    private static final String PREFIX = "RedaoProxy_";
+
+    private Elements elements;
+    private Types types;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        TypeElement proxy = elements.getTypeElement(PROXY);
+        if (proxy == null) {
+            return false;
+        }
+        for (Element element : roundEnv.getRootElements()) {
+            visit(element, proxy);
+        }
+        // Annotations are never claimed so that other processors still see them
+        return false;
+    }
+
+    private void visit(Element element, TypeElement proxy) {
+        if (element.getModifiers().contains(Modifier.PRIVATE)) {
+            return;
+        }
+        if (element.getKind() == ElementKind.INTERFACE && !element.equals(proxy)
+                && types.isSubtype(types.erasure(element.asType()), types.erasure(proxy.asType()))) {
+            generate((TypeElement) element);
+        }
+        for (TypeElement nested : ElementFilter.typesIn(element.getEnclosedElements())) {
+            visit(nested, proxy);
+        }
+    }
+
+    private void generate(TypeElement iface) {
+        if (!iface.getTypeParameters().isEmpty()) {
+            return;
+        }
+        try {
+            ProxyModel model = new ProxyModel(iface);
+            String packageName = elements.getPackageOf(iface).getQualifiedName().toString();
+            String className = PREFIX + getBinarySimpleName(iface, packageName).replace('$', '_');
+            String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, iface);
+            try (PrintWriter out = new PrintWriter(file.openWriter())) {
+                model.write(out, packageName, className);
+            }
+        } catch (UnsupportedProxyException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Not generating a proxy implementation for "
+                    + iface.getQualifiedName() + ": " + ex.getMessage(), iface);
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write proxy implementation for "
+                    + iface.getQualifiedName() + ": " + ex.getMessage(), iface);
+        }
+    }
+
+    private String getBinarySimpleName(TypeElement type, String packageName) {
+        String binaryName = elements.getBinaryName(type).toString();
+        return packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+    }
+
+    /*
+     * The methods of a proxy interface, classified in the same order as ProxyMetadataFactory
+     */
+    private class ProxyModel {
+
+        private final TypeElement iface;
+        private final DeclaredType ifaceType;
+        private final List<Getter> getters;
+        private final List<String> methods;
+
+        private ProxyModel(TypeElement iface) throws UnsupportedProxyException {
+            this.iface = iface;
+            this.ifaceType = (DeclaredType) iface.asType();
+            this.getters = new ArrayList<>();
+            this.methods = new ArrayList<>();
+
+            List<ExecutableElement> setters = new ArrayList<>();
+            List<ExecutableElement> clearers = new ArrayList<>();
+            for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(iface))) {
+                if (method.getEnclosingElement().getKind() != ElementKind.INTERFACE) {
+                    continue;
+                } else if (method.getModifiers().contains(Modifier.STATIC)) {
+                    if (!isLookupGenerator(method)) {
+                        throw new UnsupportedProxyException("static method " + method.getSimpleName());
+                    }
+                } else if (method.isDefault()) {
+                    continue;
+                } else if (isNamed(method, "getType", String.class) || isNamed(method, "getId", String.class)) {
+                    methods.add(passthrough(method));
+                } else if (isNamed(method, "getDao", DAO)) {
+                    methods.add(signature(method) + " {\n        return this.dao;\n    }\n");
+                } else if (isReproxyMethod(method)) {
+                    String param = method.getParameters().get(0).getSimpleName().toString();
+                    methods.add(signature(method) + " {\n        this.dao.as(" + param + ");\n    }\n");
+                } else if (isGetter(method, "get")) {
+                    getters.add(new Getter(method, getFieldName(method, "get"), getters.size()));
+                } else if (isGetter(method, "is")) {
+                    getters.add(new Getter(method, getFieldName(method, "is"), getters.size()));
+                } else if (isSetter(method)) {
+                    setters.add(method);
+                } else if (isClearer(method)) {
+                    clearers.add(method);
+                } else {
+                    methods.add(passthrough(method));
+                }
+            }
+            for (ExecutableElement setter : setters) {
+                methods.add(setter(setter));
+            }
+            for (ExecutableElement clearer : clearers) {
+                methods.add(clearer(clearer));
+            }
+        }
+
+        private void write(PrintWriter out, String packageName, String className) {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("@javax.annotation.processing.Generated(\"" + ProxyProcessor.class.getName() + "\")");
+            out.println("public final class " + className + " implements " + iface.getQualifiedName() + " {");
+            out.println();
+            // Read by GeneratedProxies, the fields in the order that the prefetching constructor expects their values
+            out.println("    public static final String[] FIELDS = {" + getters.stream()
+                    .map(getter -> quote(getter.field)).collect(Collectors.joining(", ")) + "};");
+            out.println("    private static final com.fasterxml.jackson.databind.JavaType[] TYPES = {" + getters.stream()
+                    .map(Getter::typeExpression).collect(Collectors.joining(",\n            ")) + "};");
+            out.println();
+            out.println("    private final " + DAO + " dao;");
+            for (Getter getter : getters) {
+                out.println("    private volatile " + getter.cacheType() + " " + getter.cacheField() + ";");
+            }
+            out.println();
+            out.println("    public " + className + "(" + DAO + " dao) {");
+            out.println("        this.dao = dao;");
+            out.println("    }");
+            out.println();
+            out.println("    public " + className + "(" + DAO + " dao, java.util.Iterator<" + DAO_VALUE + "> values) {");
+            out.println("        this.dao = dao;");
+            out.println("        load(values);");
+            out.println("    }");
+            out.println();
+            for (Getter getter : getters) {
+                out.println(getter.method());
+            }
+            for (String method : methods) {
+                out.println("    @Override");
+                out.println("    " + method);
+            }
+            out.println("    @Override");
+            out.println("    public boolean equals(Object obj) {");
+            out.println("        return this.dao.equals(obj);");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public int hashCode() {");
+            out.println("        return this.dao.hashCode();");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public String toString() {");
+            out.println("        return this.dao.toString();");
+            out.println("    }");
+            out.println();
+            // All getter values are loaded together on first use, as with dynamic proxies
+            out.println("    private void load() {");
+            if (!getters.isEmpty()) {
+                out.println("        load(this.dao.get(" + className + ".FIELDS).iterator());");
+            }
+            out.println("    }");
+            out.println();
+            out.println("    private void load(java.util.Iterator<" + DAO_VALUE + "> values) {");
+            if (!getters.isEmpty()) {
+                out.println("        " + DAO_VALUE + " value;");
+                for (Getter getter : getters) {
+                    out.println("        value = values.next();");
+                    out.println("        this." + getter.cacheField() + " = value.isPresent() ? value.as(" + className
+                            + ".TYPES[" + getter.index + "]) : " + (getter.isOptional() ? "java.util.Optional.empty()" : "null") + ";");
+                }
+            }
+            out.println("    }");
+            out.println("}");
+        }
+
+        private String passthrough(ExecutableElement method) throws UnsupportedProxyException {
+            if (!hasDaoMethod(method)) {
+                throw new UnsupportedProxyException(method.getSimpleName() + " has no counterpart on Dao");
+            }
+            String call = "this.dao." + method.getSimpleName() + "(" + parameterNames(method) + ")";
+            return signature(method) + " {\n        " + (method.getReturnType().getKind() == TypeKind.VOID ? "" : "return ")
+                    + call + ";\n    }\n";
+        }
+
+        private String setter(ExecutableElement setter) {
+            StringBuilder body = new StringBuilder();
+            List<String> args = new ArrayList<>();
+            for (VariableElement param : setter.getParameters()) {
+                String name = param.getSimpleName().toString();
+                String field = isInternal(setter) || param.getAnnotation(Internal.class) != null ? "_" + name : name;
+                args.add(quote(field));
+                args.add(name);
+                Getter getter = getGetter(field);
+                if (getter != null) {
+                    body.append("        this.").append(getter.cacheField()).append(" = ")
+                            .append(getter.cacheValue(param.asType(), name)).append(";\n");
+                }
+            }
+            return signature(setter) + " {\n" + body + "        " + returnPrefix(setter)
+                    + "this.dao.set(" + String.join(", ", args) + ");\n    }\n";
+        }
+
+        private String clearer(ExecutableElement clearer) {
+            String field = getFieldName(clearer, "clear");
+            Getter getter = getGetter(field);
+            String invalidate = getter == null ? "" : "        this." + getter.cacheField() + " = null;\n";
+            return signature(clearer) + " {\n" + invalidate + "        " + returnPrefix(clearer)
+                    + "this.dao.clear(" + quote(field) + ");\n    }\n";
+        }
+
+        private String returnPrefix(ExecutableElement method) {
+            return method.getReturnType().getKind() == TypeKind.VOID ? "" : "return ";
+        }
+
+        private Getter getGetter(String field) {
+            for (Getter getter : getters) {
+                if (getter.field.equals(field)) {
+                    return getter;
+                }
+            }
+            return null;
+        }
+
+        /*
+         * The method's declaration as a member of the proxy interface, so inherited generic methods are resolved
+         */
+        private String signature(ExecutableElement method) {
+            ExecutableType type = (ExecutableType) types.asMemberOf(ifaceType, method);
+            StringBuilder signature = new StringBuilder("public ");
+            if (!method.getTypeParameters().isEmpty()) {
+                List<String> typeParams = new ArrayList<>();
+                for (TypeParameterElement typeParam : method.getTypeParameters()) {
+                    List<String> bounds = typeParam.getBounds().stream()
+                            .filter(bound -> !bound.toString().equals("java.lang.Object"))
+                            .map(TypeMirror::toString).collect(Collectors.toList());
+                    typeParams.add(typeParam.getSimpleName() + (bounds.isEmpty() ? "" : " extends " + String.join(" & ", bounds)));
+                }
+                signature.append("<").append(String.join(", ", typeParams)).append("> ");
+            }
+            signature.append(type.getReturnType()).append(" ").append(method.getSimpleName()).append("(");
+            List<? extends VariableElement> params = method.getParameters();
+            for (int i=0; i<params.size(); i++) {
+                TypeMirror paramType = type.getParameterTypes().get(i);
+                if (i > 0) {
+                    signature.append(", ");
+                }
+                if (method.isVarArgs() && i == params.size() - 1) {
+                    signature.append(((javax.lang.model.type.ArrayType) paramType).getComponentType()).append("...");
+                } else {
+                    signature.append(paramType);
+                }
+                signature.append(" ").append(params.get(i).getSimpleName());
+            }
+            signature.append(")");
+            if (!type.getThrownTypes().isEmpty()) {
+                signature.append(" throws ").append(type.getThrownTypes().stream()
+                        .map(TypeMirror::toString).collect(Collectors.joining(", ")));
+            }
+            return signature.toString();
+        }
+
+        private String parameterNames(ExecutableElement method) {
+            return method.getParameters().stream().map(param -> param.getSimpleName().toString())
+                    .collect(Collectors.joining(", "));
+        }
+
+        private boolean hasDaoMethod(ExecutableElement method) {
+            TypeElement dao = elements.getTypeElement(DAO);
+            for (ExecutableElement candidate : ElementFilter.methodsIn(elements.getAllMembers(dao))) {
+                if (candidate.getSimpleName().equals(method.getSimpleName())
+                        && candidate.getModifiers().contains(Modifier.PUBLIC)
+                        && candidate.getParameters().size() == method.getParameters().size()) {
+                    boolean matches = true;
+                    for (int i=0; i<method.getParameters().size(); i++) {
+                        matches &= types.isSameType(types.erasure(candidate.getParameters().get(i).asType()),
+                                types.erasure(method.getParameters().get(i).asType()));
+                    }
+                    if (matches) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private class Getter {
+
+        private final ExecutableElement element;
+        private final String field;
+        private final int index;
+        private final TypeMirror type;
+
+        private Getter(ExecutableElement element, String field, int index) throws UnsupportedProxyException {
+            this.element = element;
+            this.field = field;
+            this.index = index;
+            this.type = element.getReturnType();
+            if (!element.getTypeParameters().isEmpty() || containsTypeVariable(type)) {
+                throw new UnsupportedProxyException("generic getter " + element.getSimpleName());
+            }
+        }
+
+        private String cacheField() {
+            return "value" + index;
+        }
+
+        private String cacheType() {
+            return type.getKind().isPrimitive() ? types.boxedClass((javax.lang.model.type.PrimitiveType) type).toString()
+                    : type.toString();
+        }
+
+        private boolean isOptional() {
+            return types.erasure(type).toString().equals("java.util.Optional");
+        }
+
+        private String typeExpression() {
+            String factory = "com.fasterxml.jackson.databind.type.TypeFactory.defaultInstance()";
+            if (type.getKind() == TypeKind.DECLARED && !((DeclaredType) type).getTypeArguments().isEmpty()) {
+                return factory + ".constructType(new com.fasterxml.jackson.core.type.TypeReference<" + type + ">() {})";
+            } else {
+                return factory + ".constructType(" + types.erasure(type) + ".class)";
+            }
+        }
+
+        /*
+         * The value cached after the field is set. Values that the getter cannot return as is are not cached, so the
+         * next get reloads them
+         */
+        private String cacheValue(TypeMirror paramType, String param) {
+            if (types.isAssignable(paramType, type)) {
+                return param;
+            } else if (isOptional()) {
+                TypeMirror optionalOf = ((DeclaredType) type).getTypeArguments().get(0);
+                if (types.isAssignable(paramType, optionalOf)) {
+                    return param + " == null ? null : java.util.Optional.of(" + param + ")";
+                }
+            }
+            return "null";
+        }
+
+        private String method() {
+            String cacheType = cacheType();
+            return "    @Override\n"
+                    + "    public " + type + " " + element.getSimpleName() + "() {\n"
+                    + "        " + cacheType + " value = this." + cacheField() + ";\n"
+                    + "        if (value == null) {\n"
+                    + "            load();\n"
+                    + "            value = this." + cacheField() + ";\n"
+                    + "        }\n"
+                    + "        return value;\n"
+                    + "    }\n";
+        }
+    }
+
+    private boolean containsTypeVariable(TypeMirror type) {
+        if (type.getKind() == TypeKind.TYPEVAR) {
+            return true;
+        } else if (type.getKind() == TypeKind.ARRAY) {
+            return containsTypeVariable(((javax.lang.model.type.ArrayType) type).getComponentType());
+        } else if (type.getKind() == TypeKind.DECLARED) {
+            for (TypeMirror arg : ((DeclaredType) type).getTypeArguments()) {
+                if (containsTypeVariable(arg)) {
+                    return true;
+                }
+            }
+        } else if (type.getKind() == TypeKind.WILDCARD) {
+            javax.lang.model.type.WildcardType wildcard = (javax.lang.model.type.WildcardType) type;
+            return (wildcard.getExtendsBound() != null && containsTypeVariable(wildcard.getExtendsBound()))
+                    || (wildcard.getSuperBound() != null && containsTypeVariable(wildcard.getSuperBound()));
+        }
+        return false;
+    }
+
+    private boolean isLookupGenerator(ExecutableElement method) {
+        return method.getReturnType().toString().equals("java.lang.invoke.MethodHandles.Lookup")
+                && method.getParameters().isEmpty();
+    }
+
+    private boolean isNamed(ExecutableElement method, String name, Class<?> returnType) {
+        return isNamed(method, name, returnType.getName());
+    }
+
+    private boolean isNamed(ExecutableElement method, String name, String returnType) {
+        return method.getSimpleName().contentEquals(name) && method.getParameters().isEmpty()
+                && types.erasure(method.getReturnType()).toString().equals(returnType);
+    }
+
+    private boolean isReproxyMethod(ExecutableElement method) {
+        return method.getSimpleName().contentEquals("as") && method.getReturnType().getKind() == TypeKind.VOID
+                && method.getParameters().size() == 1;
+    }
+
+    private boolean isGetter(ExecutableElement method, String prefix) {
+        return method.getSimpleName().toString().startsWith(prefix) && method.getParameters().isEmpty();
+    }
+
+    private boolean isSetter(ExecutableElement method) {
+        return method.getSimpleName().toString().startsWith("set") && !method.getParameters().isEmpty()
+                && (method.getReturnType().getKind() == TypeKind.VOID || hasOptionalModificationReturnType(method));
+    }
+
+    private boolean isClearer(ExecutableElement method) {
+        return method.getSimpleName().toString().startsWith("clear") && method.getParameters().isEmpty()
+                && (method.getReturnType().getKind() == TypeKind.VOID || hasOptionalModificationReturnType(method));
+    }
+
+    private boolean hasOptionalModificationReturnType(ExecutableElement method) {
+        if (method.getReturnType().getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        DeclaredType type = (DeclaredType) method.getReturnType();
+        return types.erasure(type).toString().equals("java.util.Optional") && type.getTypeArguments().size() == 1
+                && type.getTypeArguments().get(0).toString().equals(MODIFICATION);
+    }
+
+    private String getFieldName(ExecutableElement method, String prefix) {
+        String fieldName = decapitalize(method.getSimpleName().toString().substring(prefix.length()));
+        return isInternal(method) ? "_" + fieldName : fieldName;
+    }
+
+    private boolean isInternal(ExecutableElement method) {
+        return method.getAnnotation(Internal.class) != null;
+    }
+
+    /*
+     * Equivalent to java.beans.Introspector.decapitalize, which dynamic proxies use
+     */
+    private static String decapitalize(String name) {
+        if (name.isEmpty() || (name.length() > 1 && Character.isUpperCase(name.charAt(1))
+                && Character.isUpperCase(name.charAt(0)))) {
+            return name;
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static class UnsupportedProxyException extends Exception {
+
+        private UnsupportedProxyException(String message) {
+            super(message);
+        }
+    }
+}
@@ -1,25 +1,51 @@
 package dev.jarcadia.redao;
 
 import java.lang.invoke.MethodHandles;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import dev.jarcadia.redao.exception.ProxyException;
+import dev.jarcadia.redao.exception.RedisCommandoException;
 import dev.jarcadia.redao.proxy.Proxy;
 import dev.jarcadia.redao.proxy.Internal;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.lettuce.core.GeoArgs;
+import io.lettuce.core.KillArgs;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import reactor.core.Disposable;
 
 public class RedaoCommandoUnitTest {
 
@@ -116,6 +142,29 @@ public class RedaoCommandoUnitTest {
         Assertions.assertIterableEquals(values, readBack);
     }
 
+    @Test
+    void testDaoValueDecoding() {
+        ValueFormatter formatter = new ValueFormatter(rcommando.getObjectMapper());
+        Assertions.assertEquals(-42, new DaoValue(formatter, "f", "-42").asInt());
+        Assertions.assertEquals(42, new DaoValue(formatter, "f", "42.0").asInt(), "Left to Jackson's coercion");
+        Assertions.assertEquals(123456789012345L, new DaoValue(formatter, "f", "123456789012345").asLong());
+        Assertions.assertEquals(1500.0, new DaoValue(formatter, "f", "1.5e3").asDouble());
+        Assertions.assertEquals("abc", new DaoValue(formatter, "f", "\"abc\"").asString());
+        Assertions.assertEquals("a\"b", new DaoValue(formatter, "f", "\"a\\\"b\"").asString());
+        Assertions.assertEquals(TestEnum.WORLD, new DaoValue(formatter, "f", "\"WORLD\"").as(TestEnum.class));
+        Assertions.assertEquals(Boolean.TRUE, new DaoValue(formatter, "f", "true").as(boolean.class));
+        Assertions.assertThrows(RedisCommandoException.class, () -> new DaoValue(formatter, "f", "3000000000").asInt());
+        Assertions.assertThrows(RedisCommandoException.class, () -> new DaoValue(formatter, "f", "042").asInt());
+
+        DaoValue list = new DaoValue(formatter, "f", "[\"x\",\"y\"]");
+        List<String> decoded = list.asListOf(String.class);
+        decoded.add("z");
+        Assertions.assertEquals(List.of("x", "y"), list.asListOf(String.class), "Mutable results are not shared");
+        DaoValue str = new DaoValue(formatter, "f", "\"abc\"");
+        Assertions.assertSame(str.as(String.class), str.as(String.class), "Immutable results are memoized");
+        Assertions.assertEquals(Set.of("x", "y"), list.asSetOf(String.class));
+    }
+
     @Test
     void testPubSub() throws InterruptedException, ExecutionException {
         final AtomicReference<String> ref = new AtomicReference<>();
@@ -345,6 +394,526 @@ public class RedaoCommandoUnitTest {
         Assertions.assertNull(change.get());
     }
 
+    @Test
+    void testAsyncSetAndGet() {
+        AsyncDao obj = rcommando.async().getDao("objs", "a");
+        Optional<Modification> changes = obj.set("name", "John Doe", "age", 23).toCompletableFuture().join();
+        Assertions.assertTrue(changes.isPresent());
+        Assertions.assertTrue(changes.get().isInsert());
+        Assertions.assertEquals(2, changes.get().getChanges().size());
+
+        Assertions.assertEquals("John Doe", obj.get("name").toCompletableFuture().join().asString());
+        Iterator<DaoValue> iter = obj.get("name", "age").toCompletableFuture().join().iterator();
+        Assertions.assertEquals("John Doe", iter.next().asString());
+        Assertions.assertEquals(23, iter.next().asInt());
+        Assertions.assertEquals(1L, objs.async().count().toCompletableFuture().join());
+        Assertions.assertTrue(objs.async().has("a").toCompletableFuture().join());
+    }
+
+    @Test
+    void testAsyncSetAllEmpty() {
+        AsyncDao obj = objs.async().get("a");
+        Assertions.assertFalse(obj.setAll(Map.of()).toCompletableFuture().join().isPresent());
+        Assertions.assertFalse(obj.exists().toCompletableFuture().join());
+    }
+
+    @Test
+    void testAsyncTouchClearAndDelete() {
+        AsyncDao obj = objs.async().get("a");
+        Assertions.assertTrue(obj.touch().toCompletableFuture().join());
+        Assertions.assertFalse(obj.touch().toCompletableFuture().join());
+        obj.set("age", 23).toCompletableFuture().join();
+        Optional<Modification> cleared = obj.clear("age").toCompletableFuture().join();
+        Assertions.assertEquals(23, cleared.get().getChanges().get(0).getBefore().asInt());
+        Assertions.assertTrue(obj.delete().toCompletableFuture().join());
+        Assertions.assertFalse(obj.exists().toCompletableFuture().join());
+    }
+
+    @Test
+    void testAsyncCallbacksFireInOrder() {
+        List<Integer> seen = new CopyOnWriteArrayList<>();
+        rcommando.registerFieldChangeCallback("ordered", "val", (dao, field, before, after) -> seen.add(after.asInt()));
+        AsyncDao obj = rcommando.async().getDao("ordered", "a");
+        List<CompletableFuture<Optional<Modification>>> futures = IntStream.range(0, 100)
+                .mapToObj(i -> obj.set("val", i).toCompletableFuture())
+                .collect(Collectors.toList());
+        futures.forEach(CompletableFuture::join);
+        Assertions.assertIterableEquals(IntStream.range(0, 100).boxed().collect(Collectors.toList()), seen);
+    }
+
+    @Test
+    void testBatch() {
+        objs.get("c").touch();
+        objs.get("d").set("age", 40);
+        List<String> inserted = new CopyOnWriteArrayList<>();
+        rcommando.registerObjectInsertCallback("batched", dao -> inserted.add(dao.getId()));
+        Index batched = rcommando.getPrimaryIndex("batched");
+
+        List<Optional<Modification>> results = rcommando.batch()
+                .set(batched.get("a"), "name", "John Doe")
+                .setTs(batched.get("b"), "name", "Jane Doe")
+                .touch(objs.get("c"))
+                .clear(objs.get("d"), "age")
+                .delete(objs.get("c"))
+                .delete(objs.get("missing"))
+                .execute();
+
+        Assertions.assertEquals(6, results.size());
+        Assertions.assertTrue(results.get(0).get().isInsert());
+        Assertions.assertEquals("John Doe", results.get(0).get().getChanges().get(0).getAfter().asString());
+        Assertions.assertEquals(2, results.get(1).get().getChanges().size());
+        Assertions.assertFalse(results.get(2).isPresent());
+        Assertions.assertEquals(40, results.get(3).get().getChanges().get(0).getBefore().asInt());
+        Assertions.assertTrue(results.get(4).get().isDelete());
+        Assertions.assertFalse(results.get(5).isPresent());
+
+        Assertions.assertIterableEquals(List.of("a", "b"), inserted);
+        Assertions.assertEquals(2, batched.count());
+        Assertions.assertEquals(1, objs.count());
+    }
+
+    @Test
+    void testBatchExecuteAtomically() throws InterruptedException {
+        Index orders = rcommando.getPrimaryIndex("orders");
+        Index inventory = rcommando.getPrimaryIndex("inventory");
+        inventory.get("widget").set("stock", 10);
+        inventory.get("gadget").set("stock", 0);
+
+        List<String> messages = new CopyOnWriteArrayList<>();
+        Subscription subscription = rcommando.subscribe("orders.change", (channel, val) -> messages.add(val));
+        subscription.subscribe("inventory.change");
+
+        List<Optional<Modification>> results = rcommando.batch()
+                .set(orders.get("o1"), "status", "PENDING", "qty", 2)
+                .set(inventory.get("widget"), "stock", 8)
+                .clear(inventory.get("widget"), "missing")
+                .delete(inventory.get("gadget"))
+                .touch(orders.get("o2"))
+                .executeAtomically();
+        Thread.sleep(10);
+        subscription.close();
+
+        Assertions.assertEquals(5, results.size());
+        Assertions.assertTrue(results.get(0).get().isInsert());
+        Assertions.assertEquals(2, results.get(0).get().getChanges().size());
+        Assertions.assertEquals(10, results.get(1).get().getChanges().get(0).getBefore().asInt());
+        Assertions.assertFalse(results.get(2).isPresent());
+        Assertions.assertTrue(results.get(3).get().isDelete());
+        Assertions.assertTrue(results.get(4).get().isInsert());
+        Assertions.assertEquals(8, inventory.get("widget").get("stock").asInt());
+        Assertions.assertEquals(1, inventory.count());
+        Assertions.assertEquals(2, orders.count());
+        Assertions.assertEquals(4, messages.size());
+        Assertions.assertTrue(messages.get(0).startsWith("{\"o1\":"));
+        Assertions.assertEquals("{\"gadget\":null}", messages.get(2));
+        Assertions.assertEquals("{\"o2\":{\"v\":1}}", messages.get(3));
+
+        // A mutation that would fail partway through is detected before any of the batch is applied
+        rcommando.core().set(inventory.get("broken").getPath(), "not a hash");
+        Assertions.assertThrows(RedisCommandoException.class, () -> rcommando.batch()
+                .set(inventory.get("widget"), "stock", 5)
+                .set(inventory.get("broken"), "stock", 1)
+                .executeAtomically());
+        Assertions.assertEquals(8, inventory.get("widget").get("stock").asInt());
+    }
+
+    @Test
+    void testAutoBatching() throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(50);
+        try (RedaoCommando batching = new RedaoCommando(redisClient)) {
+            batching.enableAutoBatching(Duration.ofMillis(1), 16);
+            Index batched = batching.getPrimaryIndex("batched");
+            // Each value is read back on the writing thread and returned so that a mismatch fails the test
+            List<Future<Integer>> reads = IntStream.range(0, 50)
+                    .mapToObj(i -> executor.submit(() -> {
+                        Dao dao = batched.get(String.valueOf(i));
+                        dao.set("val", i);
+                        return dao.get("val").asInt();
+                    }))
+                    .collect(Collectors.toList());
+            for (int i=0; i<reads.size(); i++) {
+                Assertions.assertEquals(i, reads.get(i).get());
+            }
+            Assertions.assertEquals(50, batched.count());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testScriptsReloadAfterFlush() {
+        String digest = rcommando.registerScript("return 'hello'");
+        Assertions.assertEquals(List.of(true), rcommando.core().scriptExists(digest));
+
+        rcommando.core().scriptFlush();
+        Assertions.assertTrue(objs.get("a").touch());
+        Assertions.assertEquals(List.of(true), rcommando.core().scriptExists(digest));
+        Assertions.assertEquals("hello", rcommando.eval().cachedScript("return 'hello'").returnValue());
+    }
+
+    @Test
+    void testHgetset() {
+        Assertions.assertNull(rcommando.hgetset("hash", "field", "a"));
+        Assertions.assertEquals("a", rcommando.hgetset("hash", "field", "b"));
+        Assertions.assertEquals("b", rcommando.core().hget("hash", "field"));
+    }
+
+    @Test
+    void testFunctionLibrary() {
+        Assumptions.assumeTrue(redisMajorVersion() >= 7, "Requires Redis 7+");
+        try (RedaoCommando functions = new RedaoCommando(redisClient)) {
+            functions.enableFunctionLibrary();
+            Dao obj = functions.getPrimaryIndex("objs").get("a");
+            Assertions.assertTrue(obj.set("val", 42).get().isInsert());
+            Assertions.assertEquals(42, obj.get("val").asInt());
+            Assertions.assertEquals(42, obj.clear("val").get().getChanges().get(0).getBefore().asInt());
+            Assertions.assertFalse(obj.touch());
+            Assertions.assertTrue(obj.delete());
+
+            AsyncDao asyncObj = functions.async().getDao("objs", "b");
+            Assertions.assertTrue(asyncObj.set("val", 7).toCompletableFuture().join().get().isInsert());
+            Assertions.assertEquals(7, asyncObj.get("val").toCompletableFuture().join().asInt());
+
+            // Atomic batches are validated before any mutation is applied by the library function as well
+            Index inventory = functions.getPrimaryIndex("inventory");
+            inventory.get("widget").set("stock", 8);
+            functions.core().set(inventory.get("broken").getPath(), "not a hash");
+            Assertions.assertThrows(RedisCommandoException.class, () -> functions.batch()
+                    .set(inventory.get("widget"), "stock", 5)
+                    .set(inventory.get("broken"), "stock", 1)
+                    .executeAtomically());
+            Assertions.assertEquals(8, inventory.get("widget").get("stock").asInt());
+        }
+    }
+
+    private static int redisMajorVersion() {
+        Matcher version = Pattern.compile("redis_version:(\\d+)").matcher(rcommando.core().info("server"));
+        return version.find() ? Integer.parseInt(version.group(1)) : 0;
+    }
+
+    @Test
+    void testNearCache() throws InterruptedException {
+        Assumptions.assumeFalse(rcommando.core().info("server").matches("(?s).*redis_version:[2-5]\\..*"),
+                "Requires Redis 6+");
+        objs.get("a").set("val", 1, "other", "x");
+        try (RedaoCommando cached = new RedaoCommando(redisClient)) {
+            cached.enableNearCache(100, Duration.ofMinutes(1));
+            Dao obj = cached.getPrimaryIndex("objs").get("a");
+            Assertions.assertEquals(1, obj.get("val").asInt());
+            Assertions.assertEquals(1, obj.get("val").asInt());
+            Assertions.assertEquals(1, cached.getNearCacheStats().getHits());
+            Assertions.assertEquals(1, cached.getNearCacheStats().getMisses());
+
+            // Connections opened by other instances on the same client are not mistaken for a reconnect
+            new RedaoCommando(redisClient).close();
+            Thread.sleep(50);
+            Assertions.assertEquals(1, obj.get("val").asInt());
+            Assertions.assertEquals(2, cached.getNearCacheStats().getHits());
+            Assertions.assertEquals(0, cached.getNearCacheStats().getInvalidations());
+
+            // Modified by another client, invalidated by Redis
+            objs.get("a").set("val", 2);
+            long deadline = System.currentTimeMillis() + 1000;
+            while (cached.getNearCacheStats().getInvalidations() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            Assertions.assertEquals(2, obj.get("val").asInt());
+
+            // Modified through the caching instance, invalidated before set returns
+            obj.getAll();
+            Assertions.assertEquals("x", obj.get("other").asString());
+            obj.set("other", "y");
+            Assertions.assertEquals("y", obj.get("other").asString());
+        }
+    }
+
+    @Test
+    void testReplicatedIndex() throws InterruptedException {
+        objs.get("a").set("val", 1, "_internal", "x");
+        objs.get("b").set("val", 2);
+        try (ReplicatedIndex replicated = rcommando.getReplicatedIndex("objs")) {
+            Assertions.assertEquals(2, replicated.count());
+            Assertions.assertEquals(1, replicated.get("a").get("val").asInt());
+            Assertions.assertEquals("x", replicated.get("a").get("_internal").asString());
+
+            objs.get("a").set("val", 10);
+            objs.get("b").delete();
+            objs.get("c").touch();
+            objs.get("a").clear("val");
+            long deadline = System.currentTimeMillis() + 1000;
+            while (replicated.get("a").get("val").isPresent() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            Assertions.assertFalse(replicated.has("b"));
+            Assertions.assertTrue(replicated.has("c"));
+            Assertions.assertFalse(replicated.get("a").get("val").isPresent());
+            Assertions.assertEquals(Set.of("a", "c"), replicated.stream().map(Dao::getId).collect(Collectors.toSet()));
+
+            // Internal changes are not published, the gap is detected on the next change and the Dao reloaded
+            objs.get("a").set("_internal", "y");
+            objs.get("a").set("val", 3);
+            deadline = System.currentTimeMillis() + 1000;
+            while (!replicated.get("a").get("val").isPresent() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            Assertions.assertEquals(3, replicated.get("a").get("val").asInt());
+            Assertions.assertEquals(5, replicated.get("a").get("v").asInt());
+
+            // Values are not rounded by Lua's JSON encoding on their way into the copy
+            objs.get("a").set("big", 1234567890123456789L);
+            deadline = System.currentTimeMillis() + 1000;
+            while (!replicated.get("a").get("big").isPresent() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            Assertions.assertEquals(1234567890123456789L, replicated.get("a").get("big").asLong());
+        }
+    }
+
+    @Test
+    void testReplicatedIndexReloadsOnlyFailedDaos() throws InterruptedException {
+        objs.get("a").set("val", 1);
+        objs.get("b").set("val", 1);
+        objs.get("c").set("val", 1);
+        try (ReplicatedIndex replicated = rcommando.getReplicatedIndex("objs")) {
+            // Written behind the copy's back, c would only pick this up if the whole copy were reloaded
+            rcommando.core().hset(objs.get("c").getPath(), "val", "99");
+            // b's version is unreadable, so applying its change fails while a's change still applies
+            rcommando.core().hset(objs.get("b").getPath(), Map.of("v", "x", "val", "2"));
+            rcommando.core().hset(objs.get("a").getPath(), Map.of("v", "2", "val", "3"));
+            rcommando.core().publish(rcommando.getKeyLayout().getChangeChannel("objs"),
+                    "{\"b\":{\"v\":2,\"val\":2},\"a\":{\"v\":2,\"val\":3}}");
+
+            long deadline = System.currentTimeMillis() + 1000;
+            while (replicated.get("a").get("val").asInt() != 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            Assertions.assertEquals(3, replicated.get("a").get("val").asInt());
+            Assertions.assertFalse(replicated.has("b"));
+            Assertions.assertEquals(1, replicated.get("c").get("val").asInt());
+        }
+    }
+
+    @Test
+    void testByteValueCodec() {
+        objs.get("a").set("name", "J\u00e4ne", "age", 24, "tags", List.of("x", "y"));
+        try (RedaoCommando bytes = new RedaoCommando(redisClient)) {
+            bytes.enableByteValueCodec();
+            Dao obj = bytes.getPrimaryIndex("objs").get("a");
+            Assertions.assertEquals("J\u00e4ne", obj.get("name").asString());
+            Assertions.assertEquals("\"J\u00e4ne\"", obj.get("name").getRawValue());
+            Assertions.assertEquals(List.of("x", "y"), obj.get("tags").asListOf(String.class));
+            Assertions.assertFalse(obj.get("missing").isPresent());
+
+            Iterator<DaoValue> values = obj.get("age", "missing").iterator();
+            Assertions.assertEquals(24, values.next().asInt());
+            Assertions.assertFalse(values.next().isPresent());
+
+            int count = 0;
+            for (DaoValue value : obj.getAll()) {
+                Assertions.assertTrue(value.isPresent());
+                count++;
+            }
+            Assertions.assertEquals(4, count, "name, age, tags and v");
+        }
+    }
+
+    @Test
+    void testMessagePackValueCodec() throws InterruptedException {
+        try (RedaoCommando packed = RedaoCommando.create(redisClient, ValueCodec.MESSAGE_PACK)) {
+            Index packedObjs = packed.getPrimaryIndex("packed");
+            Dao obj = packedObjs.get("a");
+
+            AtomicReference<String> change = new AtomicReference<>();
+            Subscription subscription = packed.subscribe("packed.change", (channel, val) -> change.set(val));
+            Optional<Modification> modification = obj.set("name", "J\u00e4ne", "age", 24, "tags", List.of("x", "y"));
+            Assertions.assertTrue(modification.get().isInsert());
+            Thread.sleep(10);
+            subscription.close();
+
+            Assertions.assertEquals("J\u00e4ne", obj.get("name").asString());
+            Assertions.assertEquals(24, obj.get("age").asInt());
+            Assertions.assertEquals(List.of("x", "y"), obj.get("tags").asListOf(String.class));
+            Assertions.assertEquals(1, obj.get("v").asInt());
+            Assertions.assertEquals(1, packed.core().hget(obj.getPath(), "age").length(), "Small ints are one byte");
+
+            ValueFormatter formatter = new ValueFormatter(packed.getObjectMapper(), ValueCodec.MESSAGE_PACK);
+            JsonNode published = formatter.asNode(change.get()).get("a");
+            Assertions.assertEquals("J\u00e4ne", published.get("name").asText());
+            Assertions.assertEquals(24, published.get("age").asInt());
+            Assertions.assertEquals(1, published.get("v").asInt());
+
+            Modification cleared = obj.clear("age").get();
+            Assertions.assertEquals("age", cleared.getChanges().get(0).getField());
+            Assertions.assertEquals(24, cleared.getChanges().get(0).getBefore().asInt());
+            Assertions.assertEquals(Set.of("a"), packedObjs.stream().map(Dao::getId).collect(Collectors.toSet()));
+        }
+    }
+
+    @Test
+    void testCallbackDispatcherPreservesOrderPerDao() {
+        List<Integer> aValues = new CopyOnWriteArrayList<>();
+        List<Integer> bValues = new CopyOnWriteArrayList<>();
+        try (RedaoCommando dispatching = new RedaoCommando(redisClient)) {
+            dispatching.enableCallbackDispatcher(CallbackDispatcher.daemonThreadFactory(), 4, 1000,
+                    CallbackOverflowPolicy.BLOCK);
+            dispatching.registerFieldChangeCallback("dispatched", "val", (dao, field, before, after) ->
+                    (dao.getId().equals("a") ? aValues : bValues).add(after.asInt()));
+            Index dispatched = dispatching.getPrimaryIndex("dispatched");
+            for (int i=0; i<100; i++) {
+                dispatched.get("a").set("val", i);
+                dispatched.get("b").set("val", i);
+            }
+            // Closing waits for queued callbacks to run
+        }
+        List<Integer> expected = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        Assertions.assertEquals(expected, aValues);
+        Assertions.assertEquals(expected, bValues);
+    }
+
+    @Test
+    void testCallbackDispatcherDrainsOnClose() throws InterruptedException {
+        CallbackDispatcher dispatcher = new CallbackDispatcher(CallbackDispatcher.daemonThreadFactory(), 1, 1000,
+                CallbackOverflowPolicy.BLOCK);
+        java.util.concurrent.CountDownLatch started = new java.util.concurrent.CountDownLatch(1);
+        List<Integer> values = new CopyOnWriteArrayList<>();
+        dispatcher.dispatch("type", "a", () -> {
+            started.countDown();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+        // More than one turn's worth of callbacks is still queued when the workers are shut down
+        for (int i=0; i<100; i++) {
+            int value = i;
+            dispatcher.dispatch("type", "a", () -> values.add(value));
+        }
+        dispatcher.close(Duration.ofSeconds(10));
+        Assertions.assertEquals(IntStream.range(0, 100).boxed().collect(Collectors.toList()), values);
+
+        // Dispatching after close runs the callbacks on the calling thread
+        dispatcher.dispatch("type", "b", () -> values.add(100));
+        Assertions.assertEquals(101, values.size());
+    }
+
+    @Test
+    void testCallbackDispatcherBlockingCallbackDispatches() {
+        CallbackDispatcher dispatcher = new CallbackDispatcher(CallbackDispatcher.daemonThreadFactory(), 1, 1,
+                CallbackOverflowPolicy.BLOCK);
+        List<Integer> values = new CopyOnWriteArrayList<>();
+        // The outer callback holds the type's only permit while it dispatches more callbacks for the same type
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            dispatcher.dispatch("type", "a", () -> {
+                for (int i=0; i<5; i++) {
+                    int value = i;
+                    dispatcher.dispatch("type", "a", () -> values.add(value));
+                }
+            });
+            dispatcher.close(Duration.ofSeconds(5));
+        });
+        Assertions.assertEquals(IntStream.range(0, 5).boxed().collect(Collectors.toList()), values);
+
+        CallbackStats stats = dispatcher.getStats().get("type");
+        Assertions.assertEquals(0, stats.getQueueDepth());
+        Assertions.assertEquals(6, stats.getDispatched());
+    }
+
+    @Test
+    void testCallbackDispatcherStats() throws InterruptedException {
+        try (RedaoCommando dispatching = new RedaoCommando(redisClient)) {
+            dispatching.enableCallbackDispatcher(CallbackDispatcher.daemonThreadFactory(), 1, 1,
+                    CallbackOverflowPolicy.DISCARD);
+            java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+            dispatching.registerObjectInsertCallback("slow", dao -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Index slow = dispatching.getPrimaryIndex("slow");
+            Assertions.assertTrue(slow.get("a").touch());
+            Assertions.assertTrue(slow.get("b").touch());
+
+            CallbackStats stats = dispatching.getCallbackStats().get("slow");
+            Assertions.assertEquals(1, stats.getQueueDepth());
+            Assertions.assertEquals(1, stats.getDispatched());
+            Assertions.assertEquals(1, stats.getDiscarded());
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testOnReconnectRunsWhenConnectionIsReestablished() throws InterruptedException {
+        Connector connector = Connector.standalone(redisClient);
+        try (RedaoConnection<String, String> connection = connector.connect()) {
+            java.util.concurrent.CountDownLatch reconnected = new java.util.concurrent.CountDownLatch(1);
+            Disposable listener = connector.onReconnect(connection.getStatefulConnection(), reconnected::countDown);
+            try {
+                // Kills every normal connection other than the one issuing the command, including the watched one
+                rcommando.core().clientKill(KillArgs.Builder.typeNormal());
+                Assertions.assertTrue(reconnected.await(10, TimeUnit.SECONDS));
+                Assertions.assertEquals("PONG", connection.sync().ping());
+            } finally {
+                listener.dispose();
+            }
+        }
+    }
+
+    @Test
+    void testOnReconnectWatchesClusterNodeConnections() throws InterruptedException {
+        String clusterUri = System.getProperty("redao.clusterUri");
+        Assumptions.assumeTrue(clusterUri != null, "Requires a Redis Cluster, set redao.clusterUri");
+        RedisClusterClient clusterClient = RedisClusterClient.create(clusterUri);
+        try {
+            Connector connector = Connector.cluster(clusterClient, 16);
+            try (RedaoConnection<String, String> connection = connector.connect();
+                    StatefulRedisClusterConnection<String, String> admin = clusterClient.connect()) {
+                // Writing keys across the slots opens this connection's connection to every master
+                for (int i=0; i<100; i++) {
+                    connection.sync().set("reconnect" + i, "x");
+                }
+                java.util.concurrent.CountDownLatch reconnected = new java.util.concurrent.CountDownLatch(1);
+                Disposable listener = connector.onReconnect(connection.getStatefulConnection(), reconnected::countDown);
+                try {
+                    for (RedisClusterNode node : admin.getPartitions()) {
+                        if (node.is(RedisClusterNode.NodeFlag.MASTER)) {
+                            admin.getConnection(node.getNodeId()).sync().clientKill(KillArgs.Builder.typeNormal());
+                        }
+                    }
+                    Assertions.assertTrue(reconnected.await(10, TimeUnit.SECONDS));
+                } finally {
+                    listener.dispose();
+                }
+                for (int i=0; i<100; i++) {
+                    connection.sync().del("reconnect" + i);
+                }
+            }
+        } finally {
+            clusterClient.shutdown();
+        }
+    }
+
+    @Test
+    void testClusterKeyLayoutColocatesDaoKeys() {
+        ClusterKeyLayout layout = new ClusterKeyLayout(16);
+        Assertions.assertEquals(16, layout.getIndexKeys("objs").size());
+        for (int i=0; i<100; i++) {
+            String id = "obj" + i;
+            int slot = SlotHash.getSlot(layout.getIndexKey("objs", id));
+            Assertions.assertEquals(slot, SlotHash.getSlot(layout.getDaoKey("objs", id)));
+            Assertions.assertEquals(slot, SlotHash.getSlot(layout.getTypesKey("objs", id)));
+            Assertions.assertEquals(layout.getIndexKey("objs", id) + "/" + id, layout.getDaoKey("objs", id));
+            Assertions.assertTrue(layout.getIndexKeys("objs").contains(layout.getIndexKey("objs", id)));
+            // Keys the scripts derive from the index key
+            Assertions.assertEquals(slot, SlotHash.getSlot(layout.getIndexKey("objs", id) + ":idx"));
+            Assertions.assertEquals(slot, SlotHash.getSlot(layout.getIndexKey("objs", id) + ":idx:3:age:23"));
+            Assertions.assertEquals(slot, SlotHash.getSlot(layout.getIndexKey("objs", id) + ":geo"));
+        }
+    }
+
     @Test
     void testCdlWithSingleValue() {
         CountDownLatch cdl = rcommando.getCountDownLatch("abc");
@@ -431,6 +1000,7 @@ public class RedaoCommandoUnitTest {
     	public void setIQ(int iq);
     	@Internal public void setSocialSecurityNumber(String socialSecurityNumber);
     	public void setSomethingComplicated(String name, int age, int IQ, @Internal String socialSecurityNumber);
+    	public Optional<Modification> clearEmail();
     }
     
     @Test
@@ -493,4 +1063,325 @@ public class RedaoCommandoUnitTest {
     	PersonProxy p2 = objs.get("abc123").as(PersonProxy.class);
     	Assertions.assertTrue(p1.equals(p2));
     }
+
+    @Test
+    void testDynamicProxyDispatch() throws Throwable {
+    	Dao obj = objs.get("abc123");
+    	obj.set("name", "John Doe", "age", 23, "email", "jd@test.com");
+    	// Created directly since the generated implementation is otherwise preferred
+    	ProxyMetadata metadata = new ProxyMetadataFactory(rcommando.getObjectMapper()).create(PersonProxy.class);
+    	ProxyFactory factory = new DynamicProxyFactory(getClass().getClassLoader(), metadata);
+    	PersonProxy proxy = (PersonProxy) factory.create(obj);
+    	Assertions.assertTrue(java.lang.reflect.Proxy.isProxyClass(proxy.getClass()));
+
+    	Assertions.assertEquals("John Doe", proxy.getName());
+    	Assertions.assertEquals(23, proxy.getAge());
+    	Assertions.assertEquals("jd@test.com", proxy.getEmail().get());
+    	Assertions.assertTrue(proxy.getFax().isEmpty());
+
+    	proxy.setName("Jane Doe");
+    	Assertions.assertEquals("Jane Doe", proxy.getName());
+    	proxy.setSomethingComplicated("Janet Doe", 24, 145, "111-22-3333");
+    	Assertions.assertEquals("Janet Doe", proxy.getName());
+    	Assertions.assertEquals(24, proxy.getAge());
+    	Assertions.assertEquals("111-22-3333", proxy.getSocialSecurityNumber());
+    	Assertions.assertEquals(145, obj.get("IQ").asInt());
+
+    	Assertions.assertEquals("jd@test.com", proxy.clearEmail().get().getChanges().get(0).getBefore().asString());
+    	Assertions.assertTrue(proxy.getEmail().isEmpty());
+    	Assertions.assertFalse(obj.get("email").isPresent());
+
+    	Assertions.assertEquals(100000, proxy.getSalary());
+    	Assertions.assertTrue(proxy.needsRaise(10500));
+
+    	// Passthroughs with and without arguments, including those inherited from Object
+    	Assertions.assertEquals("abc123", proxy.getId());
+    	Assertions.assertEquals("objs", proxy.getType());
+    	Assertions.assertTrue(proxy.exists());
+    	Assertions.assertSame(obj, proxy.getDao());
+    	Assertions.assertEquals(obj.hashCode(), proxy.hashCode());
+    	Assertions.assertEquals(obj.toString(), proxy.toString());
+    	Assertions.assertTrue(proxy.equals(factory.create(obj)));
+    	Assertions.assertEquals("Janet Doe", proxy.as(PersonProxy.class).getName());
+
+    	// A no-arg method may be invoked with either null or empty arguments
+    	ProxyInvocationHandler handler = new ProxyInvocationHandler(obj, metadata);
+    	java.lang.reflect.Method getId = Proxy.class.getMethod("getId");
+    	Assertions.assertEquals("abc123", handler.invoke(proxy, getId, null));
+    	Assertions.assertEquals("abc123", handler.invoke(proxy, getId, new Object[0]));
+    	java.lang.reflect.Method getSalary = PersonProxy.class.getMethod("getSalary");
+    	Assertions.assertEquals(100000, handler.invoke(proxy, getSalary, null));
+    	Assertions.assertEquals(100000, handler.invoke(proxy, getSalary, new Object[0]));
+    	Assertions.assertThrows(RedisCommandoException.class,
+    			() -> handler.invoke(proxy, Object.class.getMethod("getClass"), null));
+
+    	Assertions.assertTrue(proxy.delete());
+    	Assertions.assertFalse(proxy.exists());
+    }
+
+    @Test
+    void testGetAllAndGetExisting() {
+    	for (int i=0; i<5; i++) {
+    		objs.get("id" + i).set("name", "Person " + i, "age", i);
+    	}
+    	List<String> ids = List.of("id3", "missing", "id1", "id4");
+    	Assertions.assertIterableEquals(List.of("id3", "id1", "id4"),
+    			objs.getExisting(ids).stream().map(Dao::getId).collect(Collectors.toList()));
+
+    	Map<String, DaoValues> values = objs.getAll(ids, "age", "name", "email");
+    	Assertions.assertIterableEquals(List.of("id3", "id1", "id4"), values.keySet());
+    	Iterator<DaoValue> id1 = values.get("id1").iterator();
+    	Assertions.assertEquals(1, id1.next().asInt());
+    	Assertions.assertEquals("Person 1", id1.next().asString());
+    	Assertions.assertFalse(id1.next().isPresent());
+    	Assertions.assertTrue(objs.getAll(List.of()).isEmpty());
+    }
+
+    @Test
+    void testIndexIteratorScanCount() {
+    	for (int i=0; i<250; i++) {
+    		objs.get("id" + i).set("name", "Person " + i);
+    	}
+    	Assertions.assertEquals(250, objs.stream().count());
+    	Assertions.assertEquals(250, objs.stream(7, true).map(Dao::getId).distinct().count());
+    	Iterator<Dao> iter = objs.iterator(1000, false);
+    	Assertions.assertEquals(250, IntStream.range(0, 250).mapToObj(i -> iter.next().getId()).distinct().count());
+    	Assertions.assertFalse(iter.hasNext());
+    }
+
+    @Test
+    void testParallelIndexScan() throws InterruptedException {
+    	for (int i=0; i<1200; i++) {
+    		objs.get("id" + i).set("age", i);
+    	}
+    	Spliterator<Dao> spliterator = objs.partitionedSpliterator(100);
+    	Spliterator<Dao> split = spliterator.trySplit();
+    	Assertions.assertNotNull(split);
+    	Assertions.assertEquals(1200, spliterator.estimateSize() + split.estimateSize());
+
+    	Assertions.assertEquals(1200, objs.parallelStream().map(Dao::getId).distinct().count());
+
+    	long clients = rcommando.core().clientList().lines().count();
+    	Set<String> visited = ConcurrentHashMap.newKeySet();
+    	objs.forEachParallel(dao -> visited.add(dao.getId()), 8);
+    	Assertions.assertEquals(1200, visited.size());
+
+    	// The workers' connections are closed before returning
+    	long deadline = System.currentTimeMillis() + 1000;
+    	while (rcommando.core().clientList().lines().count() > clients && System.currentTimeMillis() < deadline) {
+    		Thread.sleep(5);
+    	}
+    	Assertions.assertTrue(rcommando.core().clientList().lines().count() <= clients);
+    }
+
+    @Test
+    void testIndexRangeAndKeysetPaging() {
+    	for (int i=0; i<10; i++) {
+    		objs.get("id" + i).set("age", i);
+    		rcommando.core().zadd("objs", i % 3, "id" + i);
+    	}
+    	List<String> ascending = List.of("id0", "id3", "id6", "id9", "id1", "id4", "id7", "id2", "id5", "id8");
+    	Assertions.assertIterableEquals(ascending, objs.range(0, 2).map(Dao::getId).collect(Collectors.toList()));
+    	Assertions.assertIterableEquals(List.of("id7", "id4", "id1"),
+    			objs.range(1, 1, true).map(Dao::getId).collect(Collectors.toList()));
+
+    	List<String> paged = new java.util.ArrayList<>();
+    	List<IndexEntry> page = objs.page(4);
+    	while (!page.isEmpty()) {
+    		page.forEach(entry -> paged.add(entry.getId()));
+    		IndexEntry last = page.get(page.size() - 1);
+    		page = objs.page(last.getScore(), last.getId(), 4);
+    	}
+    	Assertions.assertIterableEquals(ascending, paged);
+
+    	List<IndexEntry> newest = objs.pageReverse(2);
+    	Assertions.assertIterableEquals(List.of("id8", "id5"), newest.stream().map(IndexEntry::getId).collect(Collectors.toList()));
+    	Assertions.assertIterableEquals(List.of("id2", "id7"), objs.pageReverse(2.0, "id5", 2).stream()
+    			.map(IndexEntry::getId).collect(Collectors.toList()));
+
+    	// A position whose Dao has since been deleted still resumes after it
+    	objs.get("id4").delete();
+    	Assertions.assertIterableEquals(List.of("id7", "id2"), objs.page(1.0, "id4", 2).stream()
+    			.map(IndexEntry::getId).collect(Collectors.toList()));
+    	Assertions.assertIterableEquals(List.of("id1", "id9"), objs.pageReverse(1.0, "id4", 2).stream()
+    			.map(IndexEntry::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testEqualityIndex() {
+    	objs.get("id0").set("status", "PENDING");
+    	objs.get("id1").set("status", "DONE");
+    	objs.createIndex("status").join();
+    	objs.get("id2").set("status", "PENDING");
+    	objs.get("id3").set("status", "PENDING");
+    	Assertions.assertEquals(Set.of("id0", "id2", "id3"), ids(objs.where("status", "PENDING")));
+
+    	objs.get("id2").set("status", "DONE");
+    	objs.get("id3").clear("status");
+    	objs.get("id0").delete();
+    	Assertions.assertTrue(objs.where("status", "PENDING").isEmpty());
+    	Assertions.assertEquals(Set.of("id1", "id2"), ids(objs.where("status", "DONE")));
+    	Assertions.assertThrows(RedisCommandoException.class, () -> objs.where("age", 1));
+    }
+
+    @Test
+    void testNumericIndex() {
+    	objs.get("a").set("age", 30);
+    	objs.get("b").set("age", 20);
+    	objs.createNumericIndex("age").join();
+    	objs.get("c").set("age", 40);
+    	objs.get("d").set("age", 25.5);
+    	objs.get("e").set("age", "unknown");
+    	Assertions.assertEquals(List.of("b", "d", "a"),
+    			objs.range("age", 20, 30).map(Dao::getId).collect(Collectors.toList()));
+    	Assertions.assertEquals(List.of("a", "d"),
+    			objs.range("age", 25, 35, true).map(Dao::getId).collect(Collectors.toList()));
+
+    	List<IndexEntry> top = objs.topN("age", 2);
+    	Assertions.assertEquals(List.of("c", "a"), top.stream().map(IndexEntry::getId).collect(Collectors.toList()));
+    	Assertions.assertEquals(40, top.get(0).getScore());
+
+    	objs.get("c").set("age", 10);
+    	objs.get("a").clear("age");
+    	objs.get("d").delete();
+    	ProxyIndex<PersonProxy> people = rcommando.getPrimaryIndex("objs", PersonProxy.class);
+    	Assertions.assertEquals(List.of(20, 10), people.sortedBy(PersonProxy::getAge, true)
+    			.map(PersonProxy::getAge).collect(Collectors.toList()));
+    	Assertions.assertEquals(List.of("c", "b"), people.prefetching().sortedBy(PersonProxy::getAge)
+    			.map(PersonProxy::getId).collect(Collectors.toList()));
+    	Assertions.assertThrows(ProxyException.class, () -> people.sortedBy(PersonProxy::getSalary));
+    	Assertions.assertThrows(RedisCommandoException.class, () -> objs.topN("name", 1));
+    }
+
+    @Test
+    void testPrefixIndex() {
+    	objs.get("a").set("host", "web-02");
+    	objs.get("b").set("host", "Web-01");
+    	objs.createPrefixIndex("host", true).join();
+    	objs.get("c").set("host", "db-01");
+    	objs.get("d").set("host", "web-10");
+    	objs.get("e").set("host", 42);
+    	Assertions.assertEquals(List.of("b", "a", "d"), objs.prefix("host", "WEB", 10).stream()
+    			.map(Dao::getId).collect(Collectors.toList()));
+    	Assertions.assertEquals(List.of("b", "a"), objs.prefix("host", "web-0", 2).stream()
+    			.map(Dao::getId).collect(Collectors.toList()));
+
+    	objs.get("b").set("host", "db-02");
+    	objs.get("a").clear("host");
+    	objs.get("c").delete();
+    	Assertions.assertEquals(List.of("d"), objs.prefix("host", "web", 10).stream()
+    			.map(Dao::getId).collect(Collectors.toList()));
+    	Assertions.assertEquals(List.of("b", "d"), objs.prefix("host", "", 10).stream()
+    			.map(Dao::getId).collect(Collectors.toList()));
+
+    	objs.get("x").set("name", "Xavier");
+    	objs.createPrefixIndex("name", false).join();
+    	Assertions.assertTrue(objs.prefix("name", "x", 10).isEmpty());
+    	Assertions.assertEquals(1, objs.prefix("name", "X", 10).size());
+    	Assertions.assertThrows(RedisCommandoException.class, () -> objs.createPrefixIndex("name", true));
+
+    	// Non-ASCII characters following the prefix are within the range
+    	objs.get("y").set("name", "Z\u00fcrich");
+    	objs.get("z").set("name", "Zug");
+    	objs.get("w").set("name", "caf\u00e9");
+    	Assertions.assertEquals(List.of("z", "y"), objs.prefix("name", "Z", 10).stream()
+    			.map(Dao::getId).collect(Collectors.toList()));
+    	Assertions.assertEquals(List.of("w"), objs.prefix("name", "caf", 10).stream()
+    			.map(Dao::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testLocationIndex() {
+    	Index vehicles = rcommando.getPrimaryIndex("vehicles");
+    	vehicles.get("boston").set("lat", 42.3601, "lon", -71.0589);
+    	vehicles.createLocationIndex("lat", "lon").join();
+    	vehicles.get("cambridge").set("lat", 42.3736, "lon", -71.1097);
+    	vehicles.get("nyc").set("lat", 40.7128, "lon", -74.0060);
+    	vehicles.get("partial").set("lat", 42.36);
+    	Assertions.assertEquals(List.of("boston", "cambridge"), vehicles.within(42.3601, -71.0589, 10, GeoArgs.Unit.km)
+    			.map(Dao::getId).collect(Collectors.toList()));
+    	Assertions.assertEquals(List.of("boston", "cambridge", "nyc"),
+    			vehicles.within(42.3601, -71.0589, 500, GeoArgs.Unit.km).map(Dao::getId).collect(Collectors.toList()));
+    	Assertions.assertEquals(List.of("boston"), vehicles.within(42.3601, -71.0589, 500, GeoArgs.Unit.km, 1)
+    			.map(Dao::getId).collect(Collectors.toList()));
+
+    	vehicles.get("nyc").set("lat", 42.3500, "lon", -71.0600);
+    	vehicles.get("cambridge").clear("lon");
+    	vehicles.get("boston").delete();
+    	Assertions.assertEquals(List.of("nyc"), vehicles.within(42.3601, -71.0589, 500, GeoArgs.Unit.km)
+    			.map(Dao::getId).collect(Collectors.toList()));
+    	Assertions.assertThrows(RedisCommandoException.class, () -> vehicles.createLocationIndex("position"));
+    	Assertions.assertThrows(RedisCommandoException.class, () -> objs.within(0, 0, 1, GeoArgs.Unit.m));
+
+    	objs.get("a").set("position", Map.of("lat", 51.5074, "lon", -0.1278));
+    	objs.createLocationIndex("position").join();
+    	objs.get("b").set("position", Map.of("lat", 48.8566, "lon", 2.3522));
+    	Assertions.assertEquals(List.of("b", "a"), objs.within(48.8566, 2.3522, 500, GeoArgs.Unit.km)
+    			.map(Dao::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testQuery() {
+    	for (int i=0; i<50; i++) {
+    		objs.get("id" + i).set("status", i % 2 == 0 ? "X" : "Y", "age", i, "name", "name" + i);
+    	}
+    	objs.get("noage").set("status", "X");
+    	Map<String, String> names = objs.query().whereEq("status", "X").whereGt("age", 30).fields("name", "age")
+    			.pageSize(7).stream()
+    			.collect(Collectors.toMap(QueryResult::getId, r -> r.getValues().asPair().getValue0().asString()));
+    	Assertions.assertEquals(Set.of("id32", "id34", "id36", "id38", "id40", "id42", "id44", "id46", "id48"),
+    			names.keySet());
+    	Assertions.assertEquals("name40", names.get("id40"));
+
+    	Assertions.assertEquals(Set.of("noage"), objs.query().whereNe("age", 0).whereLt("status", "Y").stream()
+    			.filter(r -> !r.getId().startsWith("id")).map(QueryResult::getId).collect(Collectors.toSet()));
+
+    	Set<String> paged = new HashSet<>();
+    	Query query = objs.query().whereLte("age", 9).pageSize(5);
+    	Query.Page page = query.page(null);
+    	paged.addAll(page.getResults().stream().map(QueryResult::getId).collect(Collectors.toList()));
+    	while (!page.isFinished()) {
+    		page = query.page(page.getCursor());
+    		page.getResults().forEach(r -> paged.add(r.getId()));
+    	}
+    	Assertions.assertEquals(IntStream.range(0, 10).mapToObj(i -> "id" + i).collect(Collectors.toSet()), paged);
+    	Assertions.assertThrows(IllegalArgumentException.class, () -> query.page("bogus"));
+    }
+
+    private static Set<String> ids(Collection<Dao> daos) {
+    	return daos.stream().map(Dao::getId).collect(Collectors.toSet());
+    }
+
+    @Test
+    void testPrefetchingProxyIndex() {
+    	for (int i=0; i<25; i++) {
+    		objs.get("id" + i).set("name", "Person " + i, "age", i);
+    	}
+    	ProxyIndex<PersonProxy> people = rcommando.getPrimaryIndex("objs", PersonProxy.class).prefetching(10);
+    	Assertions.assertEquals(300, people.stream().mapToInt(PersonProxy::getAge).sum());
+    	Assertions.assertTrue(people.stream().allMatch(p -> p.getName().equals("Person " + p.getAge())));
+
+    	Set<PersonProxy> subset = people.getSubset(List.of("id3", "id4", "missing"));
+    	Assertions.assertEquals(3, subset.size());
+    	Assertions.assertEquals(Set.of("Person 3", "Person 4"), subset.stream().filter(p -> p.getName() != null)
+    			.map(PersonProxy::getName).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void testGeneratedProxy() {
+    	Dao obj = objs.get("abc123");
+    	obj.set("name", "John Doe", "age", 23);
+    	PersonProxy proxy = obj.as(PersonProxy.class);
+    	Assertions.assertFalse(java.lang.reflect.Proxy.isProxyClass(proxy.getClass()));
+    	Assertions.assertEquals("John Doe", proxy.getName());
+    	Assertions.assertTrue(proxy.getFax().isEmpty());
+    	Assertions.assertEquals(100000, proxy.getSalary());
+    	Assertions.assertSame(obj, proxy.getDao());
+
+    	proxy.setSomethingComplicated("Jane Doe", 24, 145, "111-22-3333");
+    	Assertions.assertEquals("Jane Doe", proxy.getName());
+    	Assertions.assertEquals(24, obj.get("age").asInt());
+    	Assertions.assertEquals("111-22-3333", proxy.getSocialSecurityNumber());
+    	Assertions.assertEquals("abc123", proxy.as(PersonProxy.class).getId());
+    }
 }